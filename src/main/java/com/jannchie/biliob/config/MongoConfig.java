@@ -1,5 +1,6 @@
 package com.jannchie.biliob.config;
 
+import com.mongodb.ConnectionString;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import org.springframework.context.EnvironmentAware;
@@ -9,6 +10,7 @@ import org.springframework.core.env.Environment;
 import org.springframework.data.mongodb.MongoDatabaseFactory;
 import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 
 @Configuration
 class MongoConfig implements EnvironmentAware {
@@ -20,13 +22,26 @@ class MongoConfig implements EnvironmentAware {
         return new MongoTransactionManager(dbFactory);
     }
 
+    /**
+     * Create a blocking com.mongodb.client.MongoClient instance for MongoTemplate.
+     */
+    public @Bean
+    MongoClient mongoClient() {
+        return MongoClients.create(MongoConfig.BILIOB_MONGO_URL);
+    }
+
     /**
      * Use the Reactive Streams Mongo Client API to create a
      * com.mongodb.reactivestreams.client.MongoClient instance.
      */
     public @Bean
-    MongoClient reactiveMongoClient() {
-        return MongoClients.create(MongoConfig.BILIOB_MONGO_URL);
+    com.mongodb.reactivestreams.client.MongoClient reactiveMongoClient() {
+        return com.mongodb.reactivestreams.client.MongoClients.create(MongoConfig.BILIOB_MONGO_URL);
+    }
+
+    public @Bean
+    ReactiveMongoTemplate reactiveMongoTemplate(com.mongodb.reactivestreams.client.MongoClient reactiveMongoClient) {
+        return new ReactiveMongoTemplate(reactiveMongoClient, new ConnectionString(MongoConfig.BILIOB_MONGO_URL).getDatabase());
     }
 
     public @Bean
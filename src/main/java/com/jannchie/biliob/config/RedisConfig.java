@@ -5,20 +5,34 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.model.Video;
+import com.jannchie.biliob.model.VideoInfo;
+import com.jannchie.biliob.model.VideoStat;
+import com.jannchie.biliob.utils.CompactRedisSerializer;
+import com.jannchie.biliob.utils.MySlice;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
-import org.springframework.data.redis.cache.RedisCacheManager;
-import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author jannchie
@@ -26,18 +40,42 @@ import java.time.Duration;
 @Configuration
 @EnableCaching
 public class RedisConfig extends CachingConfigurerSupport {
+    /**
+     * 紧凑序列化的结果超过该字节数时压缩
+     */
+    private static final int COMPRESS_THRESHOLD = 1024;
 
-    @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
-        // 初始化一个RedisCacheWriter
-        RedisCacheWriter redisCacheWriter =
-                RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory);
-        // 初始化RedisCacheManager
-        return new RedisCacheManager(redisCacheWriter, redisCacheConfiguration());
+    /**
+     * 紧凑序列化的类型表，别名一经使用不应修改含义，否则 Redis 中已有的值会被读成其他类型
+     */
+    public static Map<String, Class<?>> cacheTypeTable() {
+        Map<String, Class<?>> typeTable = new HashMap<>(32);
+        typeTable.put("L", ArrayList.class);
+        typeTable.put("M", HashMap.class);
+        typeTable.put("LM", LinkedHashMap.class);
+        typeTable.put("D", Date.class);
+        typeTable.put("S", MySlice.class);
+        typeTable.put("A", Author.class);
+        typeTable.put("AD", Author.Data.class);
+        typeTable.put("AR", Author.Rank.class);
+        typeTable.put("AA", Author.Achievement.class);
+        typeTable.put("V", Video.class);
+        typeTable.put("VD", Video.Data.class);
+        typeTable.put("VI", VideoInfo.class);
+        typeTable.put("VS", VideoStat.class);
+        return typeTable;
     }
 
-    @Bean
-    public RedisCacheConfiguration redisCacheConfiguration() {
+    /**
+     * Smile 二进制格式，登记的类只写别名，较大的值再压缩；仍能读取切换前写入的 JSON
+     */
+    public static CompactRedisSerializer compactRedisSerializer() {
+        SmileFactory smileFactory = new SmileFactory();
+        smileFactory.configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+        return new CompactRedisSerializer(smileFactory, cacheTypeTable(), COMPRESS_THRESHOLD, jackson2JsonRedisSerializer());
+    }
+
+    private static Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer() {
         Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer =
                 new Jackson2JsonRedisSerializer<>(Object.class);
         ObjectMapper om = new ObjectMapper();
@@ -47,8 +85,57 @@ public class RedisConfig extends CachingConfigurerSupport {
                 ObjectMapper.DefaultTyping.NON_FINAL,
                 JsonTypeInfo.As.WRAPPER_ARRAY);
         jackson2JsonRedisSerializer.setObjectMapper(om);
+        return jackson2JsonRedisSerializer;
+    }
+
+    /**
+     * 各缓存名在 Redis 中的过期时间与值的序列化方式、进程内缓存的容量与过期时间，以及过期后继续返回旧值的时长，
+     * 未列出的缓存名在 Redis 中以 JSON 保存一小时
+     */
+    private static Map<String, TwoLevelCacheManager.Spec> cacheSpecs() {
+        CompactRedisSerializer compactRedisSerializer = compactRedisSerializer();
+        Map<String, TwoLevelCacheManager.Spec> specs = new HashMap<>(16);
+        specs.put("popular_keyword", TwoLevelCacheManager.Spec.of(Duration.ofHours(1), 1, Duration.ofMinutes(5))
+                .staleWhileRevalidate(1, Duration.ofHours(1)));
+        specs.put("achievement_by_level", TwoLevelCacheManager.Spec.of(Duration.ofHours(1), 16, Duration.ofMinutes(5)));
+        specs.put("author_rank", TwoLevelCacheManager.Spec.of(Duration.ofHours(1), 4096, Duration.ofMinutes(1)));
+        specs.put("jannchie-index-recently-rank", TwoLevelCacheManager.Spec.of(Duration.ofHours(1), 1, Duration.ofMinutes(5)));
+        specs.put("listTopTag", TwoLevelCacheManager.Spec.of(Duration.ofHours(1), 16, Duration.ofMinutes(10)));
+        specs.put("listAuthorDailyTopTrend", TwoLevelCacheManager.Spec.of(Duration.ofHours(1), 16, Duration.ofMinutes(5)));
+        specs.put("listHistoryDailyTopTrend", TwoLevelCacheManager.Spec.of(Duration.ofHours(1), 16, Duration.ofMinutes(5)));
+        specs.put("index", TwoLevelCacheManager.Spec.of(Duration.ofHours(1))
+                .staleWhileRevalidate(1024, Duration.ofHours(1)));
+        specs.put("relate_author", TwoLevelCacheManager.Spec.of(Duration.ofHours(1))
+                .staleWhileRevalidate(1024, Duration.ofHours(1)));
+        specs.put("listKeywordIndex", TwoLevelCacheManager.Spec.of(Duration.ofHours(1))
+                .staleWhileRevalidate(256, Duration.ofHours(1)));
+        specs.put("author_slice", TwoLevelCacheManager.Spec.of(Duration.ofHours(1)).serializeValuesWith(compactRedisSerializer));
+        specs.put("video_slice", TwoLevelCacheManager.Spec.of(Duration.ofHours(1)).serializeValuesWith(compactRedisSerializer));
+        specs.put("author_top_video", TwoLevelCacheManager.Spec.of(Duration.ofHours(1)).serializeValuesWith(compactRedisSerializer));
+        specs.put("author_other_video", TwoLevelCacheManager.Spec.of(Duration.ofHours(1)).serializeValuesWith(compactRedisSerializer));
+        return specs;
+    }
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+        return new TwoLevelCacheManager(connectionFactory, redisCacheConfiguration(), cacheSpecs());
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(
+            RedisConnectionFactory connectionFactory, TwoLevelCacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+                (message, pattern) -> cacheManager.onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(TwoLevelCacheManager.INVALIDATION_CHANNEL));
+        return container;
+    }
+
+    @Bean
+    public RedisCacheConfiguration redisCacheConfiguration() {
         RedisSerializationContext.SerializationPair<Object> pair =
-                RedisSerializationContext.SerializationPair.fromSerializer(jackson2JsonRedisSerializer);
+                RedisSerializationContext.SerializationPair.fromSerializer(jackson2JsonRedisSerializer());
         return RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofHours(1))
                 .serializeValuesWith(pair)
@@ -0,0 +1,268 @@
+package com.jannchie.biliob.config;
+
+import com.jannchie.biliob.utils.LocalCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 进程内缓存在前、Redis 缓存在后的两级缓存。
+ * <p>
+ * 读取时先查进程内缓存，未命中再查 Redis 并回填；写入、删除与清空同时作用于两级，
+ * 并通过 invalidator 通知其他实例删除各自进程内的对应项。
+ * 进程内缓存、旧值与合并的计算结果都直接共用对象引用，调用方不应修改缓存返回的对象。
+ * <p>
+ * 带有 valueLoader 的读取（@Cacheable(sync = true)）在两级均未命中时，同一个键在本实例内只执行一次计算，
+ * 其余调用等待其结果。设置了 staleCache 时，过期后的旧值在一段时间内仍会直接返回，同时在后台重新计算。
+ *
+ * @author Jannchie
+ */
+public class TwoLevelCache implements Cache {
+    private static final Logger logger = LogManager.getLogger();
+    private final String name;
+    private final Cache redisCache;
+    private final LocalCache<String, Object> localCache;
+    private final LocalCache<String, Object> staleCache;
+    private final Executor refreshExecutor;
+    private final BiConsumer<String, String> invalidator;
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong load = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param name            缓存名
+     * @param redisCache      Redis 缓存
+     * @param localCache      进程内缓存，为 null 时只使用 Redis
+     * @param staleCache      过期后仍可返回的旧值，为 null 时不返回旧值
+     * @param refreshExecutor 返回旧值时在后台重新计算所用的线程池
+     * @param invalidator     失效通知，参数为缓存名与键，键为 null 时表示清空
+     */
+    public TwoLevelCache(String name, Cache redisCache, LocalCache<String, Object> localCache,
+                         LocalCache<String, Object> staleCache, Executor refreshExecutor,
+                         BiConsumer<String, String> invalidator) {
+        this.name = name;
+        this.redisCache = redisCache;
+        this.localCache = localCache;
+        this.staleCache = staleCache;
+        this.refreshExecutor = refreshExecutor;
+        this.invalidator = invalidator;
+    }
+
+    /**
+     * 进程内缓存的键，与 Redis 缓存一样取键的字符串形式，便于在实例间传递
+     */
+    private static String toLocalKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = toLocalKey(key);
+        long now = System.currentTimeMillis();
+        if (localCache != null) {
+            LocalCache.Entry<Object> entry = localCache.get(localKey, now);
+            if (entry != null) {
+                return new SimpleValueWrapper(entry.getValue());
+            }
+        }
+        ValueWrapper valueWrapper = redisCache.get(key);
+        if (valueWrapper != null && localCache != null) {
+            localCache.put(localKey, valueWrapper.get(), now);
+        }
+        return valueWrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper valueWrapper = get(key);
+        Object value = valueWrapper == null ? null : valueWrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper valueWrapper = get(key);
+        if (valueWrapper != null) {
+            return (T) valueWrapper.get();
+        }
+        String localKey = toLocalKey(key);
+        if (staleCache != null) {
+            LocalCache.Entry<Object> stale = staleCache.get(localKey, System.currentTimeMillis());
+            if (stale != null) {
+                flight(key, localKey, valueLoader, true);
+                return (T) stale.getValue();
+            }
+        }
+        try {
+            return (T) flight(key, localKey, valueLoader, false).get();
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    /**
+     * 计算一个键的值，同一个键同时只有一次计算，后来的调用直接取得正在进行的计算
+     *
+     * @param async 是否在后台线程中计算
+     */
+    private CompletableFuture<Object> flight(Object key, String localKey, Callable<?> valueLoader, boolean async) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> previous = flights.putIfAbsent(localKey, future);
+        if (previous != null) {
+            coalesced.incrementAndGet();
+            return previous;
+        }
+        Runnable task = () -> {
+            try {
+                future.complete(load(key, localKey, valueLoader));
+            } catch (Throwable e) {
+                if (async) {
+                    logger.error("后台刷新缓存失败：{} {}", name, localKey, e);
+                }
+                future.completeExceptionally(e);
+            } finally {
+                flights.remove(localKey, future);
+            }
+        };
+        if (!async) {
+            task.run();
+            return future;
+        }
+        try {
+            refreshExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            flights.remove(localKey, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private Object load(Object key, String localKey, Callable<?> valueLoader) throws Exception {
+        // 其他实例可能已经算好并写入了 Redis
+        ValueWrapper valueWrapper = redisCache.get(key);
+        Object value;
+        if (valueWrapper != null) {
+            value = valueWrapper.get();
+        } else {
+            load.incrementAndGet();
+            value = valueLoader.call();
+            redisCache.put(key, value);
+        }
+        long now = System.currentTimeMillis();
+        if (localCache != null) {
+            localCache.put(localKey, value, now);
+        }
+        if (staleCache != null) {
+            staleCache.put(localKey, value, now);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        String localKey = toLocalKey(key);
+        long now = System.currentTimeMillis();
+        if (localCache != null) {
+            localCache.put(localKey, value, now);
+        }
+        if (staleCache != null) {
+            staleCache.put(localKey, value, now);
+        }
+        invalidator.accept(name, localKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper previous = redisCache.putIfAbsent(key, value);
+        String localKey = toLocalKey(key);
+        invalidateLocal(localKey);
+        if (previous == null) {
+            invalidator.accept(name, localKey);
+        }
+        return previous;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        String localKey = toLocalKey(key);
+        invalidateLocal(localKey);
+        invalidator.accept(name, localKey);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        invalidateLocal(null);
+        invalidator.accept(name, null);
+    }
+
+    /**
+     * 只删除本实例内的项，用于处理其他实例发出的失效通知
+     *
+     * @param localKey 键的字符串形式，为 null 时清空
+     */
+    void invalidateLocal(String localKey) {
+        invalidate(localCache, localKey);
+        invalidate(staleCache, localKey);
+    }
+
+    private static void invalidate(LocalCache<String, Object> cache, String localKey) {
+        if (cache == null) {
+            return;
+        }
+        if (localKey == null) {
+            cache.clear();
+        } else {
+            cache.remove(localKey);
+        }
+    }
+
+    public Map<String, Object> getStat() {
+        Map<String, Object> stat = new HashMap<>(16);
+        if (localCache != null) {
+            stat.put("size", localCache.size());
+            stat.put("hit", localCache.getHit());
+            stat.put("miss", localCache.getMiss());
+            stat.put("eviction", localCache.getEviction());
+        }
+        if (staleCache != null) {
+            stat.put("stale", staleCache.getHit());
+        }
+        stat.put("load", load.get());
+        stat.put("coalesced", coalesced.get());
+        return stat;
+    }
+}
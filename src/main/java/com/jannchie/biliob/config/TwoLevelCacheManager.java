@@ -0,0 +1,205 @@
+package com.jannchie.biliob.config;
+
+import com.jannchie.biliob.utils.LocalCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两级缓存管理。
+ * <p>
+ * 每个缓存名可以单独设置 Redis 中的过期时间与值的序列化方式、进程内缓存的容量与过期时间，以及过期后继续返回旧值的时长；
+ * 未设置进程内缓存的缓存名只使用 Redis。
+ * 写入、删除与清空会发布到 Redis 频道 {@link #INVALIDATION_CHANNEL}，其他实例收到后删除各自进程内的对应项。
+ * Redis 中的项自然过期后重新计算时不会发出通知，因此其他实例最多在进程内缓存的过期时间内读到旧值。
+ *
+ * @author Jannchie
+ */
+public class TwoLevelCacheManager implements CacheManager {
+    public static final String INVALIDATION_CHANNEL = "biliob:cache:invalidation";
+    private static final Logger logger = LogManager.getLogger();
+    private static final String SEPARATOR = "\t";
+    private static final int REFRESH_THREADS = 4;
+    private static final int REFRESH_QUEUE_SIZE = 256;
+    private final RedisCacheManager redisCacheManager;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Map<String, Spec> specs;
+    private final ConcurrentHashMap<String, Cache> caches = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(
+            1, REFRESH_THREADS, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE), runnable -> {
+        Thread thread = new Thread(runnable, "cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param connectionFactory Redis 连接
+     * @param defaultConfig     Redis 缓存的默认配置
+     * @param specs             各缓存名的设置
+     */
+    public TwoLevelCacheManager(RedisConnectionFactory connectionFactory, RedisCacheConfiguration defaultConfig,
+                                Map<String, Spec> specs) {
+        Map<String, RedisCacheConfiguration> configs = new HashMap<>(specs.size() * 2);
+        specs.forEach((name, spec) -> {
+            RedisCacheConfiguration config = defaultConfig.entryTtl(spec.redisTtl);
+            if (spec.valueSerializer != null) {
+                config = config.serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(spec.valueSerializer));
+            }
+            configs.put(name, config);
+        });
+        this.redisCacheManager = RedisCacheManager
+                .builder(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory))
+                .cacheDefaults(defaultConfig)
+                .withInitialCacheConfigurations(configs)
+                .build();
+        // 不作为单独的 Bean 注册，需要手动初始化才会使用上面的各缓存设置
+        this.redisCacheManager.afterPropertiesSet();
+        this.stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        this.specs = specs;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    private Cache createCache(String name) {
+        Cache redisCache = redisCacheManager.getCache(name);
+        if (redisCache == null) {
+            return null;
+        }
+        Spec spec = specs.get(name);
+        LocalCache<String, Object> localCache = null;
+        LocalCache<String, Object> staleCache = null;
+        if (spec != null && spec.localSize > 0) {
+            localCache = new LocalCache<>(spec.localSize, spec.localTtl.toMillis());
+        }
+        if (spec != null && spec.staleSize > 0) {
+            // 旧值从写入时起保留 Redis 过期时间加上允许返回旧值的时长
+            staleCache = new LocalCache<>(spec.staleSize, spec.redisTtl.plus(spec.staleTtl).toMillis());
+        }
+        return new TwoLevelCache(name, redisCache, localCache, staleCache, refreshExecutor, this::publishInvalidation);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    private void publishInvalidation(String cacheName, String localKey) {
+        String message = nodeId + SEPARATOR + cacheName + (localKey == null ? "" : SEPARATOR + localKey);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, message);
+        } catch (Exception e) {
+            logger.error("发布缓存失效通知失败：{}", cacheName, e);
+        }
+    }
+
+    /**
+     * 处理缓存失效通知，忽略本实例发出的通知
+     *
+     * @param message 通知内容
+     */
+    public void onInvalidation(String message) {
+        String[] parts = message.split(SEPARATOR, 3);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        Cache cache = caches.get(parts[1]);
+        if (cache instanceof TwoLevelCache) {
+            ((TwoLevelCache) cache).invalidateLocal(parts.length == 3 ? parts[2] : null);
+        }
+    }
+
+    /**
+     * 获取各缓存的进程内命中、未命中与淘汰次数，以及计算、合并与返回旧值的次数
+     *
+     * @return 缓存名到统计数据的映射
+     */
+    public Map<String, Map<String, Object>> getStat() {
+        Map<String, Map<String, Object>> stat = new TreeMap<>();
+        caches.forEach((name, cache) -> stat.put(name, ((TwoLevelCache) cache).getStat()));
+        return stat;
+    }
+
+    /**
+     * 单个缓存名的设置
+     */
+    public static class Spec {
+        private final Duration redisTtl;
+        private final int localSize;
+        private final Duration localTtl;
+        private final RedisSerializer<?> valueSerializer;
+        private final int staleSize;
+        private final Duration staleTtl;
+
+        private Spec(Duration redisTtl, int localSize, Duration localTtl, RedisSerializer<?> valueSerializer,
+                     int staleSize, Duration staleTtl) {
+            this.redisTtl = redisTtl;
+            this.localSize = localSize;
+            this.localTtl = localTtl;
+            this.valueSerializer = valueSerializer;
+            this.staleSize = staleSize;
+            this.staleTtl = staleTtl;
+        }
+
+        /**
+         * 只使用 Redis
+         *
+         * @param redisTtl Redis 中的过期时间
+         */
+        public static Spec of(Duration redisTtl) {
+            return new Spec(redisTtl, 0, Duration.ZERO, null, 0, Duration.ZERO);
+        }
+
+        /**
+         * 进程内缓存在前、Redis 在后
+         *
+         * @param redisTtl  Redis 中的过期时间
+         * @param localSize 进程内缓存的容量
+         * @param localTtl  进程内缓存的过期时间
+         */
+        public static Spec of(Duration redisTtl, int localSize, Duration localTtl) {
+            return new Spec(redisTtl, localSize, localTtl, null, 0, Duration.ZERO);
+        }
+
+        /**
+         * 使用指定的方式序列化 Redis 中的值，未指定时使用默认配置
+         *
+         * @param valueSerializer 值的序列化方式
+         */
+        public Spec serializeValuesWith(RedisSerializer<?> valueSerializer) {
+            return new Spec(redisTtl, localSize, localTtl, valueSerializer, staleSize, staleTtl);
+        }
+
+        /**
+         * Redis 中的项过期后，@Cacheable(sync = true) 的方法在一段时间内继续返回旧值，同时在后台重新计算
+         *
+         * @param staleSize 保留旧值的数量
+         * @param staleTtl  过期后继续返回旧值的时长
+         */
+        public Spec staleWhileRevalidate(int staleSize, Duration staleTtl) {
+            return new Spec(redisTtl, localSize, localTtl, valueSerializer, staleSize, staleTtl);
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.jannchie.biliob.controller;
 
+import com.jannchie.biliob.config.TwoLevelCacheManager;
 import com.jannchie.biliob.model.ScheduleItem;
 import com.jannchie.biliob.model.SearchMethod;
 import com.jannchie.biliob.object.AuthorIntervalCount;
 import com.jannchie.biliob.service.AdminService;
+import com.jannchie.biliob.service.AuthorTimeSeriesService;
 import com.jannchie.biliob.utils.Result;
+import com.jannchie.biliob.utils.VisitLogWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -23,6 +26,12 @@ import java.util.Map;
 public class AdminController {
     @Autowired
     private AdminService adminService;
+    @Autowired
+    private AuthorTimeSeriesService authorTimeSeriesService;
+    @Autowired
+    private VisitLogWriter visitLogWriter;
+    @Autowired
+    private TwoLevelCacheManager cacheManager;
 
     @RequestMapping(method = RequestMethod.PUT, value = "/api/admin/user/ban")
     public Result<?> banUser(String name) {
@@ -151,4 +160,19 @@ public class AdminController {
         return adminService.reduceByMid(mid);
     }
 
+    @RequestMapping(method = RequestMethod.POST, value = "/data/time-series/author")
+    public Result<?> importAuthorTimeSeries() {
+        return authorTimeSeriesService.importAll();
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/visit-log/stat")
+    public Map<String, Object> getVisitLogStat() {
+        return visitLogWriter.getStat();
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/cache/stat")
+    public Map<String, Map<String, Object>> getCacheStat() {
+        return cacheManager.getStat();
+    }
+
 }
@@ -14,6 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
@@ -35,18 +36,18 @@ public class AuthorController {
     private Logger logger = LogManager.getLogger();
 
     @RequestMapping(method = RequestMethod.GET, value = "/api/author/{mid}/history-data")
-    public List<Author.Data> getAuthorHistoryDetails(
+    public Mono<List<Author.Data>> getAuthorHistoryDetails(
             @PathVariable("mid") Long mid) {
         logger.info("获取mid: [{}]的历史数据", mid);
-        return authorService.getHistoryData(mid);
+        return authorService.getHistoryDataReactive(mid);
     }
 
 
     @RequestMapping(method = RequestMethod.GET, value = "/api/author/{mid}")
-    public Author getAuthorDetails(
+    public Mono<Author> getAuthorDetails(
             @PathVariable("mid") Long mid, @RequestParam(defaultValue = "1") Integer type) {
         logger.info("获取mid: [{}]的详细数据", mid);
-        return authorService.getAuthorDetails(mid);
+        return authorService.getAuthorDetailsReactive(mid);
     }
 
     @RequestMapping(method = RequestMethod.POST, value = "/api/author")
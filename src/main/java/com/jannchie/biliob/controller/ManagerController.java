@@ -7,8 +7,10 @@ import com.jannchie.biliob.form.AddCreditToUserForm;
 import com.jannchie.biliob.model.User;
 import com.jannchie.biliob.object.AuthorIntervalRecord;
 import com.jannchie.biliob.service.CreditService;
+import com.jannchie.biliob.utils.RedisOps;
 import com.jannchie.biliob.utils.Result;
 import com.jannchie.biliob.utils.UserUtils;
+import com.jannchie.biliob.utils.schedule.CrawlScheduler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -32,11 +34,20 @@ public class ManagerController {
     CreditService creditService;
     @Autowired
     private UserUtils userUtils;
+    @Autowired
+    private CrawlScheduler crawlScheduler;
+    @Autowired
+    private RedisOps redisOps;
 
     @RequestMapping(method = RequestMethod.GET, value = "/data/queue")
     public HashMap<String, Long> getQueueCount() {
-        Calendar c = Calendar.getInstance();
         HashMap<String, Long> result = new HashMap<>();
+        if (crawlScheduler.isEnabled()) {
+            result.put("authorQueue", redisOps.getAuthorQueueLength());
+            result.put("videoQueue", redisOps.getVideoQueueLength());
+            return result;
+        }
+        Calendar c = Calendar.getInstance();
         Long countAuthor = mongoTemplate.count(Query.query(Criteria.where("next").lt(c.getTime())), AuthorIntervalRecord.class);
         Long countVideo = mongoTemplate.count(Query.query(Criteria.where("next").lt(c.getTime())), "video_interval");
         result.put("authorQueue", countAuthor);
@@ -54,6 +65,7 @@ public class ManagerController {
     public Result<?> setUserData(@RequestBody User user) {
         mongoTemplate.updateFirst(Query.query(Criteria.where("name").is(user.getName())),
                 Update.update("credit", user.getCredit()).set("exp", user.getExp()), User.class);
+        userUtils.evictUser(user.getName());
         return new Result<>(ResultEnum.SUCCEED);
     }
 
@@ -65,6 +77,7 @@ public class ManagerController {
             return new Result<>(ResultEnum.PERMISSION_DENIED);
         }
         mongoTemplate.updateFirst(Query.query(Criteria.where("name").is(name)), Update.update("role", role), User.class);
+        userUtils.evictUser(name);
         return new Result<>(ResultEnum.SUCCEED);
     }
 
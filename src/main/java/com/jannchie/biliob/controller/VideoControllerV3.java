@@ -8,6 +8,7 @@ import org.apache.logging.log4j.Logger;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -39,17 +40,17 @@ public class VideoControllerV3 {
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/api/video/v3/av{aid}/stat")
-    public List<VideoStat> listVideoStats(
+    public Mono<List<VideoStat>> listVideoStats(
             @PathVariable("aid") Long aid) {
         logger.info("获得视频历史[aid: {}]", aid);
-        return videoService.listVideoStat(aid);
+        return videoService.listVideoStatReactive(aid);
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/api/video/v3/BV{bvid}/stat")
-    public List<VideoStat> listVideoStats(
+    public Mono<List<VideoStat>> listVideoStats(
             @PathVariable("bvid") String bvid) {
         logger.info("获得视频历史[bvid: {}]", bvid);
-        return videoService.listVideoStat(bvid);
+        return videoService.listVideoStatReactive(bvid);
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/api/video/v3/average")
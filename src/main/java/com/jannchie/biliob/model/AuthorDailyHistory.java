@@ -0,0 +1,52 @@
+package com.jannchie.biliob.model;
+
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * UP主按日汇总的历史数据，每个UP主一条文档。
+ * data 按时间倒序排列，每天只保留当天的第一条数据；
+ * watermark 为已汇总的 author_data 中最新一条数据的时间。
+ *
+ * @author Jannchie
+ */
+@Document("author_daily_history")
+public class AuthorDailyHistory {
+    private Long mid;
+    private Date watermark;
+    private ArrayList<Author.Data> data;
+
+    public AuthorDailyHistory() {
+    }
+
+    public AuthorDailyHistory(Long mid) {
+        this.mid = mid;
+        this.data = new ArrayList<>();
+    }
+
+    public Long getMid() {
+        return mid;
+    }
+
+    public void setMid(Long mid) {
+        this.mid = mid;
+    }
+
+    public Date getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(Date watermark) {
+        this.watermark = watermark;
+    }
+
+    public ArrayList<Author.Data> getData() {
+        return data;
+    }
+
+    public void setData(ArrayList<Author.Data> data) {
+        this.data = data;
+    }
+}
@@ -32,6 +32,7 @@ public class Comment {
     private List<ObjectId> disLikeList;
     private User user;
     private Integer like;
+    private Integer dislike;
     private boolean liked;
 
     public List<Comment> getReplies() {
@@ -99,7 +100,11 @@ public class Comment {
     }
 
     public Integer getDislike() {
-        return disLikeList.size();
+        return dislike == null ? 0 : dislike;
+    }
+
+    public void setDislike(Integer dislike) {
+        this.dislike = dislike;
     }
 
     public Date getDate() {
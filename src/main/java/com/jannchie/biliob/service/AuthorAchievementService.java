@@ -36,7 +36,7 @@ public interface AuthorAchievementService {
     Result<?> analyzeAllAuthorAchievement();
 
     /**
-     * Analyze daily achievement
+     * Analyze daily achievement of the days after the last analyzed day
      *
      * @param mid mid
      */
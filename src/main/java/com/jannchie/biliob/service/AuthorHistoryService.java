@@ -0,0 +1,195 @@
+package com.jannchie.biliob.service;
+
+import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.model.AuthorDailyHistory;
+import com.mongodb.client.model.Filters;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_DAY;
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
+
+/**
+ * 维护UP主按日汇总的历史数据。
+ * 爬虫在本服务之外写入 author_data，因此由定时任务推进汇总：每次找出上次运行以来有新数据的UP主，
+ * 只拉取各自 watermark 之后的数据，并把新的一天以 $push 插入到 data 开头，已有的按日数据不会重写。
+ * 读取时只读汇总文档；还没有汇总的UP主临时按全部数据计算，并交给下一次定时任务建立汇总。
+ *
+ * @author Jannchie
+ */
+@Service
+public class AuthorHistoryService {
+    private static final Logger logger = LogManager.getLogger();
+    /**
+     * 查找有新数据的UP主时向前多查的时间，覆盖爬取时间早于写入时间的数据
+     */
+    private static final long DISCOVERY_OVERLAP = MICROSECOND_OF_MINUTES * 5;
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final AuthorTimeSeriesService authorTimeSeriesService;
+    private final Set<Long> pendingMids = ConcurrentHashMap.newKeySet();
+    /**
+     * 上次查找新数据的时间。只存在内存中，重启时向前查找一天；停机更久时，
+     * 其间有新数据的UP主会在下一次被爬取时按各自的 watermark 补齐
+     */
+    private Date checkpoint = new Date(System.currentTimeMillis() - MICROSECOND_OF_DAY);
+
+    @Autowired
+    public AuthorHistoryService(MongoTemplate mongoTemplate, ReactiveMongoTemplate reactiveMongoTemplate,
+                                AuthorTimeSeriesService authorTimeSeriesService) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.authorTimeSeriesService = authorTimeSeriesService;
+    }
+
+    private static long getDay(Author.Data data) {
+        return Math.floorDiv(data.getDatetime().getTime(), (long) MICROSECOND_OF_DAY);
+    }
+
+    /**
+     * 将按时间正序排列的新数据并入按日数据，每个自然日（UTC）只保留第一条。
+     *
+     * @param history       已有的按日数据，只需包含最新的一天
+     * @param ascendingData 按时间正序排列的新数据
+     * @return 新增的按日数据，按时间倒序排列，已插入到 history 的 data 开头
+     */
+    static List<Author.Data> merge(AuthorDailyHistory history, List<Author.Data> ascendingData) {
+        ArrayList<Author.Data> data = history.getData();
+        long latestDay = data.isEmpty() ? Long.MIN_VALUE : getDay(data.get(0));
+        ArrayList<Author.Data> newBuckets = new ArrayList<>();
+        for (Author.Data each : ascendingData) {
+            if (each.getDatetime() == null) {
+                continue;
+            }
+            long day = getDay(each);
+            if (day > latestDay) {
+                each.setId(null);
+                each.setMid(null);
+                newBuckets.add(0, each);
+                latestDay = day;
+            }
+            history.setWatermark(each.getDatetime());
+        }
+        data.addAll(0, newBuckets);
+        return newBuckets;
+    }
+
+    private AuthorDailyHistory build(Long mid) {
+        AuthorDailyHistory history = new AuthorDailyHistory(mid);
+        merge(history, authorTimeSeriesService.listData(mid, null));
+        return history;
+    }
+
+    private ArrayList<Author.Data> buildForRead(Long mid) {
+        pendingMids.add(mid);
+        return build(mid).getData();
+    }
+
+    /**
+     * 获取UP主按日汇总的历史数据，按时间倒序排列。
+     *
+     * @param mid UP主ID
+     * @return 每日数据
+     */
+    public ArrayList<Author.Data> listDailyData(Long mid) {
+        AuthorDailyHistory history = mongoTemplate.findOne(Query.query(Criteria.where("mid").is(mid)), AuthorDailyHistory.class);
+        if (history == null || history.getData() == null) {
+            return buildForRead(mid);
+        }
+        return history.getData();
+    }
+
+    /**
+     * 与 listDailyData 相同，汇总已存在时查询不占用调用线程
+     *
+     * @param mid UP主ID
+     * @return 每日数据
+     */
+    public Mono<ArrayList<Author.Data>> listDailyDataReactive(Long mid) {
+        return reactiveMongoTemplate.findOne(Query.query(Criteria.where("mid").is(mid)), AuthorDailyHistory.class)
+                .filter(history -> history.getData() != null)
+                .map(AuthorDailyHistory::getData)
+                .switchIfEmpty(Mono.fromCallable(() -> buildForRead(mid)).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * 推进有新数据的UP主与读取时还没有汇总的UP主的按日数据
+     */
+    @Scheduled(initialDelay = MICROSECOND_OF_MINUTES, fixedDelay = MICROSECOND_OF_MINUTES)
+    public synchronized void advance() {
+        Date now = new Date();
+        Set<Long> mids = new HashSet<>(pendingMids);
+        for (BsonValue mid : mongoTemplate.getCollection("author_data")
+                .distinct("mid", Filters.gt("datetime", new Date(checkpoint.getTime() - DISCOVERY_OVERLAP)), BsonValue.class)) {
+            if (mid.isNumber()) {
+                mids.add(mid.asNumber().longValue());
+            }
+        }
+        int appended = 0;
+        for (Long mid : mids) {
+            try {
+                appended += advanceAuthor(mid);
+                pendingMids.remove(mid);
+            } catch (RuntimeException e) {
+                logger.error("推进UP主 {} 的按日数据失败", mid, e);
+            }
+        }
+        checkpoint = now;
+        if (!mids.isEmpty()) {
+            logger.info("推进按日数据：UP主 {} 个，新增 {} 天", mids.size(), appended);
+        }
+    }
+
+    /**
+     * @return 新增的天数
+     */
+    int advanceAuthor(Long mid) {
+        Query query = Query.query(Criteria.where("mid").is(mid));
+        query.fields().include("mid").include("watermark").slice("data", 1);
+        AuthorDailyHistory history = mongoTemplate.findOne(query, AuthorDailyHistory.class);
+        if (history == null || history.getWatermark() == null) {
+            history = build(mid);
+            if (history.getWatermark() == null) {
+                return 0;
+            }
+            mongoTemplate.upsert(Query.query(Criteria.where("mid").is(mid)),
+                    new Update().setOnInsert("data", history.getData()).setOnInsert("watermark", history.getWatermark()),
+                    AuthorDailyHistory.class);
+            return history.getData().size();
+        }
+        if (history.getData() == null) {
+            history.setData(new ArrayList<>());
+        }
+        Date watermark = history.getWatermark();
+        List<Author.Data> newData = authorTimeSeriesService.listData(mid, new Date(watermark.getTime() + 1));
+        if (newData.isEmpty()) {
+            return 0;
+        }
+        List<Author.Data> newBuckets = merge(history, newData);
+        Update update = Update.update("watermark", history.getWatermark());
+        if (!newBuckets.isEmpty()) {
+            update.push("data").atPosition(Update.Position.FIRST).each(newBuckets.toArray());
+        }
+        // 以读取时的 watermark 为条件，其他实例已经推进过时不会重复插入
+        mongoTemplate.updateFirst(Query.query(Criteria.where("mid").is(mid).and("watermark").is(watermark)), update, AuthorDailyHistory.class);
+        return newBuckets.size();
+    }
+}
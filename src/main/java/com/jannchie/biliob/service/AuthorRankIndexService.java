@@ -0,0 +1,127 @@
+package com.jannchie.biliob.service;
+
+import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.model.AuthorRankData;
+import com.jannchie.biliob.utils.RankIndex;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
+
+/**
+ * UP主排名索引。
+ * 定时扫描一次 author 集合，为粉丝、播放、阅读、点赞四项指标各自建立有序数组，
+ * 查询排名时只需在内存中二分查找，不再对整个集合执行 count。
+ *
+ * @author Jannchie
+ */
+@Service
+public class AuthorRankIndexService {
+    private static final Logger logger = LogManager.getLogger();
+    private static final String FANS = "cFans";
+    private static final String ARCHIVE_VIEW = "cArchive_view";
+    private static final String ARTICLE_VIEW = "cArticle_view";
+    private static final String LIKE = "cLike";
+    private static final int BATCH_SIZE = 10000;
+    private final MongoTemplate mongoTemplate;
+    private volatile Snapshot snapshot = new Snapshot(RankIndex.empty(), RankIndex.empty(), RankIndex.empty(), RankIndex.empty());
+
+    @Autowired
+    public AuthorRankIndexService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    private static long rank(RankIndex index, Number value) {
+        if (value == null || value.longValue() == 0) {
+            return -1;
+        }
+        // 快照建立后该UP主的数据可能已经上涨，排名至少为 1
+        return Math.max(1L, index.countGreaterOrEqual(value.longValue()));
+    }
+
+    private static void append(LongBuffer buffer, Document document, String key) {
+        Object value = document.get(key);
+        if (value instanceof Number && ((Number) value).longValue() != 0) {
+            buffer.add(((Number) value).longValue());
+        }
+    }
+
+    public boolean isReady() {
+        return snapshot.fans.size() != 0;
+    }
+
+    public AuthorRankData getRankData(Author author) {
+        Snapshot s = snapshot;
+        return new AuthorRankData(
+                rank(s.archiveView, author.getcArchiveView()),
+                rank(s.articleView, author.getcArticleView()),
+                rank(s.like, author.getcLike()),
+                rank(s.fans, author.getcFans()));
+    }
+
+    @Scheduled(initialDelay = MICROSECOND_OF_MINUTES, fixedDelay = MICROSECOND_OF_MINUTES * 10)
+    @Async
+    public void refresh() {
+        long start = Calendar.getInstance().getTimeInMillis();
+        LongBuffer fans = new LongBuffer();
+        LongBuffer archiveView = new LongBuffer();
+        LongBuffer articleView = new LongBuffer();
+        LongBuffer like = new LongBuffer();
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection("author")
+                .find()
+                .projection(Projections.fields(Projections.excludeId(), Projections.include(FANS, ARCHIVE_VIEW, ARTICLE_VIEW, LIKE)))
+                .batchSize(BATCH_SIZE)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                append(fans, document, FANS);
+                append(archiveView, document, ARCHIVE_VIEW);
+                append(articleView, document, ARTICLE_VIEW);
+                append(like, document, LIKE);
+            }
+        }
+        snapshot = new Snapshot(fans.toIndex(), archiveView.toIndex(), articleView.toIndex(), like.toIndex());
+        logger.info("[FINISH] 重建UP主排名索引：{} 条，耗时 {}ms", fans.size, Calendar.getInstance().getTimeInMillis() - start);
+    }
+
+    private static class Snapshot {
+        private final RankIndex fans;
+        private final RankIndex archiveView;
+        private final RankIndex articleView;
+        private final RankIndex like;
+
+        private Snapshot(RankIndex fans, RankIndex archiveView, RankIndex articleView, RankIndex like) {
+            this.fans = fans;
+            this.archiveView = archiveView;
+            this.articleView = articleView;
+            this.like = like;
+        }
+    }
+
+    private static class LongBuffer {
+        private long[] values = new long[1024];
+        private int size = 0;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+
+        private RankIndex toIndex() {
+            return RankIndex.of(values, size);
+        }
+    }
+}
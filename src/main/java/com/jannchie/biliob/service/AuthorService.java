@@ -7,8 +7,10 @@ import com.jannchie.biliob.object.AuthorVisitRecord;
 import com.jannchie.biliob.utils.MySlice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author jannchie
@@ -24,6 +26,14 @@ public interface AuthorService {
      */
     Author getAuthorDetails(Long mid);
 
+    /**
+     * 获取作者详情，数据库查询不占用请求线程，作者信息、历史数据、爬取频率与成就并发查询
+     *
+     * @param mid 作者id
+     * @return 作者详细信息，不存在时为空
+     */
+    Mono<Author> getAuthorDetailsReactive(Long mid);
+
     /**
      * get aggregated data of author
      *
@@ -134,6 +144,14 @@ public interface AuthorService {
      */
     void upsertAuthorFreq(Long mid, Integer interval, Integer delay);
 
+    /**
+     * upsert frequency of authors in bulk, same as calling upsertAuthorFreq(mid, interval) for every entry
+     *
+     * @param intervalMap interval of every crawl, by author id
+     * @return count of authors whose interval or next crawl time changed
+     */
+    int upsertAuthorFreq(Map<Long, Integer> intervalMap);
+
     /**
      * 获取作者ID以及累计访问次数的对象列表
      *
@@ -208,5 +226,13 @@ public interface AuthorService {
      */
     List<Author.Data> getHistoryData(Long mid);
 
+    /**
+     * Get author history data without blocking the request thread
+     *
+     * @param mid author id
+     * @return author data list
+     */
+    Mono<List<Author.Data>> getHistoryDataReactive(Long mid);
+
     List<Author> listAuthors();
 }
@@ -0,0 +1,277 @@
+package com.jannchie.biliob.service;
+
+import com.jannchie.biliob.constant.ResultEnum;
+import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.utils.LocalCache;
+import com.jannchie.biliob.utils.Result;
+import com.jannchie.biliob.utils.timeseries.MappedTimeSeriesStore;
+import com.jannchie.biliob.utils.timeseries.TimeSeries;
+import com.jannchie.biliob.utils.timeseries.TimeSeriesStore;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
+import static com.jannchie.biliob.utils.timeseries.TimeSeriesStore.NULL;
+
+/**
+ * UP主历史数据的读取入口。
+ * 配置了 biliob.time-series.path 时，author_data 会同步到本地的内存映射列式存储中，
+ * 范围查询直接在本地完成，每个UP主最多每 SYNC_INTERVAL 同步一次；未配置时直接查询 author_data。
+ *
+ * @author Jannchie
+ */
+@Service
+public class AuthorTimeSeriesService {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int DATETIME = 0;
+    private static final int FANS = 1;
+    private static final int ATTENTION = 2;
+    private static final int ARCHIVE = 3;
+    private static final int ARTICLE = 4;
+    private static final int ARCHIVE_VIEW = 5;
+    private static final int ARTICLE_VIEW = 6;
+    private static final int LIKE = 7;
+    private static final int COLUMN_COUNT = 8;
+    /**
+     * 读取时同步 author_data 的最短间隔。爬虫在本服务之外写入 author_data，
+     * 间隔内的读取直接使用本地数据，不再查询数据库
+     */
+    private static final long SYNC_INTERVAL = MICROSECOND_OF_MINUTES * 5;
+    private static final int SYNCED_CACHE_SIZE = 100000;
+    private final MongoTemplate mongoTemplate;
+    private final TimeSeriesStore store;
+    private final LocalCache<Long, Boolean> recentlySynced = new LocalCache<>(SYNCED_CACHE_SIZE, SYNC_INTERVAL);
+
+    @Autowired
+    public AuthorTimeSeriesService(MongoTemplate mongoTemplate, @Value("${biliob.time-series.path:}") String path) {
+        this.mongoTemplate = mongoTemplate;
+        this.store = "".equals(path) ? null : new MappedTimeSeriesStore(Paths.get(path), COLUMN_COUNT);
+    }
+
+    private static long toLong(Number value) {
+        return value == null ? NULL : value.longValue();
+    }
+
+    private static Long toLongOrNull(long value) {
+        return value == NULL ? null : value;
+    }
+
+    private static Integer toIntegerOrNull(long value) {
+        return value == NULL ? null : (int) value;
+    }
+
+    private static long[] toRow(Author.Data data) {
+        long[] row = new long[COLUMN_COUNT];
+        row[DATETIME] = data.getDatetime().getTime();
+        row[FANS] = toLong(data.getFans());
+        row[ATTENTION] = toLong(data.getAttention());
+        row[ARCHIVE] = toLong(data.getArchive());
+        row[ARTICLE] = toLong(data.getArticle());
+        row[ARCHIVE_VIEW] = toLong(data.getArchiveView());
+        row[ARTICLE_VIEW] = toLong(data.getArticleView());
+        row[LIKE] = toLong(data.getLike());
+        return row;
+    }
+
+    private static Author.Data toData(Long mid, TimeSeries series, int i) {
+        Author.Data data = new Author.Data();
+        data.setMid(mid);
+        data.setDatetime(new Date(series.getTimestamp(i)));
+        data.setFans(toLongOrNull(series.get(FANS, i)));
+        data.setAttention(toIntegerOrNull(series.get(ATTENTION, i)));
+        data.setArchive(toIntegerOrNull(series.get(ARCHIVE, i)));
+        data.setArticle(toIntegerOrNull(series.get(ARTICLE, i)));
+        data.setArchiveView(toLongOrNull(series.get(ARCHIVE_VIEW, i)));
+        data.setArticleView(toLongOrNull(series.get(ARTICLE_VIEW, i)));
+        data.setLike(toLongOrNull(series.get(LIKE, i)));
+        return data;
+    }
+
+    private static int getColumn(String key) {
+        switch (key) {
+            case "fans":
+                return FANS;
+            case "attention":
+                return ATTENTION;
+            case "archive":
+                return ARCHIVE;
+            case "article":
+                return ARTICLE;
+            case "archiveView":
+                return ARCHIVE_VIEW;
+            case "articleView":
+                return ARTICLE_VIEW;
+            case "like":
+                return LIKE;
+            default:
+                throw new IllegalArgumentException(key);
+        }
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * 将 author_data 中比本地存储更新的数据追加到本地存储
+     *
+     * @param mid UP主ID
+     * @return 追加的条数
+     */
+    public int sync(Long mid) {
+        recentlySynced.put(mid, Boolean.TRUE, System.currentTimeMillis());
+        long last = store.lastTimestamp(mid);
+        Criteria criteria = Criteria.where("mid").is(mid);
+        if (last != Long.MIN_VALUE) {
+            criteria.and("datetime").gt(new Date(last));
+        }
+        List<Author.Data> dataList = mongoTemplate.find(Query.query(criteria).with(Sort.by("datetime").ascending()), Author.Data.class);
+        List<long[]> rows = new ArrayList<>(dataList.size());
+        for (Author.Data data : dataList) {
+            if (data.getDatetime() != null) {
+                rows.add(toRow(data));
+            }
+        }
+        return store.append(mid, rows);
+    }
+
+    /**
+     * 读取本地存储，距上次同步超过 SYNC_INTERVAL 时先同步
+     */
+    private TimeSeries scan(Long mid, Date from) {
+        if (recentlySynced.get(mid, System.currentTimeMillis()) == null) {
+            sync(mid);
+        }
+        return store.scan(mid, from == null ? Long.MIN_VALUE : from.getTime(), Long.MAX_VALUE);
+    }
+
+    /**
+     * 获取UP主的历史数据
+     *
+     * @param mid  UP主ID
+     * @param from 起始时间（含），为 null 时获取全部数据
+     * @return 按时间正序排列的数据
+     */
+    public List<Author.Data> listData(Long mid, Date from) {
+        if (store == null) {
+            Criteria criteria = Criteria.where("mid").is(mid);
+            if (from != null) {
+                criteria.and("datetime").gte(from);
+            }
+            return mongoTemplate.find(Query.query(criteria).with(Sort.by("datetime").ascending()), Author.Data.class);
+        }
+        TimeSeries series = scan(mid, from);
+        List<Author.Data> result = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            result.add(toData(mid, series, i));
+        }
+        return result;
+    }
+
+    /**
+     * 获取某项数据超过给定值的数据中，该项最小的一条
+     *
+     * @param mid   UP主ID
+     * @param key   字段名
+     * @param value 给定值
+     * @return 数据，从未超过时返回 null
+     */
+    public Author.Data findMinGreaterThan(Long mid, String key, long value) {
+        if (store == null) {
+            Query query = Query.query(Criteria.where("mid").is(mid).and(key).gt(value)).with(Sort.by(key).ascending());
+            query.fields().include("mid").include("datetime");
+            return mongoTemplate.findOne(query, Author.Data.class);
+        }
+        int column = getColumn(key);
+        Author.Data data = findMinGreaterThan(mid, scan(mid, null), column, value);
+        if (data == null) {
+            // 距上次同步不足 SYNC_INTERVAL 时本地可能还没有刚爬取的数据
+            sync(mid);
+            data = findMinGreaterThan(mid, store.scan(mid, Long.MIN_VALUE, Long.MAX_VALUE), column, value);
+        }
+        return data;
+    }
+
+    private static Author.Data findMinGreaterThan(Long mid, TimeSeries series, int column, long value) {
+        int minIndex = -1;
+        for (int i = 0; i < series.size(); i++) {
+            long each = series.get(column, i);
+            if (each != NULL && each > value && (minIndex == -1 || each < series.get(column, minIndex))) {
+                minIndex = i;
+            }
+        }
+        return minIndex == -1 ? null : toData(mid, series, minIndex);
+    }
+
+    /**
+     * 获取某项数据最大时的数据
+     *
+     * @param mid UP主ID
+     * @param key 字段名
+     * @return 数据，没有数据时返回 null
+     */
+    public Author.Data findMax(Long mid, String key) {
+        if (store == null) {
+            return mongoTemplate.findOne(Query.query(Criteria.where("mid").is(mid)).with(Sort.by(key).descending()), Author.Data.class);
+        }
+        int column = getColumn(key);
+        TimeSeries series = scan(mid, null);
+        int maxIndex = -1;
+        for (int i = 0; i < series.size(); i++) {
+            long each = series.get(column, i);
+            if (each != NULL && (maxIndex == -1 || each > series.get(column, maxIndex))) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex == -1 ? null : toData(mid, series, maxIndex);
+    }
+
+    /**
+     * 从 author_data 批量导入所有UP主的历史数据，已导入的部分会被跳过
+     *
+     * @return 执行结果
+     */
+    @Async
+    public Result<?> importAll() {
+        if (store == null) {
+            return new Result<>(ResultEnum.EXECUTE_FAILURE);
+        }
+        logger.info("[START] 导入UP主历史数据到本地存储");
+        long authorCount = 0;
+        long rowCount = 0;
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection("author")
+                .find()
+                .projection(Projections.fields(Projections.excludeId(), Projections.include("mid")))
+                .batchSize(1000)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Object mid = cursor.next().get("mid");
+                if (!(mid instanceof Number)) {
+                    continue;
+                }
+                rowCount += sync(((Number) mid).longValue());
+                if (++authorCount % 10000 == 0) {
+                    logger.info("已导入 {} 个UP主，共 {} 条数据", authorCount, rowCount);
+                }
+            }
+        }
+        logger.info("[FINISH] 导入UP主历史数据：{} 个UP主，共 {} 条数据", authorCount, rowCount);
+        return new Result<>(ResultEnum.SUCCEED);
+    }
+}
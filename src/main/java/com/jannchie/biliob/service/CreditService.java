@@ -6,19 +6,20 @@ import com.jannchie.biliob.constant.ResultEnum;
 import com.jannchie.biliob.model.User;
 import com.jannchie.biliob.model.UserRecord;
 import com.jannchie.biliob.utils.Result;
+import com.jannchie.biliob.utils.UserRecordWriter;
 import com.jannchie.biliob.utils.UserUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.NoTransactionException;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
-
-import java.math.BigDecimal;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * @author Jannchie
@@ -30,79 +31,105 @@ public class CreditService {
     private MongoTemplate mongoTemplate;
     @Autowired
     private UserUtils userUtils;
+    @Autowired
+    private UserRecordWriter userRecordWriter;
+    @Autowired
+    private UserRankIndexService userRankIndexService;
 
-    @Transactional(rollbackFor = Exception.class)
     public <T> Result<T> doCreditOperationWithoutExp(CreditConstant creditConstant, String message, Double credit) {
-        return doCreditOperation(userUtils.getUser(), creditConstant, message, true, false, credit);
+        return doCreditOperation(userUtils.getUserProfile(), creditConstant, message, true, false, credit);
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public <T> Result<T> doCreditOperationFansGuessing(User user, CreditConstant creditConstant, String message, Double credit) {
         return doCreditOperation(user, creditConstant, message, true, false, credit);
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public <T> Result<T> doCreditOperation(CreditConstant creditConstant) {
         return this.doCreditOperation(creditConstant, creditConstant.getMsg(), true);
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public <T> Result<T> doCreditOperation(CreditConstant creditConstant, String message) {
         return this.doCreditOperation(creditConstant, message, true);
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public <T> Result<T> doCreditOperation(CreditConstant creditConstant, String message, Boolean isExecuted) {
-        User user = userUtils.getUser();
+        User user = userUtils.getUserProfile();
         return doCreditOperation(user, creditConstant, message, isExecuted);
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public <T> Result<T> doCreditOperation(User user, CreditConstant creditConstant, String message) {
         return doCreditOperation(user, creditConstant, message, true);
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public <T> Result<T> doCreditOperation(User user, CreditConstant creditConstant, String message, Boolean isExecuted) {
         return doCreditOperation(user, creditConstant, message, isExecuted, true);
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public <T> Result<T> doCreditOperation(User user, CreditConstant creditConstant, String message, Boolean isExecuted, Boolean withExp) {
         return doCreditOperation(user, creditConstant, message, isExecuted, withExp, creditConstant.getValue());
     }
 
-    @Transactional(rollbackFor = Exception.class)
+    /**
+     * 以一次原子的 findAndModify 增减积分与经验，积分不足或已被封禁时不修改。
+     * 已执行的操作的记录异步批量写入；未执行的操作的记录之后会按ID更新，
+     * 处于调用方事务中的记录需要随事务回滚，这两种记录立即写入。
+     */
     public <T> Result<T> doCreditOperation(User user, CreditConstant creditConstant, String message, Boolean isExecuted, Boolean withExp, Double credit) {
         if (user == null) {
-            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            rollbackCallerTransaction();
             logger.info("用户为NULL");
             return ResultEnum.HAS_NOT_LOGGED_IN.getCreditResult();
         }
-        if (user.getCredit() < -credit) {
-            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
-            logger.info("积分不足");
-            return ResultEnum.CREDIT_NOT_ENOUGH.getCreditResult();
-        }
         if (user.getBan() != null && user.getBan()) {
             return ResultEnum.BANNED.getCreditResult();
         }
-        user.setCredit(BigDecimal.valueOf(user.getCredit()).add(BigDecimal.valueOf(credit)).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue());
-        double exp = 0D;
+        double exp = withExp ? Math.abs(credit) : 0D;
+        Query query = Query.query(Criteria.where(DbFields.ID).is(user.getId()).and("credit").gte(-credit).and(DbFields.BAN).ne(true));
+        query.fields().include("credit").include("exp");
+        Update update = new Update().inc("credit", credit);
+        if (withExp) {
+            update.inc("exp", exp);
+        }
+        User updated = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class);
+        if (updated == null) {
+            rollbackCallerTransaction();
+            // 传入的用户对象可能是封禁之前读取的
+            if (mongoTemplate.exists(Query.query(Criteria.where(DbFields.ID).is(user.getId()).and(DbFields.BAN).is(true)), User.class)) {
+                return ResultEnum.BANNED.getCreditResult();
+            }
+            logger.info("积分不足");
+            return ResultEnum.CREDIT_NOT_ENOUGH.getCreditResult();
+        }
+        user.setCredit(updated.getCredit());
+        user.setExp(updated.getExp());
+        userUtils.evictUser(user);
         if (withExp) {
-            exp = Math.abs(credit);
-            user.setExp(BigDecimal.valueOf(user.getExp()).add(BigDecimal.valueOf(exp)).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue());
+            userRankIndexService.onExpChanged(user.getId(), updated.getExp());
         }
-        mongoTemplate.update(User.class).matching(Query.query(Criteria.where(DbFields.ID).is(user.getId()))).apply(Update.update("credit", user.getCredit()).set("exp", user.getExp())).first();
         UserRecord ur = new UserRecord(user, creditConstant, message, isExecuted);
         ur.setCredit(credit);
-        ur = mongoTemplate.save(ur);
         if (!isExecuted) {
+            ur = mongoTemplate.save(ur);
             Result<T> r = ResultEnum.ACCEPTED.getResult(user);
             r.setUserRecord(ur);
             return r;
         }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            mongoTemplate.save(ur);
+        } else {
+            userRecordWriter.append(ur);
+        }
         logger.info("观测者[{}]: {} [exp:{}(+{}), cre:{}({})]", user.getName(), message, user.getExp(), exp, user.getCredit(), credit);
         return ResultEnum.SUCCEED.getResult(user);
     }
+
+    /**
+     * 调用方可能已经在同一事务中写入了其他数据，操作失败时与原先一样回滚调用方的事务
+     */
+    private void rollbackCallerTransaction() {
+        try {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        } catch (NoTransactionException ignored) {
+        }
+    }
 }
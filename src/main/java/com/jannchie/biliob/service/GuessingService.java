@@ -1,13 +1,16 @@
 package com.jannchie.biliob.service;
 
 import com.jannchie.biliob.constant.CreditConstant;
+import com.jannchie.biliob.constant.DbFields;
 import com.jannchie.biliob.constant.ResultEnum;
 import com.jannchie.biliob.model.Author;
 import com.jannchie.biliob.model.FansGuessingItem;
 import com.jannchie.biliob.model.GuessingItem;
 import com.jannchie.biliob.model.User;
+import com.jannchie.biliob.model.UserRecord;
 import com.jannchie.biliob.object.UserGuessingResult;
 import com.jannchie.biliob.utils.BiliobUtils;
+import com.jannchie.biliob.utils.GuessingScorer;
 import com.jannchie.biliob.utils.Result;
 import com.jannchie.biliob.utils.UserUtils;
 import org.apache.logging.log4j.LogManager;
@@ -17,6 +20,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -27,7 +31,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.util.*;
@@ -42,9 +46,13 @@ import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
 @EnableTransactionManagement
 public class GuessingService {
     private static final Logger logger = LogManager.getLogger();
+    private static final String CASHED_USER_GUESSING = "cashed_user_guessing";
+    private static final int SETTLEMENT_BATCH_SIZE = 1000;
     @Autowired
     ApplicationContext appContext;
     @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
     private MongoTemplate mongoTemplate;
     @Autowired
     private BiliobUtils biliobUtils;
@@ -52,6 +60,8 @@ public class GuessingService {
     private CreditService creditService;
     @Autowired
     private UserUtils userUtils;
+    @Autowired
+    private AuthorTimeSeriesService authorTimeSeriesService;
 
     public Date getCorrectGuessingTime(FansGuessingItem.PokerChip pokerChip) {
         Calendar.getInstance().getTime();
@@ -158,9 +168,7 @@ public class GuessingService {
         fansGuessingItems.forEach(fansGuessingItem -> {
             if (fansGuessingItem.getAuthor().getcFans() > fansGuessingItem.getTarget()) {
                 logger.info("竞猜[{}]已经达成", fansGuessingItem.getTitle());
-                Query query = Query.query(Criteria.where("mid").is(fansGuessingItem.getAuthor().getMid()).and("fans").gt(fansGuessingItem.getTarget())).with(Sort.by("fans").ascending());
-                query.fields().include("mid").include("datetime");
-                Author.Data data = mongoTemplate.findOne(query, Author.Data.class);
+                Author.Data data = authorTimeSeriesService.findMinGreaterThan(fansGuessingItem.getAuthor().getMid(), "fans", fansGuessingItem.getTarget());
                 assert data != null;
                 mongoTemplate.updateFirst(
                         Query.query(Criteria.where("guessingId").is(fansGuessingItem.getGuessingId())),
@@ -173,9 +181,7 @@ public class GuessingService {
                         Update.update("state", 2),
                         FansGuessingItem.class);
             } else {
-                Query query = Query.query(Criteria.where("mid").is(fansGuessingItem.getAuthor().getMid())).with(Sort.by("fans").descending());
-                query.fields().include("mid").include("datetime").include("fans");
-                Author.Data data = mongoTemplate.findOne(query, Author.Data.class);
+                Author.Data data = authorTimeSeriesService.findMax(fansGuessingItem.getAuthor().getMid(), "fans");
                 assert data != null;
                 logger.info("{} 还差 {}", fansGuessingItem.getTitle(), fansGuessingItem.getTarget() - data.getFans());
             }
@@ -272,161 +278,102 @@ public class GuessingService {
     }
 
     @Async
-    @Transactional(rollbackFor = Exception.class)
     @Scheduled(initialDelay = 0, fixedDelay = MICROSECOND_OF_MINUTES * 60 * 24)
     public Result<?> judgeFinishedFansGuessing() {
         logger.info("计算收益");
-        try {
-            Integer finishedState = 3;
-            List<FansGuessingItem> fansGuessingItems = mongoTemplate.find(Query.query(Criteria.where("state").is(finishedState)), FansGuessingItem.class);
-            for (FansGuessingItem f : fansGuessingItems
-            ) {
-                ArrayList<UserGuessingResult> resultList = getUserGuessingResults(f);
-                mongoTemplate.updateFirst(Query.query(Criteria.where("guessingId").is(f.getGuessingId())), Update.update("result", resultList).set("state", 4), FansGuessingItem.class);
-                resultList.forEach(userGuessingResult -> {
-                    User u = mongoTemplate.findOne(Query.query(Criteria.where("name").is(userGuessingResult.getName())), User.class);
-                    if (u == null) {
-                        return;
-                    }
-                    if (!mongoTemplate.exists(Query.query(Criteria.where("name").is(userGuessingResult.getName()).and("guessingId").is(f.getGuessingId())), UserGuessingResult.class, "cashed_user_guessing")) {
-                        userGuessingResult.setGuessingId(f.getGuessingId());
-                        creditService.doCreditOperationFansGuessing(u, CreditConstant.GUESSING_REVENUE, CreditConstant.GUESSING_REVENUE.getMsg(f.getGuessingId()), userGuessingResult.getRevenue());
-                        mongoTemplate.save(userGuessingResult, "cashed_user_guessing");
-                    }
-                });
+        Integer finishedState = 3;
+        List<FansGuessingItem> fansGuessingItems = mongoTemplate.find(Query.query(Criteria.where("state").is(finishedState)), FansGuessingItem.class);
+        for (FansGuessingItem f : fansGuessingItems
+        ) {
+            try {
+                settleFansGuessing(f);
+            } catch (Exception e) {
+                logger.error("竞猜[{}]结算中断，下次结算时继续", f.getGuessingId(), e);
             }
-            return new Result<>(ResultEnum.SUCCEED);
-        } catch (Exception e) {
-            e.printStackTrace();
-            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
-            return null;
         }
+        return new Result<>(ResultEnum.SUCCEED);
     }
 
-    private ArrayList<UserGuessingResult> getUserGuessingResults(FansGuessingItem f) {
-        Date finalReachDate = getFinalReachDate(f);
-        return getUserGuessingResults(f, finalReachDate);
+    /**
+     * 结算一个已经结束的竞猜。
+     * <p>
+     * 参与者按批结算，每批在一个事务中：一次查询读取这批用户，批量增加积分，并批量写入积分记录与结算记录。
+     * 已经写入 cashed_user_guessing 的用户即为检查点，中断后再次结算时跳过；全部结算后竞猜的状态改为 4。
+     *
+     * @param f 已经结束的竞猜
+     * @return 本次发放了收益的用户数
+     */
+    public int settleFansGuessing(FansGuessingItem f) {
+        String guessingId = f.getGuessingId();
+        ArrayList<UserGuessingResult> resultList = getUserGuessingResults(f);
+        mongoTemplate.updateFirst(Query.query(Criteria.where("guessingId").is(guessingId)), Update.update("result", resultList), FansGuessingItem.class);
+
+        Query cashedQuery = Query.query(Criteria.where("guessingId").is(guessingId));
+        cashedQuery.fields().include("name");
+        Set<String> cashedNames = mongoTemplate.find(cashedQuery, UserGuessingResult.class, CASHED_USER_GUESSING)
+                .stream().map(UserGuessingResult::getName).collect(Collectors.toSet());
+        List<UserGuessingResult> pending = resultList.stream()
+                .filter(r -> !cashedNames.contains(r.getName())).collect(Collectors.toList());
+
+        String message = CreditConstant.GUESSING_REVENUE.getMsg(guessingId);
+        int settled = 0;
+        for (int from = 0; from < pending.size(); from += SETTLEMENT_BATCH_SIZE) {
+            List<UserGuessingResult> batch = pending.subList(from, Math.min(from + SETTLEMENT_BATCH_SIZE, pending.size()));
+            Integer count = transactionTemplate.execute(status -> settleBatch(guessingId, message, batch));
+            settled += count == null ? 0 : count;
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("guessingId").is(guessingId)), Update.update("state", 4), FansGuessingItem.class);
+        logger.info("竞猜[{}]结算完成：{}人，本次发放{}人", guessingId, resultList.size(), settled);
+        return settled;
     }
 
-    private ArrayList<UserGuessingResult> getUserGuessingResults(FansGuessingItem f, Date finalReachDate) {
-        List<GuessingItem.PokerChip> pokerChipList = f.getPokerChips();
-        ArrayList<UserGuessingResult> results = new ArrayList<>();
-        Double rate = 0.47;
-        if (pokerChipList != null) {
-            for (int i = 0; i < pokerChipList.size(); i++) {
-                GuessingItem.PokerChip p = pokerChipList.get(i);
-                int range = 10;
-                int l = Math.max(i - range, 0);
-                int r = Math.min(i + range, pokerChipList.size());
-
-                long averageLossHour = 0L;
-                for (int j = l; j < r; j++) {
-                    GuessingItem.PokerChip t = pokerChipList.get(j);
-                    Date guessingDate = getCorrectGuessingTime(t);
-                    Long lossHour = Math.abs((finalReachDate.getTime() - guessingDate.getTime()) / 3600000);
-                    averageLossHour += lossHour;
-                }
-                averageLossHour /= (l - r);
-
-                String userName = p.getUser().getName();
-                Date guessingDate = getCorrectGuessingTime(p);
-                Double credit = p.getCredit();
-                Date createTime = p.getCreateTime();
-
-                Long lossHour = Math.abs((finalReachDate.getTime() - guessingDate.getTime()) / 3600000);
-                Long foreHour = (finalReachDate.getTime() - createTime.getTime()) / 3600000;
-
-                UserGuessingResult result;
-                result = new UserGuessingResult();
-                result.setForeHour(foreHour);
-                result.setLossHour(lossHour);
-                Long score = getScore(lossHour, foreHour, averageLossHour);
-                result.setScore((long) (score * rate * credit));
-                result.setCredit(credit);
-                result.setAverageDate(guessingDate);
-                result.setAverageCreateTime(createTime);
-                result.setName(userName);
-                results.add(result);
-            }
+    private int settleBatch(String guessingId, String message, List<UserGuessingResult> batch) {
+        List<String> names = batch.stream().map(UserGuessingResult::getName).collect(Collectors.toList());
+        Query userQuery = Query.query(Criteria.where("name").in(names));
+        userQuery.fields().include("name").include("credit").include("ban");
+        Map<String, User> users = new HashMap<>(batch.size() * 2);
+        for (User u : mongoTemplate.find(userQuery, User.class)) {
+            users.put(u.getName(), u);
         }
 
-        Long sumScore = results.stream().map(UserGuessingResult::getScore).reduce(0L, Long::sum);
-        Double sumCredit = results.stream().map(UserGuessingResult::getCredit).reduce(0D, Double::sum);
-        Double useCredit = sumCredit * rate;
-        Double scoreCredit = useCredit / sumScore;
-        results.forEach(r -> {
-            double revenue = r.getCredit() * (1 - rate) + r.getScore() * scoreCredit;
-            r.setRevenue(new BigDecimal(revenue).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue());
-        });
-        Map<String, UserGuessingResult> r = new HashMap<>(100);
-        Map<String, Integer> c = new HashMap<>(100);
-        Map<String, Long> avgC = new HashMap<>(100);
-        Map<String, Long> avgF = new HashMap<>(100);
-        Map<String, Long> avgP = new HashMap<>(100);
-        Map<String, Long> avgD = new HashMap<>(100);
-        for (UserGuessingResult res : results
-        ) {
-            if (r.containsKey(res.getName())) {
-                UserGuessingResult tmp = r.get(res.getName());
-                tmp.setScore(tmp.getScore() + res.getScore());
-                tmp.setRevenue(tmp.getRevenue() + res.getRevenue());
-                tmp.setCredit(tmp.getCredit() + res.getCredit());
-                avgC.put(res.getName(), avgC.get(res.getName()) + res.getAverageCreateTime().getTime());
-                avgF.put(res.getName(), avgF.get(res.getName()) + res.getForeHour());
-                avgP.put(res.getName(), avgP.get(res.getName()) + res.getLossHour());
-                avgD.put(res.getName(), avgD.get(res.getName()) + res.getAverageDate().getTime());
-                c.put(tmp.getName(), c.get(tmp.getName()) + 1);
-            } else {
-                avgC.put(res.getName(), res.getAverageCreateTime().getTime());
-                avgD.put(res.getName(), res.getAverageDate().getTime());
-                avgF.put(res.getName(), res.getForeHour());
-                avgP.put(res.getName(), res.getLossHour());
-                r.put(res.getName(), res);
-                c.put(res.getName(), 1);
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        List<UserRecord> records = new ArrayList<>();
+        List<UserGuessingResult> cashed = new ArrayList<>();
+        for (UserGuessingResult userGuessingResult : batch) {
+            User u = users.get(userGuessingResult.getName());
+            if (u == null) {
+                continue;
+            }
+            userGuessingResult.setGuessingId(guessingId);
+            cashed.add(userGuessingResult);
+            // 原先按用户积分加上收益后保留两位小数写回，这里先对收益取整再增加
+            Double revenue = BigDecimal.valueOf(userGuessingResult.getRevenue()).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue();
+            // 与 CreditService.doCreditOperation 相同，积分不足或已被封禁时不发放
+            if (u.getCredit() < -revenue || Boolean.TRUE.equals(u.getBan())) {
+                continue;
             }
+            bulkOperations.updateOne(Query.query(Criteria.where(DbFields.ID).is(u.getId())), new Update().inc("credit", revenue));
+            UserRecord ur = new UserRecord(u, CreditConstant.GUESSING_REVENUE, message, true);
+            ur.setCredit(revenue);
+            records.add(ur);
         }
-        r.values().forEach((res) -> {
-            res.setAverageCreateTime(new Date(avgC.get(res.getName()) / c.get(res.getName())));
-            res.setAverageDate(new Date(avgD.get(res.getName()) / c.get(res.getName())));
-            res.setForeHour(avgF.get(res.getName()) / c.get(res.getName()));
-            res.setLossHour(avgP.get(res.getName()) / c.get(res.getName()));
-            res.setRevenue(BigDecimal.valueOf(res.getRevenue()).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue());
-        });
-        results = new ArrayList<>(r.values());
-        return results;
+        if (!records.isEmpty()) {
+            bulkOperations.execute();
+            mongoTemplate.insertAll(records);
+        }
+        if (!cashed.isEmpty()) {
+            mongoTemplate.insert(cashed, CASHED_USER_GUESSING);
+        }
+        return records.size();
     }
 
+    private ArrayList<UserGuessingResult> getUserGuessingResults(FansGuessingItem f) {
+        Date finalReachDate = getFinalReachDate(f);
+        return getUserGuessingResults(f, finalReachDate);
+    }
 
-    private Long getScore(Long lossHour, Long foreHour, long averageLossHour) {
-        double error = lossHour.doubleValue() / foreHour.doubleValue();
-        if (error > 1) {
-            error = 1;
-        }
-        long lossBetter = averageLossHour - lossHour;
-        if (lossBetter > 147) {
-            lossBetter = 147;
-        }
-        if (lossBetter < -47) {
-            lossBetter = -47;
-        }
-        long score = 147;
-        score += lossBetter;
-        score += foreHour / 720;
-        score -= 100 * error;
-        if (lossHour < 24 && foreHour > 30 * 24 || lossHour < 24 * 7 && foreHour > 90 * 24 || lossHour < 24 * 14 && foreHour > 120 * 24) {
-            score *= 4;
-        } else if (lossHour < 48 && foreHour > 30 * 24 || lossHour < 24 * 14 && foreHour > 90 * 24 || lossHour < 24 * 21 && foreHour > 120 * 24) {
-            score *= 3;
-        } else if (lossHour < 24 * 3 && foreHour > 14 * 24 || lossHour < 24 * 21 && foreHour > 90 * 24 || lossHour < 24 * 28 && foreHour > 120 * 24) {
-            score *= 2;
-        } else if (lossHour < 3 && foreHour > 7 * 24) {
-            score *= 1.8;
-        } else if (lossHour < 6 && foreHour > 5 * 24) {
-            score *= 1.5;
-        } else if (lossHour < 12) {
-            score *= 1.2;
-        }
-        return score;
+    private ArrayList<UserGuessingResult> getUserGuessingResults(FansGuessingItem f, Date finalReachDate) {
+        return GuessingScorer.score(f.getPokerChips(), finalReachDate.getTime());
     }
 
     private Date getFinalReachDate(FansGuessingItem f) {
@@ -478,7 +425,7 @@ public class GuessingService {
     }
 
     public Result<?> cancelRevenue(String guessingId) {
-        List<UserGuessingResult> ugrs = mongoTemplate.find(Query.query(Criteria.where("guessingId").is(guessingId)), UserGuessingResult.class, "cashed_user_guessing");
+        List<UserGuessingResult> ugrs = mongoTemplate.find(Query.query(Criteria.where("guessingId").is(guessingId)), UserGuessingResult.class, CASHED_USER_GUESSING);
         for (UserGuessingResult ugr : ugrs
         ) {
             String userName = ugr.getName();
@@ -0,0 +1,207 @@
+package com.jannchie.biliob.service;
+
+import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.model.Video;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.List;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
+
+/**
+ * 全站的UP主、视频与用户数量统计。
+ * <p>
+ * 每个计数是 site_counter 集合中的一个文档，观测UP主、观测视频、修改强制观测与注册用户时原子地增减，
+ * 读取时只需一次查询。爬虫等其他程序也会写入或修改UP主与视频，因此每小时按精确计数校正一次。
+ *
+ * @author Jannchie
+ */
+@Service
+public class SiteCounterService {
+    private static final Logger logger = LogManager.getLogger();
+    private static final String COLLECTION_NAME = "site_counter";
+    private static final String VALUE = "value";
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public SiteCounterService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * 与 {@link Counter} 中的查询条件一致地判断UP主属于哪一个计数
+     *
+     * @return UP主所属的计数，不属于任何计数时返回 null
+     */
+    public static Counter authorCounter(Boolean focus, Boolean forceFocus) {
+        if (Boolean.TRUE.equals(forceFocus)) {
+            return Counter.AUTHOR_FORCE_FOCUS;
+        }
+        if (forceFocus != null || focus == null) {
+            return null;
+        }
+        return focus ? Counter.AUTHOR_FOCUS : Counter.AUTHOR_NOT_FOCUS;
+    }
+
+    /**
+     * 与 {@link Counter} 中的查询条件一致地判断视频属于哪一个计数
+     *
+     * @return 视频所属的计数，不属于任何计数时返回 null
+     */
+    public static Counter videoCounter(Boolean focus) {
+        if (focus == null) {
+            return null;
+        }
+        return focus ? Counter.VIDEO_FOCUS : Counter.VIDEO_NOT_FOCUS;
+    }
+
+    public void onAuthorInserted(Author author) {
+        increase(authorCounter(author.getFocus(), author.getForceFocus()), 1);
+    }
+
+    public void onVideoInserted(Video video) {
+        increase(videoCounter(video.getFocus()), 1);
+    }
+
+    public void onUserInserted() {
+        increase(Counter.USER, 1);
+    }
+
+    /**
+     * UP主的强制观测状态改变后，从原来的计数移到新的计数
+     *
+     * @param focus         UP主的观测状态
+     * @param oldForceFocus 原来的强制观测状态，字段不存在时为 null
+     * @param newForceFocus 新的强制观测状态
+     */
+    public void onAuthorForceFocusChanged(Boolean focus, Boolean oldForceFocus, Boolean newForceFocus) {
+        Counter oldCounter = authorCounter(focus, oldForceFocus);
+        Counter newCounter = authorCounter(focus, newForceFocus);
+        if (oldCounter != newCounter) {
+            increase(oldCounter, -1);
+            increase(newCounter, 1);
+        }
+    }
+
+    private void increase(Counter counter, long delta) {
+        if (counter == null) {
+            return;
+        }
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(counter.key)),
+                new Update().inc(VALUE, delta), COLLECTION_NAME);
+    }
+
+    /**
+     * 获取全部计数，尚未统计过时先统计一次
+     *
+     * @return 各计数的值
+     */
+    public EnumMap<Counter, Long> getCounts() {
+        EnumMap<Counter, Long> counts = new EnumMap<>(Counter.class);
+        List<Document> documents = mongoTemplate.findAll(Document.class, COLLECTION_NAME);
+        for (Document document : documents) {
+            Counter counter = Counter.ofKey(document.getString("_id"));
+            Object value = document.get(VALUE);
+            if (counter != null && value instanceof Number) {
+                counts.put(counter, ((Number) value).longValue());
+            }
+        }
+        if (counts.size() < Counter.values().length) {
+            return reconcile();
+        }
+        return counts;
+    }
+
+    public long getCount(Counter counter) {
+        return getCounts().get(counter);
+    }
+
+    /**
+     * 按精确计数校正全部计数
+     *
+     * @return 校正后的各计数的值
+     */
+    @Scheduled(initialDelay = MICROSECOND_OF_MINUTES, fixedDelay = MICROSECOND_OF_MINUTES * 60)
+    public EnumMap<Counter, Long> reconcile() {
+        EnumMap<Counter, Long> counts = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            long count = mongoTemplate.count(Query.query(counter.criteria()), counter.collectionName);
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(counter.key)),
+                    Update.update(VALUE, count), COLLECTION_NAME);
+            counts.put(counter, count);
+        }
+        logger.info("校正全站数量统计：{}", counts);
+        return counts;
+    }
+
+    public enum Counter {
+        /**
+         * 强制观测的UP主
+         */
+        AUTHOR_FORCE_FOCUS("author.forceFocus", "author"),
+        /**
+         * 正在观测且未设置强制观测的UP主
+         */
+        AUTHOR_FOCUS("author.focus", "author"),
+        /**
+         * 停止观测且未设置强制观测的UP主
+         */
+        AUTHOR_NOT_FOCUS("author.notFocus", "author"),
+        /**
+         * 正在观测的视频
+         */
+        VIDEO_FOCUS("video.focus", "video"),
+        /**
+         * 停止观测的视频
+         */
+        VIDEO_NOT_FOCUS("video.notFocus", "video"),
+        /**
+         * 用户
+         */
+        USER("user", "user");
+
+        private final String key;
+        private final String collectionName;
+
+        Counter(String key, String collectionName) {
+            this.key = key;
+            this.collectionName = collectionName;
+        }
+
+        private static Counter ofKey(String key) {
+            for (Counter counter : values()) {
+                if (counter.key.equals(key)) {
+                    return counter;
+                }
+            }
+            return null;
+        }
+
+        private Criteria criteria() {
+            switch (this) {
+                case AUTHOR_FORCE_FOCUS:
+                    return Criteria.where("forceFocus").is(true);
+                case AUTHOR_FOCUS:
+                    return Criteria.where("focus").is(true).and("forceFocus").exists(false);
+                case AUTHOR_NOT_FOCUS:
+                    return Criteria.where("focus").is(false).and("forceFocus").exists(false);
+                case VIDEO_FOCUS:
+                    return Criteria.where("focus").is(true);
+                case VIDEO_NOT_FOCUS:
+                    return Criteria.where("focus").is(false);
+                default:
+                    return new Criteria();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.jannchie.biliob.service;
+
+import com.jannchie.biliob.constant.DbFields;
+import com.jannchie.biliob.utils.OrderStatisticTree;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
+
+/**
+ * 用户经验排名索引。
+ * 保存每个未被封禁的用户的经验，排名即 count(exp >= x and ban != true)，总人数包括被封禁和没有经验的用户。
+ * 经验由 CreditService 修改时同步更新索引；注册、封禁等其他修改由定时重建校正。
+ *
+ * @author Jannchie
+ */
+@Service
+public class UserRankIndexService {
+    private static final Logger logger = LogManager.getLogger();
+    private static final String EXP = "exp";
+    private static final int BATCH_SIZE = 10000;
+    private final MongoTemplate mongoTemplate;
+    private Map<ObjectId, Double> expMap = new HashMap<>();
+    private OrderStatisticTree tree = new OrderStatisticTree();
+    private Set<ObjectId> unrankedIds = new HashSet<>();
+    private volatile boolean ready = false;
+
+    @Autowired
+    public UserRankIndexService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 经验为 exp 的用户的排名
+     *
+     * @param exp 经验
+     * @return 未被封禁且经验不低于 exp 的用户数
+     */
+    public synchronized long getRank(double exp) {
+        return tree.countGreaterOrEqual(exp);
+    }
+
+    public synchronized long getUserCount() {
+        return tree.size() + unrankedIds.size();
+    }
+
+    /**
+     * 用户的经验改变后更新索引
+     *
+     * @param userId 用户ID
+     * @param exp    新的经验
+     */
+    public synchronized void onExpChanged(ObjectId userId, Double exp) {
+        if (!ready || userId == null || exp == null) {
+            return;
+        }
+        Double previous = expMap.put(userId, exp);
+        if (previous != null) {
+            tree.remove(previous);
+        } else {
+            // 重建时没有经验的用户已计入总人数，进入排名后不再重复计算
+            unrankedIds.remove(userId);
+        }
+        tree.add(exp);
+    }
+
+    @Scheduled(initialDelay = MICROSECOND_OF_MINUTES, fixedDelay = MICROSECOND_OF_MINUTES * 10)
+    @Async
+    public void refresh() {
+        long start = Calendar.getInstance().getTimeInMillis();
+        Map<ObjectId, Double> newExpMap = new HashMap<>();
+        OrderStatisticTree newTree = new OrderStatisticTree();
+        Set<ObjectId> newUnrankedIds = new HashSet<>();
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection("user")
+                .find()
+                .projection(Projections.include(EXP, DbFields.BAN))
+                .batchSize(BATCH_SIZE)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                Object exp = document.get(EXP);
+                if (!Boolean.TRUE.equals(document.get(DbFields.BAN)) && exp instanceof Number) {
+                    newExpMap.put(document.getObjectId(DbFields.ID), ((Number) exp).doubleValue());
+                    newTree.add(((Number) exp).doubleValue());
+                } else {
+                    newUnrankedIds.add(document.getObjectId(DbFields.ID));
+                }
+            }
+        }
+        synchronized (this) {
+            expMap = newExpMap;
+            tree = newTree;
+            unrankedIds = newUnrankedIds;
+            ready = true;
+        }
+        logger.info("[FINISH] 重建用户排名索引：{} 条，耗时 {}ms", newTree.size(), Calendar.getInstance().getTimeInMillis() - start);
+    }
+}
@@ -8,7 +8,6 @@ import com.jannchie.biliob.model.User;
 import com.jannchie.biliob.model.UserRecord;
 import com.jannchie.biliob.utils.MySlice;
 import com.jannchie.biliob.utils.Result;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -288,7 +287,6 @@ public interface UserService {
      *
      * @return user count
      */
-    @Cacheable("user-count")
     long getUserCount();
 
     /**
@@ -5,7 +5,9 @@ import com.jannchie.biliob.model.Video;
 import com.jannchie.biliob.model.VideoVisit;
 import com.jannchie.biliob.object.VideoIntervalRecord;
 import com.jannchie.biliob.utils.BiliobUtils;
+import com.jannchie.biliob.utils.DataReducer;
 import com.jannchie.biliob.utils.Result;
+import com.jannchie.biliob.utils.VisitLogWriter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,6 +29,10 @@ public class VideoServiceV2 {
     MongoTemplate mongoTemplate;
     @Autowired
     BiliobUtils biliobUtils;
+    @Autowired
+    VisitLogWriter visitLogWriter;
+    @Autowired
+    VisitCounterService visitCounterService;
 
 
     public Video getVideoDetailByAid(Long aid) {
@@ -78,7 +84,8 @@ public class VideoServiceV2 {
         vv.setAid(aid);
         vv.setDate(Calendar.getInstance().getTime());
         vv.setName(finalUserName);
-        mongoTemplate.save(vv);
+        visitLogWriter.write(vv);
+        visitCounterService.recordVideoVisit(aid);
     }
 
     private void addVideoVisit(String bvid) {
@@ -86,9 +93,10 @@ public class VideoServiceV2 {
         logger.info("V2：用户[{}]查询bvid[{}]的详细数据", finalUserName, bvid);
         VideoVisit vv = new VideoVisit();
         vv.setBvid(bvid);
+        vv.setAid(visitCounterService.recordVideoVisit(bvid));
         vv.setDate(Calendar.getInstance().getTime());
         vv.setName(finalUserName);
-        mongoTemplate.save(vv);
+        visitLogWriter.write(vv);
     }
 
     private Video getVideoWithAuthorDataByCriteria(Criteria c) {
@@ -107,6 +115,6 @@ public class VideoServiceV2 {
         }
         v.setAuthorList(null);
         v.setKeyword(null);
-        return v;
+        return DataReducer.videoDataDownSampling(v);
     }
 }
@@ -3,7 +3,9 @@ package com.jannchie.biliob.service;
 import com.jannchie.biliob.constant.DbFields;
 import com.jannchie.biliob.model.*;
 import com.jannchie.biliob.utils.BiliobUtils;
+import com.jannchie.biliob.utils.DataReducer;
 import com.jannchie.biliob.utils.UserUtils;
+import com.jannchie.biliob.utils.VisitLogWriter;
 import com.mongodb.client.MongoClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,11 +15,13 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.TextCriteria;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
 
 import java.util.Arrays;
 import java.util.Calendar;
@@ -32,11 +36,17 @@ public class VideoServiceV3 {
     @Autowired
     private MongoTemplate mongoTemplate;
     @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    @Autowired
     private MongoClient mongoClient;
     @Autowired
     private BiliobUtils biliobUtils;
     @Autowired
     private UserUtils userUtils;
+    @Autowired
+    private VisitLogWriter visitLogWriter;
+    @Autowired
+    private VisitCounterService visitCounterService;
 
     private void addVideoVisit(Long aid, String type) {
         String finalUserName = biliobUtils.getUserName();
@@ -45,7 +55,8 @@ public class VideoServiceV3 {
         vv.setAid(aid);
         vv.setDate(Calendar.getInstance().getTime());
         vv.setName(finalUserName);
-        mongoTemplate.save(vv);
+        visitLogWriter.write(vv);
+        visitCounterService.recordVideoVisit(aid);
     }
 
     private void addVideoVisit(String bvid, String type) {
@@ -53,9 +64,10 @@ public class VideoServiceV3 {
         logger.info("V3：用户[{}]查询aid[{}]的{}数据", finalUserName, bvid, type);
         VideoVisit vv = new VideoVisit();
         vv.setBvid(bvid);
+        vv.setAid(visitCounterService.recordVideoVisit(bvid));
         vv.setDate(Calendar.getInstance().getTime());
         vv.setName(finalUserName);
-        mongoTemplate.save(vv);
+        visitLogWriter.write(vv);
     }
 
     public VideoInfo getVideoInfo(Long aid) {
@@ -77,7 +89,7 @@ public class VideoServiceV3 {
     }
 
     private List<VideoStat> getVideoStat(Criteria c) {
-        return mongoTemplate.find(Query.query(c), VideoStat.class);
+        return DataReducer.videoStatDownSampling(mongoTemplate.find(Query.query(c).with(Sort.by("datetime").ascending()), VideoStat.class));
     }
 
     public List<VideoStat> listVideoStat(String bvid) {
@@ -86,10 +98,32 @@ public class VideoServiceV3 {
         return getVideoStat(c);
     }
 
+    /**
+     * 与 listVideoStat 相同，查询不占用请求线程
+     */
+    public Mono<List<VideoStat>> listVideoStatReactive(Long aid) {
+        addVideoVisit(aid, "历史");
+        return getVideoStatReactive(Criteria.where("aid").is(aid));
+    }
+
+    /**
+     * 与 listVideoStat 相同，查询不占用请求线程
+     */
+    public Mono<List<VideoStat>> listVideoStatReactive(String bvid) {
+        addVideoVisit(bvid, "历史");
+        return getVideoStatReactive(Criteria.where("bvid").is(bvid));
+    }
+
+    private Mono<List<VideoStat>> getVideoStatReactive(Criteria c) {
+        return reactiveMongoTemplate.find(Query.query(c).with(Sort.by("datetime").ascending()), VideoStat.class)
+                .collectList()
+                .map(DataReducer::videoStatDownSampling);
+    }
+
 
     private VideoInfo getVideoInfoByCriteria(Criteria c) {
         VideoInfo vi = mongoTemplate.findOne(Query.query(c), VideoInfo.class);
-        User u = userUtils.getUser();
+        User u = userUtils.getUserProfile();
         if (vi == null) {
             return null;
         }
@@ -208,7 +242,7 @@ public class VideoServiceV3 {
         return mongoTemplate.find(Query.query(Criteria.where(DbFields.AID).in(user.getFavoriteAid())), VideoInfo.class);
     }
 
-    @Cacheable(value = "listKeywordIndex", key = "#kw")
+    @Cacheable(value = "listKeywordIndex", key = "#kw", sync = true)
     public List<Document> listKeywordIndex(String kw) {
         List<Document> docs = this.listTopicAuthor(kw, 200);
         Object[] midList = docs.stream().map(document -> document.get(DbFields.MID)).toArray();
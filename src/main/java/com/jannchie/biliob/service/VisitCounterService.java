@@ -0,0 +1,196 @@
+package com.jannchie.biliob.service;
+
+import com.jannchie.biliob.model.VideoInfo;
+import com.jannchie.biliob.utils.DecayingTopK;
+import com.jannchie.biliob.utils.LocalCache;
+import com.mongodb.client.MongoCursor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_DAY;
+
+/**
+ * UP主与视频的访问热度统计。
+ * 访问记录写入时同步计数，分别按一小时、一天、七天的时间常数衰减，热门列表直接从内存中读取。
+ *
+ * @author Jannchie
+ */
+@Service
+public class VisitCounterService {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int CAPACITY = 1024;
+    private static final int AID_CACHE_SIZE = 10000;
+    private final MongoTemplate mongoTemplate;
+    private final EnumMap<Window, DecayingTopK> authorCounters = new EnumMap<>(Window.class);
+    private final EnumMap<Window, DecayingTopK> videoCounters = new EnumMap<>(Window.class);
+    private final LocalCache<String, Long> aidOfBvid = new LocalCache<>(AID_CACHE_SIZE, MICROSECOND_OF_DAY);
+
+    @Autowired
+    public VisitCounterService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        for (Window window : Window.values()) {
+            authorCounters.put(window, new DecayingTopK(CAPACITY, window.lifetime));
+            videoCounters.put(window, new DecayingTopK(CAPACITY, window.lifetime));
+        }
+    }
+
+    private static void offer(EnumMap<Window, DecayingTopK> counters, Long key, double count, long time) {
+        if (key == null) {
+            return;
+        }
+        for (DecayingTopK counter : counters.values()) {
+            counter.offer(key, count, time);
+        }
+    }
+
+    public void recordAuthorVisit(Long mid) {
+        offer(authorCounters, mid, 1, System.currentTimeMillis());
+    }
+
+    public void recordVideoVisit(Long aid) {
+        offer(videoCounters, aid, 1, System.currentTimeMillis());
+    }
+
+    /**
+     * 按 bvid 记录视频访问，与按 aid 的访问合并计数
+     *
+     * @param bvid 视频BV号
+     * @return 视频的 aid，视频不存在时为 null
+     */
+    public Long recordVideoVisit(String bvid) {
+        Long aid = getAid(bvid);
+        recordVideoVisit(aid);
+        return aid;
+    }
+
+    private Long getAid(String bvid) {
+        if (bvid == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        LocalCache.Entry<Long> entry = aidOfBvid.get(bvid, now);
+        if (entry != null) {
+            return entry.getValue();
+        }
+        Query query = Query.query(Criteria.where("bvid").is(bvid));
+        query.fields().include("aid");
+        VideoInfo videoInfo = mongoTemplate.findOne(query, VideoInfo.class);
+        Long aid = videoInfo == null ? null : videoInfo.getAid();
+        if (aid != null) {
+            aidOfBvid.put(bvid, aid, now);
+        }
+        return aid;
+    }
+
+    /**
+     * 获取访问最多的UP主
+     *
+     * @param window 统计窗口
+     * @param limit  数量
+     * @return 按热度降序排列的UP主ID与衰减后的访问次数
+     */
+    public List<DecayingTopK.Item> listTopAuthor(Window window, int limit) {
+        return authorCounters.get(window).top(limit, System.currentTimeMillis());
+    }
+
+    /**
+     * 获取访问最多的视频
+     *
+     * @param window 统计窗口
+     * @param limit  数量
+     * @return 按热度降序排列的视频ID与衰减后的访问次数
+     */
+    public List<DecayingTopK.Item> listTopVideo(Window window, int limit) {
+        return videoCounters.get(window).top(limit, System.currentTimeMillis());
+    }
+
+    /**
+     * 启动时按小时汇总最近七天的访问记录，作为计数的初始值
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        logger.info("[START] 加载访问热度");
+        warmUp("author_visit", "$mid", authorCounters);
+        // video_visit 中旧版记录的视频ID存放在 mid 字段
+        warmUp("video_visit", new Document("$ifNull", Arrays.asList("$aid", "$mid")), videoCounters);
+        logger.info("[FINISH] 加载访问热度");
+    }
+
+    private void warmUp(String collectionName, Object keyExpression, EnumMap<Window, DecayingTopK> counters) {
+        long now = System.currentTimeMillis();
+        long hour = MICROSECOND_OF_DAY / 24;
+        Document time = new Document("$subtract", Arrays.asList("$date", new Date(0)));
+        Document group = new Document("_id", new Document("key", keyExpression)
+                .append("hour", new Document("$subtract", Arrays.asList(time, new Document("$mod", Arrays.asList(time, hour))))))
+                .append("count", new Document("$sum", 1));
+        List<Document> pipeline = Arrays.asList(
+                new Document("$match", new Document("date", new Document("$gt", new Date(now - 7L * MICROSECOND_OF_DAY)))),
+                new Document("$group", group));
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(collectionName)
+                .aggregate(pipeline)
+                .allowDiskUse(true)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document each = cursor.next();
+                Document id = each.get("_id", Document.class);
+                Object key = id.get("key");
+                Object hourStart = id.get("hour");
+                if (key instanceof Number && hourStart instanceof Number) {
+                    double count = ((Number) each.get("count")).doubleValue();
+                    offer(counters, ((Number) key).longValue(), count, ((Number) hourStart).longValue());
+                }
+            }
+        } catch (Exception e) {
+            logger.error("加载访问热度失败：{}", collectionName, e);
+        }
+    }
+
+    public enum Window {
+        /**
+         * 一小时
+         */
+        HOUR(MICROSECOND_OF_DAY / 24),
+        /**
+         * 一天
+         */
+        DAY(MICROSECOND_OF_DAY),
+        /**
+         * 七天
+         */
+        WEEK(7L * MICROSECOND_OF_DAY);
+
+        private final long lifetime;
+
+        Window(long lifetime) {
+            this.lifetime = lifetime;
+        }
+
+        /**
+         * 按天数选取最接近的统计窗口
+         *
+         * @param days 天数
+         * @return 统计窗口
+         */
+        public static Window ofDays(Integer days) {
+            if (days == null || days < 1) {
+                return HOUR;
+            }
+            return days < 7 ? DAY : WEEK;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.jannchie.biliob.model.*;
 import com.jannchie.biliob.object.AuthorIntervalCount;
 import com.jannchie.biliob.repository.UserRepository;
 import com.jannchie.biliob.service.AdminService;
+import com.jannchie.biliob.utils.AccessListCache;
 import com.jannchie.biliob.utils.IpUtil;
 import com.jannchie.biliob.utils.Result;
 import com.jannchie.biliob.utils.UserUtils;
@@ -46,6 +47,8 @@ public class AdminServiceImpl implements AdminService {
     private IpUtil ipUtil;
     @Autowired
     private UserUtils userUtils;
+    @Autowired
+    private AccessListCache accessListCache;
 
 
     /**
@@ -215,6 +218,7 @@ public class AdminServiceImpl implements AdminService {
     public ResponseEntity<?> grantUserAdminRole(@Valid String userName) {
         mongoTemplate.updateFirst(
                 Query.query(Criteria.where("name").is(userName)), Update.update("role", "管理员"), "user");
+        userUtils.evictUser(userName);
         return new ResponseEntity<>(new Result<>(ResultEnum.SUCCEED), HttpStatus.OK);
     }
 
@@ -228,6 +232,7 @@ public class AdminServiceImpl implements AdminService {
     public ResponseEntity<?> cancelUserAdminRole(@Valid String userName) {
         mongoTemplate.updateFirst(
                 Query.query(Criteria.where("name").is(userName)), Update.update("role", "普通研究员"), "user");
+        userUtils.evictUser(userName);
         return new ResponseEntity<>(new Result<>(ResultEnum.SUCCEED), HttpStatus.OK);
     }
 
@@ -326,6 +331,7 @@ public class AdminServiceImpl implements AdminService {
     public ResponseEntity<Result<?>> banUserAgent(String userAgent) {
         banSuspiciousIp();
         mongoTemplate.save(new UserAgentBlackList(userAgent));
+        accessListCache.addUserAgent(userAgent);
         return ResponseEntity.ok(new Result<>(ResultEnum.SUCCEED));
     }
 
@@ -402,6 +408,7 @@ public class AdminServiceImpl implements AdminService {
             return new Result<>(ResultEnum.ALREADY_BANED);
         }
         mongoTemplate.save(new Blacklist(ip, reason, forever));
+        accessListCache.addBlackList(ip);
         return new Result<>(ResultEnum.SUCCEED);
     }
 
@@ -411,6 +418,7 @@ public class AdminServiceImpl implements AdminService {
             return new Result<>(ResultEnum.ALREADY_BANED);
         }
         mongoTemplate.save(new Blacklist(ip, reason));
+        accessListCache.addBlackList(ip);
         return new Result<>(ResultEnum.SUCCEED);
     }
 
@@ -475,6 +483,7 @@ public class AdminServiceImpl implements AdminService {
     @Override
     public Result<?> banUser(String name) {
         mongoTemplate.upsert(Query.query(Criteria.where(DbFields.NAME).is(name)), Update.update(DbFields.BAN, true), User.class);
+        userUtils.evictUser(name);
         return ResultEnum.SUCCEED.getResult();
     }
 
@@ -517,6 +526,7 @@ public class AdminServiceImpl implements AdminService {
             Double variance = getVariance(ip);
             if (getVariance(ip) < 0.02) {
                 mongoTemplate.save(new Blacklist(ip, "访问过于模式化"));
+                accessListCache.addBlackList(ip);
                 logger.info("[BAN] IP: {},Variance {}", ip, variance);
             }
         }
@@ -1,13 +1,15 @@
 package com.jannchie.biliob.service.impl;
 
 import com.jannchie.biliob.constant.AuthorAchievementEnum;
-import com.jannchie.biliob.constant.AuthorUniqueAchievementEnum;
 import com.jannchie.biliob.constant.ResultEnum;
 import com.jannchie.biliob.model.Author;
 import com.jannchie.biliob.model.AuthorDailyTrend;
 import com.jannchie.biliob.service.AuthorAchievementService;
+import com.jannchie.biliob.service.AuthorTimeSeriesService;
+import com.jannchie.biliob.utils.AchievementEvaluator;
 import com.jannchie.biliob.utils.Result;
 import org.apache.logging.log4j.LogManager;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Sort;
@@ -15,12 +17,15 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.Date;
-import java.util.HashSet;
-import java.util.List;
+import java.util.*;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_DAY;
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
 
 /**
  * @author Jannchie
@@ -28,8 +33,26 @@ import java.util.List;
 @Service
 public class AuthorAchievementServiceImpl implements AuthorAchievementService {
     private static final org.apache.logging.log4j.Logger logger = LogManager.getLogger();
+    private static final String DAILY_WATERMARK_COLLECTION = "author_daily_achievement_watermark";
+    private static final String DAILY_WATERMARK = "datetime";
+    private static final int DAILY_TREND_LOOKBACK_DAYS = 3;
+    private static final int WATERMARK_CHUNK_SIZE = 1000;
+    private static final AuthorAchievementEnum[] INCREASE_IN_DAY_ACHIEVEMENTS = {
+            AuthorAchievementEnum.INCREASE_IN_DAY_LV10,
+            AuthorAchievementEnum.INCREASE_IN_DAY_LV9,
+            AuthorAchievementEnum.INCREASE_IN_DAY_LV8};
+    private static final AuthorAchievementEnum[] DECREASE_IN_DAY_ACHIEVEMENTS = {
+            AuthorAchievementEnum.REDUCE_IN_DAY_LV9,
+            AuthorAchievementEnum.REDUCE_IN_DAY_LV8,
+            AuthorAchievementEnum.REDUCE_IN_DAY_LV7};
+    private static final AuthorAchievementEnum[] INCREASE_ACHIEVEMENTS = {
+            AuthorAchievementEnum.INCREASE_LV5,
+            AuthorAchievementEnum.INCREASE_LV4,
+            AuthorAchievementEnum.INCREASE_LV3};
     @Autowired
     private MongoTemplate mongoTemplate;
+    @Autowired
+    private AuthorTimeSeriesService authorTimeSeriesService;
 
     /**
      * analyze author achievement
@@ -51,13 +74,7 @@ public class AuthorAchievementServiceImpl implements AuthorAchievementService {
         if (achievements.size() != 0) {
             lastDate = achievements.get(achievements.size() - 1).getDate();
         }
-        Query q;
-        if (lastDate == null) {
-            q = Query.query(Criteria.where("mid").is(mid)).with(Sort.by("datetime").ascending());
-        } else {
-            q = Query.query(Criteria.where("mid").is(mid).and("datetime").gte(lastDate)).with(Sort.by("datetime").ascending());
-        }
-        List<Author.Data> dataList = mongoTemplate.find(q, Author.Data.class);
+        List<Author.Data> dataList = authorTimeSeriesService.listData(mid, lastDate);
         doAddAchievements(mid, hashSet, dataList);
         return new Result<>(ResultEnum.SUCCEED);
     }
@@ -80,143 +97,20 @@ public class AuthorAchievementServiceImpl implements AuthorAchievementService {
     }
 
     private void doRapidlyAddAchievements(Long mid, HashSet<Integer> hashSet, List<Author.Data> dataList) {
-        for (AuthorUniqueAchievementEnum e : AuthorUniqueAchievementEnum.values()
-        ) {
-            int size = dataList.size();
-            if (size < 1) {
-                return;
-            }
-            //已经获得该成就，则跳过
-            if (hashSet.contains(e.getId())) {
-                continue;
-            }
-            Long lastFans = dataList.get(0).getFans();
-            Long lastLike = dataList.get(0).getLike();
-            Long lastView = dataList.get(0).getArchiveView();
-            for (Author.Data value : dataList) {
-                if (lastFans == null) {
-                    lastFans = value.getFans();
-                }
-                if (lastLike == null) {
-                    lastLike = value.getLike();
-                }
-                if (lastView == null) {
-                    lastView = value.getArchiveView();
-                }
-                if (lastFans != null && lastView != null && lastLike != null) {
-                    break;
-                }
-            }
-
-            Long initFans = dataList.get(size - 1).getFans();
-            Long initLike = dataList.get(size - 1).getLike();
-            Long initView = dataList.get(size - 1).getArchiveView();
-            for (int i = size - 1; i >= 0; i--) {
-                if (initFans == null) {
-                    initFans = dataList.get(i).getFans();
-                }
-                if (initLike == null) {
-                    initLike = dataList.get(i).getLike();
-                }
-                if (initView == null) {
-                    initView = dataList.get(i).getArchiveView();
-                }
-                if (initView != null && initLike != null && initFans != null) {
-                    break;
-                }
-            }
-
-
-            Long val = e.getValue();
-            String key;
-            if (lastFans == null || lastView == null || lastLike == null) {
-                return;
-            }
-            Long initData;
-            if (e.getId() < 3010 && lastFans > e.getValue()) {
-                key = "fans";
-                initData = initFans;
-            } else if (e.getId() >= 3010 && e.getId() < 3020 && lastView > e.getValue()) {
-                key = "archiveView";
-                initData = initView;
-            } else if (e.getId() >= 3020 && e.getId() < 3030 && lastLike > e.getValue()) {
-                key = "like";
-                initData = initLike;
-            } else {
-                continue;
-            }
-            if (initData == null) {
-                continue;
-            }
-            Author.Data data = mongoTemplate.findOne(
-                    Query.query(
-                            Criteria.where("mid").is(mid).and(key).gt(val))
-                            .with(Sort.by("datetime").ascending()), Author.Data.class);
-            if (data == null) {
-                continue;
-            }
-            Author.Achievement a;
-            if ("fans".equals(key)) {
-                a = new Author.Achievement(e, mid, data.getFans());
-            } else if ("archiveView".equals(key)) {
-                a = new Author.Achievement(e, mid, data.getArchiveView());
-            } else {
-                a = new Author.Achievement(e, mid, data.getLike());
-            }
-            // 如果初始值大于判定点，则不填充date
-            if (initData > e.getValue()) {
-                a.setDate(null);
-            } else {
-                a.setDate(data.getDatetime());
-            }
-            mongoTemplate.save(a);
-            logger.info("为 {} 添加成就 {}", mid, a.getName());
-        }
+        insertAchievements(mid, AchievementEvaluator.evaluateUnique(mid, hashSet, dataList,
+                () -> authorTimeSeriesService.listData(mid, null)));
     }
 
     private void doAddAchievements(Long mid, HashSet<Integer> hashSet, List<Author.Data> dataList) {
-        for (AuthorAchievementEnum eachAchieve : AuthorAchievementEnum.values()) {
-            Integer id = eachAchieve.getId();
-            if (id >= 3000 && id < 3100) {
-                if (hashSet.contains(id)) {
-                    continue;
-                }
-                checkValue(id, mid, dataList);
-            }
-        }
+        insertAchievements(mid, AchievementEvaluator.evaluateCrossing(mid, hashSet, dataList));
     }
 
-    private void checkValue(Integer id, Long mid, List<Author.Data> dataList) {
-        AuthorAchievementEnum ae = AuthorAchievementEnum.getById(id);
-
-        long lastVal = 0L;
-        for (int i = 1; i < dataList.size(); i++) {
-            Author.Data data = dataList.get(i);
-            Long val;
-            if (id >= 3000 && id < 3010) {
-                val = data.getFans();
-            } else if (id >= 3010 && id < 3020) {
-                val = data.getArchiveView();
-            } else {
-                val = data.getLike();
-            }
-
-            if (ae == null) {
-                return;
-            }
-            if (val > ae.getValue()) {
-                Author.Achievement a = new Author.Achievement(ae, mid);
-                if (lastVal < ae.getValue()) {
-                    a.setDate(data.getDatetime());
-                } else {
-                    a.setDate(null);
-                }
-                mongoTemplate.insert(a);
-                logger.info("为 {} 添加成就 {}", mid, ae.getName());
-                return;
-            }
-            lastVal = val;
+    private void insertAchievements(Long mid, List<Author.Achievement> achievements) {
+        if (achievements.isEmpty()) {
+            return;
         }
+        mongoTemplate.insertAll(achievements);
+        achievements.forEach(a -> logger.info("为 {} 添加成就 {}", mid, a.getName()));
     }
 
     /**
@@ -230,70 +124,143 @@ public class AuthorAchievementServiceImpl implements AuthorAchievementService {
         return null;
     }
 
+    /**
+     * 定期找出最近有新的每日数据的UP主，逐个判定新增日期的每日成就
+     */
+    @Scheduled(initialDelay = MICROSECOND_OF_MINUTES * 5, fixedDelay = MICROSECOND_OF_MINUTES * 60)
+    public void analyzeRecentDailyAchievement() {
+        logger.info("[START] 判定每日成就");
+        Date since = new Date(System.currentTimeMillis() - DAILY_TREND_LOOKBACK_DAYS * MICROSECOND_OF_DAY);
+        List<Map> latest = mongoTemplate.aggregate(Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("datetime").gt(since)),
+                Aggregation.group("mid").max("datetime").as("datetime")
+        ), AuthorDailyTrend.class, Map.class).getMappedResults();
+        int count = 0;
+        for (int from = 0; from < latest.size(); from += WATERMARK_CHUNK_SIZE) {
+            List<Map> chunk = latest.subList(from, Math.min(from + WATERMARK_CHUNK_SIZE, latest.size()));
+            List<Long> mids = new ArrayList<>(chunk.size());
+            chunk.forEach(each -> mids.add(((Number) each.get("_id")).longValue()));
+            Map<Long, Date> watermarks = new HashMap<>(mids.size() * 2);
+            mongoTemplate.find(Query.query(Criteria.where("_id").in(mids)), Document.class, DAILY_WATERMARK_COLLECTION)
+                    .forEach(doc -> watermarks.put(((Number) doc.get("_id")).longValue(), doc.getDate(DAILY_WATERMARK)));
+            for (Map each : chunk) {
+                Long mid = ((Number) each.get("_id")).longValue();
+                Date watermark = watermarks.get(mid);
+                if (watermark == null || watermark.before((Date) each.get("datetime"))) {
+                    analyzeDailyAchievement(mid, watermark);
+                    count++;
+                }
+            }
+        }
+        logger.info("[FINISH] 判定每日成就：{} 位UP主", count);
+    }
+
     @Override
-    @Async
     public void analyzeDailyAchievement(Long mid) {
-        List<AuthorDailyTrend> dailyTrends = mongoTemplate.find(Query.query(Criteria.where("mid").is(mid)), AuthorDailyTrend.class);
-        if (dailyTrends.size() > 1) {
-            AuthorDailyTrend pData = dailyTrends.get(0);
-            for (AuthorDailyTrend cData : dailyTrends) {
-                if (cData.getFans() == null) {
-                    continue;
-                }
-                AuthorAchievementEnum[] increaseInDayAchievements = {
-                        AuthorAchievementEnum.INCREASE_IN_DAY_LV10,
-                        AuthorAchievementEnum.INCREASE_IN_DAY_LV9,
-                        AuthorAchievementEnum.INCREASE_IN_DAY_LV8};
+        Document watermark = mongoTemplate.findOne(Query.query(Criteria.where("_id").is(mid)), Document.class, DAILY_WATERMARK_COLLECTION);
+        analyzeDailyAchievement(mid, watermark == null ? null : watermark.getDate(DAILY_WATERMARK));
+    }
 
-                AuthorAchievementEnum[] decreaseInDayAchievements = {
-                        AuthorAchievementEnum.REDUCE_IN_DAY_LV9,
-                        AuthorAchievementEnum.REDUCE_IN_DAY_LV8,
-                        AuthorAchievementEnum.REDUCE_IN_DAY_LV7};
+    /**
+     * 只判定水位线之后的每日数据，判定完成后把水位线移到最后一天
+     *
+     * @param mid       UP主ID
+     * @param watermark 已经判定过的最后一天，从未判定过时为 null
+     */
+    private void analyzeDailyAchievement(Long mid, Date watermark) {
+        Criteria criteria = Criteria.where("mid").is(mid);
+        if (watermark != null) {
+            criteria.and("datetime").gt(watermark);
+        }
+        List<AuthorDailyTrend> dailyTrends = mongoTemplate.find(Query.query(criteria).with(Sort.by("datetime").ascending()), AuthorDailyTrend.class);
+        // 与前一天比较的成就需要水位线当天的数据
+        AuthorDailyTrend pData = watermark == null ? null : mongoTemplate.findOne(Query.query(
+                Criteria.where("mid").is(mid).and("datetime").lte(watermark).and("fans").ne(null))
+                .with(Sort.by("datetime").descending()), AuthorDailyTrend.class);
+        if (dailyTrends.isEmpty() || (pData == null && dailyTrends.size() < 2)) {
+            return;
+        }
 
-                AuthorAchievementEnum[] increaseAchievements = {
-                        AuthorAchievementEnum.INCREASE_LV5,
-                        AuthorAchievementEnum.INCREASE_LV4,
-                        AuthorAchievementEnum.INCREASE_LV3};
+        List<Author.Achievement> achievements = new ArrayList<>();
+        for (AuthorDailyTrend cData : dailyTrends) {
+            if (cData.getFans() == null) {
+                continue;
+            }
+            if (pData == null) {
+                pData = cData;
+            }
+            evaluateDailyAchievement(pData, cData, achievements);
+            pData = cData;
+        }
+        insertNewAchievements(mid, achievements);
 
-                for (AuthorAchievementEnum achievementEnum : increaseInDayAchievements) {
-                    if (checkAndAddFansIncreaseAchievement(cData, achievementEnum)) {
-                        break;
-                    }
-                }
-                for (AuthorAchievementEnum achievementEnum : decreaseInDayAchievements) {
+        Date last = dailyTrends.get(dailyTrends.size() - 1).getDatetime();
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(mid)),
+                Update.update(DAILY_WATERMARK, last), DAILY_WATERMARK_COLLECTION);
+    }
 
-                    if (checkAndAddFansDecreaseAchievement(cData, achievementEnum)) {
-                        break;
-                    }
-                }
+    private void evaluateDailyAchievement(AuthorDailyTrend pData, AuthorDailyTrend cData, List<Author.Achievement> achievements) {
+        for (AuthorAchievementEnum achievementEnum : INCREASE_IN_DAY_ACHIEVEMENTS) {
+            if (cData.getFans() > achievementEnum.getValue()) {
+                achievements.add(newAchievement(cData, achievementEnum, cData.getFans()));
+                break;
+            }
+        }
+        for (AuthorAchievementEnum achievementEnum : DECREASE_IN_DAY_ACHIEVEMENTS) {
+            if (cData.getFans() < -achievementEnum.getValue()) {
+                achievements.add(newAchievement(cData, achievementEnum, cData.getFans()));
+                break;
+            }
+        }
 
-                if (pData.getFans() > 100 && cData.getFans() < -500) {
-                    AuthorAchievementEnum e = AuthorAchievementEnum.UP_TO_DOWN;
-                    insertAchievementIfNotExist(cData, e, cData.getFans());
-                }
+        if (pData.getFans() > 100 && cData.getFans() < -500) {
+            achievements.add(newAchievement(cData, AuthorAchievementEnum.UP_TO_DOWN, cData.getFans()));
+        }
 
-                for (AuthorAchievementEnum achievementEnum : increaseAchievements) {
-                    if (pData.getFans() < 0) {
-                        continue;
-                    }
-                    if (cData.getFans() > pData.getFans() * achievementEnum.getValue()) {
-                        Author.Data d = new Author.Data();
-                        if (pData.getFans() == 0) {
-                            continue;
-                        }
-                        d.setMid(cData.getMid());
-                        d.setDatetime(cData.getDatetime());
-                        insertAchievementIfNotExist(cData, achievementEnum, cData.getFans() / pData.getFans());
-                        break;
-                    }
-                }
-                pData = cData;
+        for (AuthorAchievementEnum achievementEnum : INCREASE_ACHIEVEMENTS) {
+            if (pData.getFans() <= 0) {
+                break;
             }
+            if (cData.getFans() > pData.getFans() * achievementEnum.getValue()) {
+                achievements.add(newAchievement(cData, achievementEnum, cData.getFans() / pData.getFans()));
+                break;
+            }
+        }
+    }
 
-            new Result<>(ResultEnum.SUCCEED);
-        } else {
-            new Result<>(ResultEnum.EXECUTE_FAILURE);
+    private Author.Achievement newAchievement(AuthorDailyTrend data, AuthorAchievementEnum achievementEnum, Long value) {
+        return new Author.Achievement(achievementEnum, data.getMid(), value, data.getDatetime());
+    }
+
+    /**
+     * 一次查询已有的 (成就, 日期)，只插入其中没有的成就
+     */
+    private void insertNewAchievements(Long mid, List<Author.Achievement> achievements) {
+        if (achievements.isEmpty()) {
+            return;
+        }
+        Set<Integer> codes = new HashSet<>();
+        Set<Date> dates = new HashSet<>();
+        achievements.forEach(a -> {
+            codes.add(a.getCode());
+            dates.add(a.getDate());
+        });
+        Query query = Query.query(Criteria.where("author.mid").is(mid).and("code").in(codes).and("date").in(dates));
+        query.fields().include("code").include("date");
+        Set<String> existing = new HashSet<>();
+        mongoTemplate.find(query, Author.Achievement.class)
+                .forEach(a -> existing.add(achievementKey(a)));
+        List<Author.Achievement> newAchievements = new ArrayList<>();
+        for (Author.Achievement a : achievements) {
+            if (existing.add(achievementKey(a))) {
+                newAchievements.add(a);
+            }
         }
+        insertAchievements(mid, newAchievements);
+    }
+
+    private static String achievementKey(Author.Achievement a) {
+        return a.getCode() + "@" + (a.getDate() == null ? null : a.getDate().getTime());
     }
 
     @Override
@@ -311,34 +278,4 @@ public class AuthorAchievementServiceImpl implements AuthorAchievementService {
                 ), Author.Achievement.class, Author.Achievement.class
         ).getMappedResults();
     }
-
-    private boolean checkAndAddFansDecreaseAchievement(AuthorDailyTrend data, AuthorAchievementEnum achievementEnum) {
-        Long cFans = data.getFans();
-        if (cFans < -achievementEnum.getValue()) {
-            insertAchievementIfNotExist(data, achievementEnum, cFans);
-            return true;
-        }
-        return false;
-    }
-
-    private boolean checkAndAddFansIncreaseAchievement(AuthorDailyTrend data, AuthorAchievementEnum achievementEnum) {
-        Long cFans = data.getFans();
-        if (cFans > achievementEnum.getValue()) {
-            insertAchievementIfNotExist(data, achievementEnum, cFans);
-            return true;
-        }
-        return false;
-    }
-
-    private void insertAchievementIfNotExist(AuthorDailyTrend data, AuthorAchievementEnum achievementEnum, Long value) {
-        boolean wasGotten = mongoTemplate.exists(
-                Query.query(
-                        Criteria.where("author.mid").is(data.getMid())
-                                .and("code").is(achievementEnum.getId())
-                                .and("date").is(data.getDatetime())), Author.Achievement.class);
-        if (!wasGotten) {
-            logger.info("添加成就: {} {}", data.getMid(), achievementEnum.getName());
-            mongoTemplate.save(new Author.Achievement(achievementEnum, data.getMid(), value, data.getDatetime()));
-        }
-    }
 }
@@ -9,6 +9,7 @@ import com.jannchie.biliob.service.CreditService;
 import com.jannchie.biliob.utils.AuthorUtil;
 import com.jannchie.biliob.utils.Result;
 import com.jannchie.biliob.utils.UserUtils;
+import com.jannchie.biliob.utils.VisitLogWriter;
 import com.mongodb.client.result.DeleteResult;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -47,6 +48,8 @@ public class AuthorGroupServiceImpl implements AuthorGroupService {
     private CreditService creditService;
     @Autowired
     private UserUtils userUtils;
+    @Autowired
+    private VisitLogWriter visitLogWriter;
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -238,7 +241,7 @@ public class AuthorGroupServiceImpl implements AuthorGroupService {
 
     public AuthorGroup getAuthorList(ObjectId objectId) {
         ObjectId userId = userUtils.getUserId();
-        mongoTemplate.save(new ObjectVisitRecord("AuthorGroup", userId, objectId, Calendar.getInstance().getTime()));
+        visitLogWriter.write(new ObjectVisitRecord("AuthorGroup", userId, objectId, Calendar.getInstance().getTime()));
         return getAuthorList(Aggregation.match(Criteria.where("_id").is(objectId)));
     }
 
@@ -14,9 +14,12 @@ import com.jannchie.biliob.repository.AuthorRepository;
 import com.jannchie.biliob.repository.RealTimeFansRepository;
 import com.jannchie.biliob.service.AdminService;
 import com.jannchie.biliob.service.AuthorAchievementService;
+import com.jannchie.biliob.service.AuthorHistoryService;
 import com.jannchie.biliob.service.AuthorService;
+import com.jannchie.biliob.service.SiteCounterService;
+import com.jannchie.biliob.service.VisitCounterService;
 import com.jannchie.biliob.utils.*;
-import com.mongodb.BasicDBObject;
+import com.jannchie.biliob.utils.schedule.CrawlScheduler;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.model.Projections;
@@ -29,15 +32,20 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
-import org.springframework.data.mongodb.core.aggregation.MatchOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -56,6 +64,7 @@ import static org.springframework.data.mongodb.core.query.Criteria.where;
 @CacheConfig(cacheNames = "authorService")
 public class AuthorServiceImpl implements AuthorService {
     private static final Logger logger = LogManager.getLogger(VideoServiceImpl.class);
+    private static final int UPSERT_BULK_SIZE = 1000;
     @Autowired
     private AuthorRepository repository;
     @Autowired
@@ -63,6 +72,8 @@ public class AuthorServiceImpl implements AuthorService {
     @Autowired
     private MongoTemplate mongoTemplate;
     @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    @Autowired
     private MongoClient mongoClient;
     @Autowired
     private AuthorUtil authorUtil;
@@ -74,58 +85,45 @@ public class AuthorServiceImpl implements AuthorService {
     private UserUtils userUtils;
     @Autowired
     private AuthorAchievementService authorAchievementService;
+    @Autowired
+    private AuthorHistoryService authorHistoryService;
+    @Autowired
+    private VisitLogWriter visitLogWriter;
+    @Autowired
+    private VisitCounterService visitCounterService;
+    @Autowired
+    private SiteCounterService siteCounterService;
+    @Autowired
+    private CrawlScheduler crawlScheduler;
 
-    private MatchOperation getAggregateMatch(int days, Long mid) {
-        if (days == -1) {
-            return Aggregation.match(Criteria.where("mid").is(mid));
-        } else {
+    private Author getAggregatedData(Long mid, int days) {
+        Calendar timer = Calendar.getInstance();
+        ArrayList<Author.Data> dailyData = authorHistoryService.listDailyData(mid);
+        if (dailyData.isEmpty()) {
+            return null;
+        }
+        Query authorQuery = Query.query(Criteria.where("mid").is(mid));
+        authorQuery.fields().exclude("data");
+        Author author = mongoTemplate.findOne(authorQuery, Author.class);
+        if (author == null) {
+            return null;
+        }
+        if (days != -1) {
+            // 按每日第一条数据的时间过滤：第一条数据早于起始时间的那一天整天不返回，
+            // 而原先先过滤原始数据再按日分组，那一天会返回起始时间之后的第一条数据
             Calendar c = Calendar.getInstance();
             c.add(Calendar.DATE, -days);
-            return Aggregation.match(Criteria.where("mid").is(mid).and("datetime").gt(c.getTime()));
+            dailyData = dailyData.stream().filter(data -> data.getDatetime().after(c.getTime())).collect(Collectors.toCollection(ArrayList::new));
         }
-    }
-
-    private Author getAggregatedData(Long mid, int days) {
-        Calendar timer = Calendar.getInstance();
-        MatchOperation match = getAggregateMatch(days, mid);
-        Aggregation a = Aggregation.newAggregation(
-                match,
-                Aggregation.project("fans", "archiveView", "articleView", "like", "attention", "datetime", "mid").and("datetime").dateAsFormattedString("%Y-%m-%d").as("date"),
-                Aggregation.group("date")
-                        .first("datetime").as("datetime")
-                        .first("fans").as("fans")
-                        .first("archiveView").as("archiveView")
-                        .first("articleView").as("articleView")
-                        .first("like").as("like")
-                        .first("attention").as("attention")
-                        .first("mid").as("mid"),
-                Aggregation.sort(Sort.Direction.DESC, "datetime"),
-                Aggregation.group().push(
-                        new BasicDBObject("datetime", "$datetime")
-                                .append("fans", "$fans")
-                                .append("archiveView", "$archiveView")
-                                .append("articleView", "$articleView")
-                                .append("archive", "$archive")
-                                .append("article", "$article")
-                                .append("like", "$like")
-                ).as("data").first("mid").as("mid"),
-                Aggregation.lookup("author", "mid", "mid", "author"),
-                Aggregation.unwind("author"),
-                (aoc) -> new Document("$addFields", new Document("author.data", "$data")),
-                Aggregation.replaceRoot("author"),
-                Aggregation.lookup("author_interval", "mid", "mid", "interval"),
-                (aoc) -> new Document("$addFields", new Document("obInterval", new Document("$arrayElemAt", Arrays.asList("$interval.interval", 0)))),
-                Aggregation.lookup("author_achievement", "mid", "author.mid", "achievements"),
-                Aggregation.project().andExpression("{ mid: 0}").as("data")
-        );
-        Author data = mongoTemplate.aggregate(a, Author.Data.class, Author.class).getUniqueMappedResult();
+        author.setData(dailyData);
+        AuthorIntervalRecord interval = mongoTemplate.findOne(Query.query(Criteria.where("mid").is(mid)), AuthorIntervalRecord.class);
+        author.setObInterval(interval != null ? interval.getInterval() : null);
+        author.setAchievements(mongoTemplate.find(Query.query(Criteria.where("author.mid").is(mid)), Author.Achievement.class));
         long deltaTime = Calendar.getInstance().getTimeInMillis() - timer.getTimeInMillis();
-        // 太慢，则精简数据
         if (deltaTime > 3000) {
-            logger.info("获取速度太慢，需要精简数据。消耗时间：{}ms", deltaTime);
-            adminService.reduceByMid(mid);
+            logger.info("获取 {} 的数据速度太慢。消耗时间：{}ms", mid, deltaTime);
         }
-        return data;
+        return author;
     }
 
     @Override
@@ -148,8 +146,10 @@ public class AuthorServiceImpl implements AuthorService {
         if (author == null || author.getMid() == null) {
             return;
         }
-        AuthorRankData lastRankData = authorUtil.getLastRankData(author);
-        AuthorRankData currentRankData = getCurrentRankData(author);
+        setRank(author, authorUtil.getLastRankData(author), getCurrentRankData(author));
+    }
+
+    private void setRank(Author author, AuthorRankData lastRankData, AuthorRankData currentRankData) {
         Date date = Calendar.getInstance().getTime();
         if (author.getData() != null) {
             date = author.getData().get(0).getDatetime();
@@ -214,6 +214,12 @@ public class AuthorServiceImpl implements AuthorService {
         return mongoTemplate.find(Query.query(Criteria.where("mid").is(mid)).limit(100), Author.Data.class);
     }
 
+    @Override
+    public Mono<List<Author.Data>> getHistoryDataReactive(Long mid) {
+        return reactiveMongoTemplate.find(Query.query(Criteria.where("mid").is(mid)).limit(100), Author.Data.class)
+                .collectList();
+    }
+
     @Override
     public List<Author> listAuthors() {
         return null;
@@ -231,15 +237,97 @@ public class AuthorServiceImpl implements AuthorService {
         return author;
     }
 
+    @Override
+    public Mono<Author> getAuthorDetailsReactive(Long mid) {
+        // 用户与请求信息只能在请求线程中读取
+        String userName = biliOBUtils.getUserName();
+        Map<?, ?> visitData = biliOBUtils.getVisitData(userName, mid);
+        String principal = userUtils.getUsername();
+        visitLogWriter.write(visitData, "author_visit");
+        visitCounterService.recordAuthorVisit(mid);
+
+        Query authorQuery = Query.query(Criteria.where("mid").is(mid));
+        authorQuery.fields().exclude("data");
+        Mono<ArrayList<Author.Data>> dailyData = authorHistoryService.listDailyDataReactive(mid);
+        Mono<Optional<Author>> author = reactiveMongoTemplate.findOne(authorQuery, Author.class)
+                .map(Optional::of).defaultIfEmpty(Optional.empty()).cache();
+        // 排名依赖UP主的当前数据，与其余查询一同组合；排名索引就绪时只在内存中计算
+        Mono<Optional<Tuple2<AuthorRankData, AuthorRankData>>> rank = author.flatMap(optional -> optional
+                .map(each -> Mono.fromCallable(() -> Tuples.of(authorUtil.getLastRankData(each), getCurrentRankData(each)))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .map(Optional::of))
+                .orElseGet(() -> Mono.just(Optional.empty())));
+        Mono<Optional<Integer>> interval = reactiveMongoTemplate.findOne(Query.query(Criteria.where("mid").is(mid)), AuthorIntervalRecord.class)
+                .map(record -> Optional.ofNullable(record.getInterval())).defaultIfEmpty(Optional.empty());
+        Mono<List<Author.Achievement>> achievements = reactiveMongoTemplate.find(Query.query(Criteria.where("author.mid").is(mid)), Author.Achievement.class)
+                .collectList();
+        User cachedUser = principal == null ? null : userUtils.getCachedUserProfile(principal);
+        Mono<Optional<User>> user = principal == null ? Mono.just(Optional.empty()) : cachedUser != null ? Mono.just(Optional.of(cachedUser)) : reactiveMongoTemplate.findOne(
+                Query.query(new Criteria().orOperator(Criteria.where("name").is(principal), Criteria.where("mail").is(principal))),
+                User.class, "user")
+                .map(Optional::of).defaultIfEmpty(Optional.empty());
+        Mono<Boolean> visitorChecked = checkAuthorVisitor(userName, (String) visitData.get("ip"));
+
+        return Mono.zip(dailyData, author, interval, achievements, user, visitorChecked, rank)
+                .filter(result -> !result.getT1().isEmpty() && result.getT2().isPresent() && result.getT7().isPresent())
+                .flatMap(result -> {
+                    Author each = result.getT2().get();
+                    each.setData(result.getT1());
+                    each.setObInterval(result.getT3().orElse(null));
+                    each.setAchievements(result.getT4());
+                    Tuple2<AuthorRankData, AuthorRankData> rankData = result.getT7().get();
+                    setRank(each, rankData.getT1(), rankData.getT2());
+                    Mono<?> rankUpdated = reactiveMongoTemplate.updateFirst(Query.query(Criteria.where("mid").is(mid)), Update.update("rank", each.getRank()), Author.class);
+                    // 成就分析仍是阻塞操作，放到专用线程池中与排名的写入同时执行
+                    Mono<?> achievementAnalyzed = Mono.fromRunnable(() -> authorAchievementService.rapidlyAnalyzeAuthorAchievement(each))
+                            .subscribeOn(Schedulers.boundedElastic());
+                    return Mono.when(rankUpdated, achievementAnalyzed).then(Mono.fromCallable(() -> {
+                        filterAuthorData(each, result.getT5().orElse(null));
+                        DataReducer.authorDataDownSampling(each);
+                        return each;
+                    }));
+                });
+    }
+
+    /**
+     * 与 addAuthorVisit 相同的异常访问检查，查询不占用请求线程
+     *
+     * @return 是否封禁了访问者
+     */
+    private Mono<Boolean> checkAuthorVisitor(String userName, String ip) {
+        Mono<Boolean> banned = reactiveMongoTemplate.exists(Query.query(Criteria.where("name").is(userName)), "blacklist_user");
+        Mono<Boolean> tooManyDevices = reactiveMongoTemplate.aggregate(Aggregation.newAggregation(
+                Aggregation.match(where("name").is(userName)),
+                Aggregation.group("user-agent"),
+                Aggregation.limit(17)
+        ), "author_visit", Map.class).count().map(count -> count > 16);
+        return Mono.zip(banned, tooManyDevices).flatMap(result -> {
+            String reason = result.getT1() ? "用户被禁用" : result.getT2() ? "设备异常多" : null;
+            if (reason == null) {
+                return Mono.just(false);
+            }
+            return Mono.fromCallable(() -> adminService.banIp(ip, reason, false))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .thenReturn(true);
+        });
+    }
+
     public void disposeAuthor(Author author) {
+        disposeAuthor(author, userUtils.getUserProfile());
+    }
+
+    /**
+     * @param user 当前用户，决定可查看的历史数据范围；不依赖请求线程，可以在其他线程中调用
+     */
+    private void disposeAuthor(Author author, User user) {
         getRankData(author);
         mongoTemplate.updateFirst(Query.query(Criteria.where("mid").is(author.getMid())), Update.update("rank", author.getRank()), Author.class);
         if (author.getAchievements() != null) {
             authorAchievementService.rapidlyAnalyzeAuthorAchievement(author);
-            authorAchievementService.analyzeDailyAchievement(author.getMid());
         }
         if (author.getData() != null) {
-            filterAuthorData(author);
+            filterAuthorData(author, user);
+            DataReducer.authorDataDownSampling(author);
         }
     }
 
@@ -254,8 +342,7 @@ public class AuthorServiceImpl implements AuthorService {
         author.setData(tempData);
     }
 
-    private void filterAuthorData(Author author) {
-        User user = userUtils.getUser();
+    private void filterAuthorData(Author author, User user) {
         if (user == null || user.getExp() < 100) {
             ArrayList<Author.Data> tempData = author.getData();
             tempData.removeIf(data -> {
@@ -280,7 +367,8 @@ public class AuthorServiceImpl implements AuthorService {
         ), "author_visit", Map.class).getMappedResults().size() > 16) {
             adminService.banItself("设备异常多", false);
         }
-        mongoTemplate.insert(data, "author_visit");
+        visitLogWriter.write(data, "author_visit");
+        visitCounterService.recordAuthorVisit(mid);
     }
 
     @Override
@@ -290,7 +378,8 @@ public class AuthorServiceImpl implements AuthorService {
             throw new AuthorAlreadyFocusedException(mid);
         }
         upsertAuthorFreq(mid, SECOND_OF_DAY);
-        repository.save(new Author(mid));
+        Author author = repository.save(new Author(mid));
+        siteCounterService.onAuthorInserted(author);
     }
 
     @Override
@@ -475,7 +564,7 @@ public class AuthorServiceImpl implements AuthorService {
      * @return author list
      */
     @Override
-    @Cacheable(value = "relate_author", key = "#mid + #limit")
+    @Cacheable(value = "relate_author", key = "#mid + #limit", sync = true)
     public List listRelatedAuthorByMid(Long mid, Integer limit) {
         int tagLimit = limit;
         List<Map> tagMap = listAuthorTag(mid, 5);
@@ -554,40 +643,89 @@ public class AuthorServiceImpl implements AuthorService {
         nextCal.add(Calendar.SECOND, delay);
         // 更新访问频率数据。
         Update u = Update.update("date", cTime);
+        Integer newInterval = null;
+        Date newNext = null;
         if (preInterval == null || preInterval.getInterval() == null || interval < preInterval.getInterval()) {
+            newInterval = interval;
             u.set("interval", interval);
         }
         // 如果此前没有访问频率数据，或者更新后的访问时间比原来的访问时间还短，则刷新下次访问的时间。
         if (preInterval == null || preInterval.getNext() == null) {
+            newNext = cTime;
             u.set("next", cTime);
             logger.info("[UPSERT] 作者：{} 访问频率：{} 下次爬取：{}", mid, interval, cTime);
         } else if (nextCal.getTimeInMillis() < preInterval.getNext().getTime()) {
+            newNext = nextCal.getTime();
             u.set("next", nextCal.getTime());
             logger.info("[UPSERT] 作者：{} 访问频率：{} 下次爬取：{}", mid, interval, nextCal.getTime());
         }
         mongoTemplate.upsert(Query.query(Criteria.where("mid").is(mid)), u, AuthorIntervalRecord.class);
+        crawlScheduler.scheduleAuthor(mid, newInterval, newNext);
+    }
+
+    @Override
+    public int upsertAuthorFreq(Map<Long, Integer> intervalMap) {
+        List<Long> mids = new ArrayList<>(intervalMap.keySet());
+        Date cTime = Calendar.getInstance().getTime();
+        int changed = 0;
+        for (int from = 0; from < mids.size(); from += UPSERT_BULK_SIZE) {
+            List<Long> chunk = mids.subList(from, Math.min(from + UPSERT_BULK_SIZE, mids.size()));
+            Query q = Query.query(Criteria.where("mid").in(chunk));
+            q.fields().include("mid").include("interval").include("next");
+            Map<Long, AuthorIntervalRecord> preIntervals = new HashMap<>(chunk.size() * 2);
+            for (AuthorIntervalRecord record : mongoTemplate.find(q, AuthorIntervalRecord.class)) {
+                preIntervals.put(record.getMid(), record);
+            }
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, AuthorIntervalRecord.class);
+            for (Long mid : chunk) {
+                Integer interval = intervalMap.get(mid);
+                AuthorIntervalRecord preInterval = preIntervals.get(mid);
+                Date nextTime = new Date(cTime.getTime() + interval * 1000L);
+                Update u = Update.update("date", cTime);
+                Integer newInterval = null;
+                Date newNext = null;
+                if (preInterval == null || preInterval.getInterval() == null || interval < preInterval.getInterval()) {
+                    newInterval = interval;
+                    u.set("interval", interval);
+                }
+                // 与逐个更新时的规则相同：没有下次访问时间，或新的访问时间更早时才刷新
+                if (preInterval == null || preInterval.getNext() == null) {
+                    newNext = cTime;
+                    u.set("next", cTime);
+                } else if (nextTime.before(preInterval.getNext())) {
+                    newNext = nextTime;
+                    u.set("next", nextTime);
+                }
+                bulkOperations.upsert(Query.query(Criteria.where("mid").is(mid)), u);
+                if (newInterval != null || newNext != null) {
+                    changed++;
+                    crawlScheduler.scheduleAuthor(mid, newInterval, newNext);
+                }
+            }
+            bulkOperations.execute();
+        }
+        return changed;
     }
 
     @Override
     public List<AuthorVisitRecord> listMostVisitAuthorId(Integer days, Integer limit) {
-        Calendar c = Calendar.getInstance();
-        c.add(Calendar.DATE, -days);
-        List<AuthorVisitRecord> results = mongoTemplate.aggregate(
-                Aggregation.newAggregation(Aggregation.match(where("date").gt(c.getTime())),
-                        Aggregation.group("mid").count().as("count").first("mid").as("mid"),
-                        Aggregation.sort(Sort.Direction.DESC, "count"), Aggregation.limit(limit)),
-                "author_visit", AuthorVisitRecord.class).getMappedResults();
+        List<DecayingTopK.Item> items = visitCounterService.listTopAuthor(VisitCounterService.Window.ofDays(days), limit);
+        List<AuthorVisitRecord> results = new ArrayList<>(items.size());
+        for (DecayingTopK.Item item : items) {
+            AuthorVisitRecord result = new AuthorVisitRecord();
+            result.setMid(item.getKey());
+            result.setCount((int) Math.round(item.getCount()));
+            results.add(result);
+        }
         Query q = Query.query(Criteria.where("mid")
                 .in(results.stream().map(AuthorVisitRecord::getMid).collect(Collectors.toList())));
         q.fields().include("name").include("mid");
-        List<Author> authorList = mongoTemplate.find(q, Author.class);
+        Map<Long, String> names = new HashMap<>(results.size() * 2);
+        for (Author author : mongoTemplate.find(q, Author.class)) {
+            names.put(author.getMid(), author.getName());
+        }
         for (AuthorVisitRecord result : results) {
-            for (Author author : authorList) {
-                if (result.getMid().equals(author.getMid())) {
-                    result.setName(author.getName());
-                }
-            }
-
+            result.setName(names.get(result.getMid()));
         }
         return results;
     }
@@ -613,8 +751,8 @@ public class AuthorServiceImpl implements AuthorService {
         calculateTopClassIntervalData(intervalMap);
         calculateFansRankIntervalData(intervalMap);
         logger.info("[START] 调整观测频率: 本次计划调整 {} 个UP主的频率", intervalMap.size());
-        intervalMap.forEach(this::upsertAuthorFreq);
-        logger.info("[FINISH] 调整观测频率 完成");
+        int changed = upsertAuthorFreq(intervalMap);
+        logger.info("[FINISH] 调整观测频率 完成: 实际变更 {} 个UP主", changed);
     }
 
     private void calculateHomePageAuthor(HashMap<Long, Integer> intervalMap) {
@@ -701,9 +839,8 @@ public class AuthorServiceImpl implements AuthorService {
         }
 
         logger.info("[START] 调整观测频率: 本次计划调整 {} 个UP主的频率", intervalMap.size());
-        intervalMap.forEach(this::upsertAuthorFreq);
-        logger.info("[FINISH] 调整观测频率 完成");
-
+        int changed = upsertAuthorFreq(intervalMap);
+        logger.info("[FINISH] 调整观测频率 完成: 实际变更 {} 个UP主", changed);
     }
 
     @Override
@@ -41,7 +41,6 @@ public class IndexServiceImpl implements IndexService {
     private UserUtils userUtils;
     @Resource
     private IndexService self;
-    private Set<String> visiting = new HashSet<>();
 
 
     @Override
@@ -81,18 +80,18 @@ public class IndexServiceImpl implements IndexService {
         User user = userUtils.getUser();
         boolean hasRight = (user == null || user.getExp() < 100);
         if (hasRight && jannchieIndex.getData().size() >= 31) {
-            jannchieIndex.setData(jannchieIndex.getData().subList(jannchieIndex.getData().size() - 31, jannchieIndex.getData().size() - 1));
+            // 缓存返回的对象由多个请求共用，截取时不能修改它
+            JannchieIndex limitedIndex = new JannchieIndex();
+            limitedIndex.setName(jannchieIndex.getName());
+            limitedIndex.setData(new ArrayList<>(jannchieIndex.getData().subList(jannchieIndex.getData().size() - 31, jannchieIndex.getData().size() - 1)));
+            return limitedIndex;
         }
         return jannchieIndex;
     }
 
     @Override
-    @Cacheable(value = "index", key = "#keyword")
+    @Cacheable(value = "index", key = "#keyword", sync = true)
     public JannchieIndex getJannchieIndex(String keyword) {
-        if (visiting.contains(keyword)) {
-            return null;
-        }
-        visiting.add(keyword);
         Criteria criteria = Criteria.where("keyword").is(keyword).and("cJannchie").gt(100000);
         JannchieIndex jannchieIndex = new JannchieIndex();
         jannchieIndex.setName(keyword);
@@ -123,7 +122,6 @@ public class IndexServiceImpl implements IndexService {
         }).sorted(Comparator.comparing(JannchieIndexData::getDatetime)).collect(Collectors.toList());
         jannchieIndex.setData(data);
         // TODO: ADD Visit Record
-        visiting.remove(keyword);
         return jannchieIndex;
     }
 
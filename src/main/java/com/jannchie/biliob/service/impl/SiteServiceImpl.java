@@ -3,12 +3,12 @@ package com.jannchie.biliob.service.impl;
 import com.jannchie.biliob.constant.ResultEnum;
 import com.jannchie.biliob.model.Site;
 import com.jannchie.biliob.model.Sponsor;
+import com.jannchie.biliob.service.SiteCounterService;
 import com.jannchie.biliob.service.SiteService;
 import com.jannchie.biliob.utils.Result;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
@@ -33,6 +33,8 @@ public class SiteServiceImpl implements SiteService {
     private static final Logger logger = LogManager.getLogger(VideoServiceImpl.class);
     @Autowired
     private MongoTemplate mongoTemplate;
+    @Autowired
+    private SiteCounterService siteCounterService;
 
 
     /**
@@ -58,14 +60,14 @@ public class SiteServiceImpl implements SiteService {
 
 
     @Override
-    @Cacheable(value = "biliob_counter")
     public Map getBiliOBCounter() {
+        EnumMap<SiteCounterService.Counter, Long> counts = siteCounterService.getCounts();
 
-        Map<String, Long> videoResult = getVideoCount();
+        Map<String, Long> videoResult = getVideoCount(counts);
 
-        Map<String, Long> authorResult = getAuthorCount();
+        Map<String, Long> authorResult = getAuthorCount(counts);
 
-        Map<String, Long> userResult = getUserCount();
+        Map<String, Long> userResult = getUserCount(counts);
 
         Map<String, Object> result = new HashMap<>(3);
         result.put("video", videoResult);
@@ -83,22 +85,29 @@ public class SiteServiceImpl implements SiteService {
 
     @Override
     public Map<String, Long> getUserCount() {
-        Long userCount = mongoTemplate.count(new Query(), "user");
-        Map<String, Long> userResult = new HashMap<>(1);
-        userResult.put("count", userCount);
-        return userResult;
+        return getUserCount(siteCounterService.getCounts());
     }
 
     @Override
     public Map<String, Long> getAuthorCount() {
-        Long authorForceFocusCount =
-                mongoTemplate.count(new Query(Criteria.where("forceFocus").is(true)), "author");
-        Long authorFocusCount =
-                mongoTemplate.count(
-                        new Query(Criteria.where("focus").is(true).and("forceFocus").exists(false)), "author");
-        Long authorNotFocusCount =
-                mongoTemplate.count(
-                        new Query(Criteria.where("focus").is(false).and("forceFocus").exists(false)), "author");
+        return getAuthorCount(siteCounterService.getCounts());
+    }
+
+    @Override
+    public Map<String, Long> getVideoCount() {
+        return getVideoCount(siteCounterService.getCounts());
+    }
+
+    private Map<String, Long> getUserCount(EnumMap<SiteCounterService.Counter, Long> counts) {
+        Map<String, Long> userResult = new HashMap<>(1);
+        userResult.put("count", counts.get(SiteCounterService.Counter.USER));
+        return userResult;
+    }
+
+    private Map<String, Long> getAuthorCount(EnumMap<SiteCounterService.Counter, Long> counts) {
+        Long authorForceFocusCount = counts.get(SiteCounterService.Counter.AUTHOR_FORCE_FOCUS);
+        Long authorFocusCount = counts.get(SiteCounterService.Counter.AUTHOR_FOCUS);
+        Long authorNotFocusCount = counts.get(SiteCounterService.Counter.AUTHOR_NOT_FOCUS);
         Map<String, Long> authorResult = new HashMap<>(3);
         authorResult.put("forceFocusCount", authorForceFocusCount);
         authorResult.put("focusCount", authorFocusCount);
@@ -106,12 +115,9 @@ public class SiteServiceImpl implements SiteService {
         return authorResult;
     }
 
-    @Override
-    public Map<String, Long> getVideoCount() {
-        Long videoFocusCount =
-                mongoTemplate.count(new Query(Criteria.where("focus").is(true)), "video");
-        Long videoNotFocusCount =
-                mongoTemplate.count(new Query(Criteria.where("focus").is(false)), "video");
+    private Map<String, Long> getVideoCount(EnumMap<SiteCounterService.Counter, Long> counts) {
+        Long videoFocusCount = counts.get(SiteCounterService.Counter.VIDEO_FOCUS);
+        Long videoNotFocusCount = counts.get(SiteCounterService.Counter.VIDEO_NOT_FOCUS);
         Map<String, Long> videoResult = new HashMap<>(2);
         videoResult.put("focusCount", videoFocusCount);
         videoResult.put("count", videoFocusCount + videoNotFocusCount);
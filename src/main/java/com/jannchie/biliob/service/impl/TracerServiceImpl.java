@@ -2,11 +2,14 @@ package com.jannchie.biliob.service.impl;
 
 import com.jannchie.biliob.constant.TaskStatusEnum;
 import com.jannchie.biliob.repository.TracerRepository;
+import com.jannchie.biliob.service.SiteCounterService;
 import com.jannchie.biliob.service.TracerService;
+import com.jannchie.biliob.utils.CachedSection;
 import com.jannchie.biliob.utils.RedisOps;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -19,6 +22,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static com.jannchie.biliob.constant.TaskTypeEnum.GET_ALL;
 import static com.jannchie.biliob.constant.TaskTypeEnum.GET_RUNNING;
@@ -31,6 +37,9 @@ public class TracerServiceImpl implements TracerService {
 
     private static final Integer MAX_ONLINE_PLAY_RANGE = 30;
     private static final Integer HOUR_IN_DAY = 24;
+    private static final long SECOND_MILLIS = 1000L;
+    private static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
 
     private static final Logger logger = LogManager.getLogger(VideoServiceImpl.class);
     @Autowired
@@ -39,6 +48,24 @@ public class TracerServiceImpl implements TracerService {
     private TracerRepository tracerRepository;
     @Autowired
     private RedisOps redisOps;
+    @Autowired
+    private SiteCounterService siteCounterService;
+    @Autowired
+    @Qualifier("dashboardExecutor")
+    private Executor dashboardExecutor;
+
+    /**
+     * 仪表盘的各个区块，互相独立，各自按自己的间隔刷新
+     */
+    private final List<CachedSection> dashboardSections = Arrays.asList(
+            new CachedSection("crawlCount", MINUTE_MILLIS, this::getCrawlCountAggregationData),
+            new CachedSection("sumSpiderCount", MINUTE_MILLIS, this::getSumSpiderCountData),
+            new CachedSection("userBucket", HOUR_MILLIS, this::getBucketUserCreditList),
+            new CachedSection("checkedInCount", 5 * MINUTE_MILLIS, this::getCheckedInCount),
+            new CachedSection("userCount", 5 * MINUTE_MILLIS, this::getUserCount),
+            new CachedSection("latestProgressTask", 10 * SECOND_MILLIS, this::getLatestProgressTask),
+            new CachedSection("recordCount", 5 * MINUTE_MILLIS, this::getRecordCount),
+            new CachedSection("latestSpiderTask", 5 * SECOND_MILLIS, this::getLatestSpiderTask));
 
 
     /**
@@ -125,17 +152,31 @@ public class TracerServiceImpl implements TracerService {
      */
     @Override
     public ResponseEntity<?> getDashboardData() {
-        Map<String, Object> resultMap = new HashMap<>(10);
-
-        getCrawlCountAggregationData(resultMap);
-        getSumSpiderCountData(resultMap);
-        getBucketUserCreditList(resultMap);
-        getCheckedInCount(resultMap);
-        getUserCount(resultMap);
-        getLatestProgressTask(resultMap);
-        getRecordCount(resultMap);
-        getLatestSpiderTask(resultMap);
-
+        long now = System.currentTimeMillis();
+        Map<String, CompletableFuture<CachedSection.Snapshot>> futures = new LinkedHashMap<>(16);
+        for (CachedSection section : dashboardSections) {
+            futures.put(section.getName(), section.get(dashboardExecutor, now));
+        }
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .exceptionally(e -> null).join();
+
+        Map<String, Object> resultMap = new HashMap<>(16);
+        Map<String, Object> sectionStatus = new LinkedHashMap<>(16);
+        long end = System.currentTimeMillis();
+        futures.forEach((name, future) -> {
+            Map<String, Object> status = new HashMap<>(4);
+            try {
+                CachedSection.Snapshot snapshot = future.join();
+                resultMap.putAll(snapshot.getData());
+                status.put("age", end - snapshot.getComputedAt());
+                status.put("computeTime", snapshot.getComputeTime());
+            } catch (CompletionException e) {
+                logger.error("获取仪表盘数据失败：{}", name, e.getCause());
+                status.put("error", true);
+            }
+            sectionStatus.put(name, status);
+        });
+        resultMap.put("sections", sectionStatus);
         return new ResponseEntity<>(resultMap, HttpStatus.OK);
     }
 
@@ -207,8 +248,7 @@ public class TracerServiceImpl implements TracerService {
     }
 
     private void getUserCount(Map<String, Object> resultMap) {
-        Long count = mongoTemplate.count(new Query(), "user");
-        resultMap.put("userCount", count);
+        resultMap.put("userCount", siteCounterService.getCount(SiteCounterService.Counter.USER));
     }
 
     private void getLatestProgressTask(Map<String, Object> resultMap) {
@@ -1,6 +1,7 @@
 package com.jannchie.biliob.service.impl;
 
 import com.jannchie.biliob.constant.CreditConstant;
+import com.jannchie.biliob.constant.DbFields;
 import com.jannchie.biliob.constant.ResultEnum;
 import com.jannchie.biliob.constant.RoleEnum;
 import com.jannchie.biliob.model.Comment;
@@ -15,9 +16,6 @@ import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.aggregation.Aggregation;
-import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
-import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -27,8 +25,13 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author Jannchie
@@ -36,6 +39,7 @@ import java.util.List;
 @Service
 public class UserCommentServiceImpl implements UserCommentService {
     private static final Logger logger = LogManager.getLogger(UserCommentServiceImpl.class);
+    private static final String[] HIDDEN_USER_FIELDS = {"password", "ip", "favoriteMid", "favoriteAid", "mail", "credit"};
     @Autowired
     private MongoTemplate mongoTemplate;
     @Autowired
@@ -44,67 +48,98 @@ public class UserCommentServiceImpl implements UserCommentService {
     private UserUtils userUtils;
 
 
+    /**
+     * 依次查询一页顶层评论、这些评论的全部回复、所有涉及的用户，以及当前用户点赞过其中哪些评论，
+     * 查询次数与评论数无关。点赞与点踩的用户列表不会读取，点赞数使用评论中保存的计数。
+     */
     @Override
     public List<Comment> listComments(String path, Integer page, Integer pageSize, Integer sort) {
-        AggregationOperation sortAggregationOperation;
-        if (sort == 0) {
-            sortAggregationOperation = Aggregation.sort(Sort.Direction.DESC, "like");
-        } else {
-            sortAggregationOperation = Aggregation.sort(Sort.Direction.DESC, "date");
+        Query query = Query.query(Criteria.where("path").is(path).and("parentId").exists(false))
+                .with(Sort.by(Sort.Direction.DESC, sort == 0 ? "like" : "date"))
+                .skip((long) page * pageSize)
+                .limit(pageSize);
+        excludeReactionLists(query);
+        List<Comment> comments = mongoTemplate.find(query, Comment.class);
+        if (comments.isEmpty()) {
+            return comments;
         }
-        AggregationResults<Comment> ar = mongoTemplate.aggregate(
-                Aggregation.newAggregation(
-                        Aggregation.match(Criteria.where("path").is(path).and("parentId").exists(false)),
-                        sortAggregationOperation,
-                        Aggregation.skip((long) page * pageSize),
-                        Aggregation.limit(pageSize),
-                        Aggregation.lookup("user", "userId", "_id", "user"),
-                        Aggregation.unwind("user"),
-                        Aggregation.project().andExpression("{password: 0, ip: 0,  favoriteMid: 0, favoriteAid: 0, mail: 0, credit: 0 }").as("user")
-                ), Comment.class, Comment.class);
-        List<Comment> result = ar.getMappedResults();
-        HashMap<String, User> userHashMap = new HashMap<>(20);
-        result.forEach(comment -> {
-                    setUserMap(userHashMap, comment);
-                    List<Comment> replies = mongoTemplate.aggregate(
-                            Aggregation.newAggregation(
-                                    Aggregation.match(
-                                            Criteria.where("parentId").is(comment.getCommentId())),
-                                    Aggregation.sort(Sort.by("date").descending()),
-                                    Aggregation.lookup("user", "userId", "_id", "user"),
-                                    Aggregation.unwind("user"),
-                                    Aggregation.project().andExpression("{password: 0, ip: 0,  favoriteMid: 0, favoriteAid: 0, mail: 0, credit: 0 }").as("user")
-                            )
-                            , Comment.class, Comment.class).getMappedResults();
-                    replies.forEach(r -> setUserMap(userHashMap, r));
-                    comment.setReplies(replies);
-                }
-        );
-
-        User user = userUtils.getUser();
-
-        if (user == null) {
-            return result;
+        List<String> commentIds = comments.stream().map(Comment::getCommentId).collect(Collectors.toList());
+        Query replyQuery = Query.query(Criteria.where("parentId").in(commentIds)).with(Sort.by("date").descending());
+        excludeReactionLists(replyQuery);
+        List<Comment> replies = mongoTemplate.find(replyQuery, Comment.class);
+
+        List<Comment> all = new ArrayList<>(comments);
+        all.addAll(replies);
+        Map<ObjectId, User> users = listCommentUsers(all);
+        Set<String> liked = listLikedCommentIds(all);
+
+        Map<String, List<Comment>> replyMap = new HashMap<>(comments.size() * 2);
+        for (Comment reply : replies) {
+            if (fillComment(reply, users, liked)) {
+                replyMap.computeIfAbsent(reply.getParentId(), k -> new ArrayList<>()).add(reply);
+            }
         }
-        result.forEach((comment) -> {
-            if (comment.getLikeList().contains(user.getId())) {
-                comment.setLiked(true);
-            } else {
-                comment.setLiked(false);
+        List<Comment> result = new ArrayList<>(comments.size());
+        for (Comment comment : comments) {
+            if (fillComment(comment, users, liked)) {
+                comment.setReplies(replyMap.getOrDefault(comment.getCommentId(), new ArrayList<>()));
+                result.add(comment);
             }
-            comment.setLike(comment.getLikeList().size());
-            comment.setLikeList(null);
-        });
+        }
         return result;
     }
 
-    private void setUserMap(HashMap<String, User> userHashMap, Comment comment) {
-        if (userHashMap.containsKey(comment.getUser().getName())) {
-            comment.setUser(userHashMap.get(comment.getUser().getName()));
-        } else {
-            userUtils.setUserTitleAndRankAndUpdateRole(comment.getUser());
-            userHashMap.put(comment.getUser().getName(), comment.getUser());
+    private void excludeReactionLists(Query query) {
+        query.fields().exclude("likeList").exclude("disLikeList");
+    }
+
+    /**
+     * 一次查询评论涉及的全部用户，并计算头衔与排名
+     */
+    private Map<ObjectId, User> listCommentUsers(List<Comment> comments) {
+        Set<ObjectId> userIds = comments.stream().map(Comment::getUserId).filter(Objects::nonNull).collect(Collectors.toSet());
+        Query userQuery = Query.query(Criteria.where(DbFields.ID).in(userIds));
+        for (String field : HIDDEN_USER_FIELDS) {
+            userQuery.fields().exclude(field);
+        }
+        Map<ObjectId, User> users = new HashMap<>(userIds.size() * 2);
+        for (User user : mongoTemplate.find(userQuery, User.class)) {
+            userUtils.setUserTitleAndRankAndUpdateRole(user);
+            users.put(user.getId(), user);
+        }
+        return users;
+    }
+
+    /**
+     * 当前用户点赞过的评论，未登录时为空
+     */
+    private Set<String> listLikedCommentIds(List<Comment> comments) {
+        ObjectId userId = userUtils.getUserId();
+        if (userId == null) {
+            return Collections.emptySet();
+        }
+        List<String> commentIds = comments.stream().map(Comment::getCommentId).collect(Collectors.toList());
+        Query likedQuery = Query.query(Criteria.where(DbFields.ID).in(commentIds).and("likeList").is(userId));
+        likedQuery.fields().include(DbFields.ID);
+        return mongoTemplate.find(likedQuery, Comment.class).stream().map(Comment::getCommentId).collect(Collectors.toSet());
+    }
+
+    /**
+     * 填充评论的发布者与点赞状态
+     *
+     * @return 发布者不存在时返回 false，与连接用户集合时一样不显示该评论
+     */
+    private boolean fillComment(Comment comment, Map<ObjectId, User> users, Set<String> liked) {
+        User user = users.get(comment.getUserId());
+        if (user == null) {
+            return false;
+        }
+        comment.setUser(user);
+        comment.setLiked(liked.contains(comment.getCommentId()));
+        if (comment.getLike() == null) {
+            comment.setLike(0);
         }
+        return true;
     }
 
     @Override
@@ -128,6 +163,8 @@ public class UserCommentServiceImpl implements UserCommentService {
         comment.setDate(Calendar.getInstance().getTime());
         comment.setLikeList(new ArrayList<>());
         comment.setDisLikeList(new ArrayList<>());
+        comment.setLike(0);
+        comment.setDislike(0);
         comment.setUserId(user.getId());
         Comment c = mongoTemplate.save(comment);
         Result<Comment> r = creditService.doCreditOperation(CreditConstant.POST_COMMENT, CreditConstant.POST_COMMENT.getMsg(comment.getPath()));
@@ -13,12 +13,14 @@ import com.jannchie.biliob.object.AuthorIntervalRecord;
 import com.jannchie.biliob.object.VideoIntervalRecord;
 import com.jannchie.biliob.repository.*;
 import com.jannchie.biliob.service.CreditService;
+import com.jannchie.biliob.service.SiteCounterService;
+import com.jannchie.biliob.service.UserRankIndexService;
 import com.jannchie.biliob.service.UserService;
 import com.jannchie.biliob.utils.*;
+import com.jannchie.biliob.utils.schedule.CrawlScheduler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
@@ -63,6 +65,10 @@ class UserServiceImpl implements UserService {
     @Autowired
     private CreditService creditService;
     @Autowired
+    private SiteCounterService siteCounterService;
+    @Autowired
+    private UserRankIndexService userRankIndexService;
+    @Autowired
     private MailUtil mailUtil;
     @Autowired
     private RecommendVideo recommendVideo;
@@ -74,6 +80,8 @@ class UserServiceImpl implements UserService {
     private HttpServletRequest httpServletRequest;
     @Autowired
     private HttpServletResponse httpServletResponse;
+    @Autowired
+    private CrawlScheduler crawlScheduler;
     private BCryptPasswordEncoder bCryptPasswordEncoder = new BCryptPasswordEncoder();
 
     @Override
@@ -103,6 +111,8 @@ class UserServiceImpl implements UserService {
         user.setExp(0D);
         user.setRole("普通用户");
         userRepository.save(user);
+        siteCounterService.onUserInserted();
+        userRankIndexService.onExpChanged(user.getId(), user.getExp());
         // 不要返回密码
         user.setPassword(null);
         return new ResponseEntity<>(new Result<>(ResultEnum.SUCCEED, user), HttpStatus.OK);
@@ -359,6 +369,7 @@ class UserServiceImpl implements UserService {
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResultEnum.AUTHOR_NOT_FOUND.getResult();
         }
+        Boolean oldForceFocus = a.getForceFocus();
         if (a.getForceFocus() == null) {
             a.setForceFocus(false);
         }
@@ -367,6 +378,7 @@ class UserServiceImpl implements UserService {
             return ResultEnum.ALREADY_FORCE_FOCUS.getResult();
         }
         mongoTemplate.update(Author.class).matching(q).apply(Update.update(FORCE_FOCUS, forceFocus)).first();
+        siteCounterService.onAuthorForceFocusChanged(a.getFocus(), oldForceFocus, forceFocus);
         return creditService.doCreditOperation(CreditConstant.SET_AUTHOR_FORCE_OBSERVE, msg);
     }
 
@@ -402,6 +414,7 @@ class UserServiceImpl implements UserService {
         UserRecord ur = result.getUserRecord();
         Query q = Query.query(Criteria.where("mid").is(mid));
         mongoTemplate.upsert(q, new Update().addToSet("order", ur.getId()).set("next", new Date(0)), AuthorIntervalRecord.class);
+        crawlScheduler.scheduleAuthor(mid, null, new Date(0));
         result.setData(null);
         return result;
     }
@@ -411,7 +424,11 @@ class UserServiceImpl implements UserService {
     public Result<?> refreshVideo(@Valid Long aid) {
         Query q = Query.query(Criteria.where("aid").is(aid));
         String msg = CreditConstant.REFRESH_VIDEO_DATA.getMsg(aid);
-        return refreshVideo(q, msg);
+        Result<?> result = refreshVideo(q, msg);
+        if (result.getCode() != -1) {
+            crawlScheduler.scheduleVideo(aid, null, new Date(0));
+        }
+        return result;
     }
 
     @Override
@@ -643,9 +660,8 @@ class UserServiceImpl implements UserService {
     }
 
     @Override
-    @Cacheable("user-count")
     public long getUserCount() {
-        return mongoTemplate.count(new Query(), "user");
+        return siteCounterService.getCount(SiteCounterService.Counter.USER);
     }
 
     @Override
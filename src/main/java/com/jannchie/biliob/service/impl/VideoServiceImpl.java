@@ -10,9 +10,12 @@ import com.jannchie.biliob.model.VideoInfo;
 import com.jannchie.biliob.model.VideoOnline;
 import com.jannchie.biliob.object.VideoRankTable;
 import com.jannchie.biliob.repository.VideoRepository;
+import com.jannchie.biliob.service.SiteCounterService;
 import com.jannchie.biliob.service.UserService;
 import com.jannchie.biliob.service.VideoService;
+import com.jannchie.biliob.service.VisitCounterService;
 import com.jannchie.biliob.utils.*;
+import com.jannchie.biliob.utils.schedule.CrawlScheduler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -47,6 +50,7 @@ import static org.springframework.data.mongodb.core.query.Criteria.where;
 public class VideoServiceImpl implements VideoService {
     private static final Logger logger = LogManager.getLogger(VideoServiceImpl.class);
     private static final Integer MAX_PAGE_SIZE = 10;
+    private static final int MOST_VISIT_VIDEO_COUNT = 100;
     @Autowired
     private RedisOps redisOps;
     @Autowired
@@ -61,6 +65,14 @@ public class VideoServiceImpl implements VideoService {
     private BiliobUtils biliOBUtils;
     @Autowired
     private UserUtils userUtils;
+    @Autowired
+    private VisitLogWriter visitLogWriter;
+    @Autowired
+    private VisitCounterService visitCounterService;
+    @Autowired
+    private SiteCounterService siteCounterService;
+    @Autowired
+    private CrawlScheduler crawlScheduler;
 
     /**
      * get popular keyword
@@ -68,7 +80,7 @@ public class VideoServiceImpl implements VideoService {
      * @return keyword list
      */
     @Override
-    @Cacheable(value = "popular_keyword")
+    @Cacheable(value = "popular_keyword", sync = true)
     public List getPopularTag() {
         int delta = 7;
         int compare = 90;
@@ -252,7 +264,8 @@ public class VideoServiceImpl implements VideoService {
         String finalUserName = biliOBUtils.getUserName();
         Map<?, ?> data = biliOBUtils.getVisitData(finalUserName, aid);
         VideoServiceImpl.logger.info("用户[{}]查询aid[{}]的详细数据", finalUserName, aid);
-        mongoTemplate.insert(data, "video_visit");
+        visitLogWriter.write(data, "video_visit");
+        visitCounterService.recordVideoVisit(aid);
     }
 
 
@@ -312,7 +325,8 @@ public class VideoServiceImpl implements VideoService {
             return new ResponseEntity<>(new Message(400, "系统已经观测了该视频"), HttpStatus.BAD_REQUEST);
         }
         VideoServiceImpl.logger.info(aid);
-        repository.save(new Video(aid));
+        Video video = repository.save(new Video(aid));
+        siteCounterService.onVideoInserted(video);
         redisOps.postVideoCrawlTask(aid);
         return new ResponseEntity<>(new Message(200, "观测视频成功"), HttpStatus.OK);
     }
@@ -501,10 +515,10 @@ public class VideoServiceImpl implements VideoService {
             this.upsertVideoFreq(video.getAid(), SECOND_OF_DAY);
         }
         // 最多点击：高速观测
-        List<Map> mostVisitAuthorList = this.listMostVisitVideoId(1);
-        for (Map data : mostVisitAuthorList
+        List<DecayingTopK.Item> mostVisitVideoList = visitCounterService.listTopVideo(VisitCounterService.Window.DAY, MOST_VISIT_VIDEO_COUNT);
+        for (DecayingTopK.Item data : mostVisitVideoList
         ) {
-            this.upsertVideoFreq((Long) data.get("aid"), SECOND_OF_DAY);
+            this.upsertVideoFreq(data.getKey(), SECOND_OF_DAY);
         }
         logger.info("[FINISH] 调整观测频率");
     }
@@ -518,6 +532,7 @@ public class VideoServiceImpl implements VideoService {
                 .set("interval", interval);
         u.setOnInsert("next", nextCal.getTime());
         mongoTemplate.upsert(Query.query(Criteria.where("aid").is(aid)), u, "video_interval");
+        crawlScheduler.scheduleVideo(aid, interval, null);
     }
 
 
@@ -526,25 +541,4 @@ public class VideoServiceImpl implements VideoService {
         q.fields().include("mid");
         return mongoTemplate.find(q, Video.class, "video");
     }
-
-    private List<Map> listMostVisitVideoId(Integer days, Integer limit) {
-        Calendar c = Calendar.getInstance();
-        c.add(Calendar.DATE, days);
-        return mongoTemplate.aggregate(
-                Aggregation.newAggregation(
-                        Aggregation.match(Criteria.where("date").gt(c)),
-                        Aggregation.group("mid").count().as("count"),
-                        Aggregation.sort(Sort.Direction.DESC, "count"),
-                        Aggregation.limit(limit)), "video_visit", Map.class).getMappedResults();
-    }
-
-    private List<Map> listMostVisitVideoId(Integer days) {
-        Calendar c = Calendar.getInstance();
-        c.add(Calendar.DATE, days);
-        return mongoTemplate.aggregate(
-                Aggregation.newAggregation(
-                        Aggregation.match(Criteria.where("date").gt(c)),
-                        Aggregation.group("mid").count().as("count"),
-                        Aggregation.sort(Sort.Direction.DESC, "count")), "video_visit", Map.class).getMappedResults();
-    }
 }
@@ -0,0 +1,106 @@
+package com.jannchie.biliob.utils;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
+
+/**
+ * IP 白名单、黑名单与 UA 黑名单的进程内缓存。
+ * 每分钟从数据库全量刷新一次；本进程内的封禁会立即生效，其他实例的修改在下次刷新后生效。
+ *
+ * @author Jannchie
+ */
+@Component
+public class AccessListCache {
+    private static final Logger logger = LogManager.getLogger();
+    private final MongoTemplate mongoTemplate;
+    private final List<String> userAgents = new ArrayList<>();
+    private volatile Set<String> whiteList = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> blackList = ConcurrentHashMap.newKeySet();
+    private volatile AhoCorasick userAgentMatcher = AhoCorasick.empty();
+
+    @Autowired
+    public AccessListCache(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    private List<String> listField(String collection, String field) {
+        List<String> result = new ArrayList<>();
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(collection)
+                .find()
+                .projection(Projections.fields(Projections.excludeId(), Projections.include(field)))
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Object value = cursor.next().get(field);
+                if (value instanceof String) {
+                    result.add((String) value);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelay = MICROSECOND_OF_MINUTES)
+    public void refresh() {
+        Set<String> newWhiteList = ConcurrentHashMap.newKeySet();
+        newWhiteList.addAll(listField("whitelist", "ip"));
+        Set<String> newBlackList = ConcurrentHashMap.newKeySet();
+        newBlackList.addAll(listField("blacklist", "ip"));
+        List<String> newUserAgents = listField("user_agent_black_list", "userAgent");
+        AhoCorasick newMatcher = AhoCorasick.of(newUserAgents);
+        synchronized (userAgents) {
+            userAgents.clear();
+            userAgents.addAll(newUserAgents);
+            userAgentMatcher = newMatcher;
+        }
+        whiteList = newWhiteList;
+        blackList = newBlackList;
+        logger.debug("访问控制名单已刷新：白名单 {}，黑名单 {}，UA 黑名单 {}", newWhiteList.size(), newBlackList.size(), newUserAgents.size());
+    }
+
+    public boolean isWhite(String ip) {
+        return ip != null && whiteList.contains(ip);
+    }
+
+    public boolean isBlack(String ip) {
+        return ip != null && blackList.contains(ip);
+    }
+
+    public boolean isBot(String userAgent) {
+        return userAgentMatcher.matches(userAgent);
+    }
+
+    /**
+     * 数据库写入黑名单后调用，使封禁立即在本进程生效
+     *
+     * @param ip IP
+     */
+    public void addBlackList(String ip) {
+        blackList.add(ip);
+    }
+
+    /**
+     * 数据库写入 UA 黑名单后调用，使封禁立即在本进程生效
+     *
+     * @param userAgent UA 片段
+     */
+    public void addUserAgent(String userAgent) {
+        synchronized (userAgents) {
+            userAgents.add(userAgent);
+            userAgentMatcher = AhoCorasick.of(userAgents);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.jannchie.biliob.utils;
+
+import com.jannchie.biliob.constant.AuthorAchievementEnum;
+import com.jannchie.biliob.constant.AuthorUniqueAchievementEnum;
+import com.jannchie.biliob.model.Author;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * UP主数值类成就的判定。
+ * <p>
+ * 粉丝、播放、点赞各自的阈值按从小到大排列，一次遍历历史数据即可找到每个阈值第一次被超过的位置，
+ * 结果与逐个成就查询数据库时相同。
+ *
+ * @author Jannchie
+ */
+public class AchievementEvaluator {
+
+    private AchievementEvaluator() {
+    }
+
+    /**
+     * 判定尚未获得的唯一成就
+     *
+     * @param mid      UP主ID
+     * @param achieved 已经获得的成就
+     * @param dataList UP主的历史数据，用头部的数据判断是否达到阈值，尾部的数据判断是否一开始就已经超过阈值
+     * @param series   按时间升序的全部历史数据，只在有成就达到阈值时读取
+     * @return 新获得的成就，按成就的定义顺序排列
+     */
+    public static List<Author.Achievement> evaluateUnique(Long mid, Set<Integer> achieved, List<Author.Data> dataList,
+                                                          Supplier<List<Author.Data>> series) {
+        if (dataList.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Long[] head = firstNonNull(dataList, 0, 1);
+        Long[] tail = firstNonNull(dataList, dataList.size() - 1, -1);
+        for (Long value : head) {
+            if (value == null) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<AuthorUniqueAchievementEnum> candidates = new ArrayList<>();
+        for (AuthorUniqueAchievementEnum e : AuthorUniqueAchievementEnum.values()) {
+            Metric metric = Metric.ofId(e.getId());
+            if (!achieved.contains(e.getId()) && metric != null && head[metric.ordinal()] > e.getValue()) {
+                candidates.add(e);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Author.Data> allData = series.get();
+        int size = candidates.size();
+        Metric[] candidateMetrics = new Metric[size];
+        long[] thresholds = new long[size];
+        for (int i = 0; i < size; i++) {
+            candidateMetrics[i] = Metric.ofId(candidates.get(i).getId());
+            thresholds[i] = candidates.get(i).getValue();
+        }
+        Crossings crossings = findCrossings(allData, 0, candidateMetrics, thresholds);
+
+        List<Author.Achievement> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (crossings.index[i] < 0) {
+                continue;
+            }
+            AuthorUniqueAchievementEnum e = candidates.get(i);
+            Author.Data data = allData.get(crossings.index[i]);
+            Author.Achievement a = new Author.Achievement(e, mid, candidateMetrics[i].of(data));
+            // 如果初始值大于判定点，则不填充date
+            a.setDate(tail[candidateMetrics[i].ordinal()] > e.getValue() ? null : data.getDatetime());
+            result.add(a);
+        }
+        return result;
+    }
+
+    /**
+     * 判定尚未获得的、编号在 [3000, 3100) 之间的成就：从第二条数据开始第一次超过阈值时获得，
+     * 前一条数据未达到阈值时记录日期
+     *
+     * @param mid      UP主ID
+     * @param achieved 已经获得的成就
+     * @param series   按时间升序的历史数据
+     * @return 新获得的成就，按成就的定义顺序排列
+     */
+    public static List<Author.Achievement> evaluateCrossing(Long mid, Set<Integer> achieved, List<Author.Data> series) {
+        List<AuthorAchievementEnum> candidates = new ArrayList<>();
+        for (AuthorAchievementEnum e : AuthorAchievementEnum.values()) {
+            if (e.getId() >= 3000 && e.getId() < 3100 && !achieved.contains(e.getId())) {
+                candidates.add(e);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int size = candidates.size();
+        Metric[] candidateMetrics = new Metric[size];
+        long[] thresholds = new long[size];
+        for (int i = 0; i < size; i++) {
+            int id = candidates.get(i).getId();
+            candidateMetrics[i] = id < 3010 ? Metric.FANS : id < 3020 ? Metric.ARCHIVE_VIEW : Metric.LIKE;
+            thresholds[i] = candidates.get(i).getValue();
+        }
+        Crossings crossings = findCrossings(series, 1, candidateMetrics, thresholds);
+
+        List<Author.Achievement> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (crossings.index[i] < 0) {
+                continue;
+            }
+            AuthorAchievementEnum e = candidates.get(i);
+            Author.Achievement a = new Author.Achievement(e, mid);
+            a.setDate(crossings.previous[i] < e.getValue() ? series.get(crossings.index[i]).getDatetime() : null);
+            result.add(a);
+        }
+        return result;
+    }
+
+    /**
+     * 从 from 开始按 step 的方向查找各数据项第一个非空值，全部找到后即停止
+     */
+    private static Long[] firstNonNull(List<Author.Data> dataList, int from, int step) {
+        Metric[] metrics = Metric.values();
+        Long[] result = new Long[metrics.length];
+        int remaining = metrics.length;
+        for (int i = from; i >= 0 && i < dataList.size() && remaining > 0; i += step) {
+            Author.Data data = dataList.get(i);
+            for (Metric metric : metrics) {
+                if (result[metric.ordinal()] == null) {
+                    result[metric.ordinal()] = metric.of(data);
+                    if (result[metric.ordinal()] != null) {
+                        remaining--;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 一次遍历求每个阈值第一次被严格超过的位置
+     *
+     * @param series     历史数据
+     * @param from       开始遍历的位置
+     * @param metrics    每个阈值对应的数据项
+     * @param thresholds 阈值
+     * @return 每个阈值被超过的位置（从未超过时为 -1），以及此前最后一个非空值（没有时为 0）
+     */
+    private static Crossings findCrossings(List<Author.Data> series, int from, Metric[] metrics, long[] thresholds) {
+        Metric[] allMetrics = Metric.values();
+        // 按数据项分组，组内按阈值升序
+        int[][] orders = new int[allMetrics.length][];
+        int[] counts = new int[allMetrics.length];
+        for (Metric metric : metrics) {
+            counts[metric.ordinal()]++;
+        }
+        for (int m = 0; m < allMetrics.length; m++) {
+            orders[m] = new int[counts[m]];
+            counts[m] = 0;
+        }
+        for (int i = 0; i < thresholds.length; i++) {
+            int[] order = orders[metrics[i].ordinal()];
+            int j = counts[metrics[i].ordinal()]++;
+            while (j > 0 && thresholds[order[j - 1]] > thresholds[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        Crossings crossings = new Crossings(thresholds.length);
+        int[] next = new int[allMetrics.length];
+        long[] last = new long[allMetrics.length];
+        int remaining = thresholds.length;
+        for (int i = from; i < series.size() && remaining > 0; i++) {
+            Author.Data data = series.get(i);
+            for (Metric metric : allMetrics) {
+                int m = metric.ordinal();
+                int[] order = orders[m];
+                if (next[m] == order.length) {
+                    continue;
+                }
+                Long value = metric.of(data);
+                if (value == null) {
+                    continue;
+                }
+                while (next[m] < order.length && value > thresholds[order[next[m]]]) {
+                    crossings.index[order[next[m]]] = i;
+                    crossings.previous[order[next[m]]] = last[m];
+                    next[m]++;
+                    remaining--;
+                }
+                last[m] = value;
+            }
+        }
+        return crossings;
+    }
+
+    private enum Metric {
+        /**
+         * 粉丝数
+         */
+        FANS,
+        /**
+         * 播放数
+         */
+        ARCHIVE_VIEW,
+        /**
+         * 点赞数
+         */
+        LIKE;
+
+        /**
+         * 唯一成就的编号对应的数据项，3001 至 3009 为粉丝，3010 至 3019 为播放，3020 至 3029 为点赞
+         */
+        private static Metric ofId(int id) {
+            if (id < 3010) {
+                return FANS;
+            } else if (id < 3020) {
+                return ARCHIVE_VIEW;
+            } else if (id < 3030) {
+                return LIKE;
+            }
+            return null;
+        }
+
+        private Long of(Author.Data data) {
+            switch (this) {
+                case FANS:
+                    return data.getFans();
+                case ARCHIVE_VIEW:
+                    return data.getArchiveView();
+                default:
+                    return data.getLike();
+            }
+        }
+    }
+
+    private static class Crossings {
+        private final int[] index;
+        private final long[] previous;
+
+        private Crossings(int size) {
+            index = new int[size];
+            previous = new long[size];
+            Arrays.fill(index, -1);
+        }
+    }
+}
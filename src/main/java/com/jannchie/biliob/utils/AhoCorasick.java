@@ -0,0 +1,150 @@
+package com.jannchie.biliob.utils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * 多模式串匹配自动机，构建后只读，可在多线程中共享。
+ * 匹配时对文本只扫描一遍，耗时与模式串的数量无关。
+ *
+ * @author Jannchie
+ */
+public final class AhoCorasick {
+    private static final AhoCorasick EMPTY = new AhoCorasick(new char[1][0], new int[1][0], new int[1], new boolean[1]);
+    /**
+     * 每个节点的出边字符，升序排列
+     */
+    private final char[][] keys;
+    /**
+     * 每个节点的出边指向的节点，与 keys 一一对应
+     */
+    private final int[][] next;
+    private final int[] fail;
+    private final boolean[] output;
+
+    private AhoCorasick(char[][] keys, int[][] next, int[] fail, boolean[] output) {
+        this.keys = keys;
+        this.next = next;
+        this.fail = fail;
+        this.output = output;
+    }
+
+    public static AhoCorasick empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 构建自动机，空串和 null 会被忽略
+     *
+     * @param patterns 模式串
+     * @return 自动机
+     */
+    public static AhoCorasick of(Collection<String> patterns) {
+        int capacity = 1;
+        for (String pattern : patterns) {
+            if (pattern != null) {
+                capacity += pattern.length();
+            }
+        }
+        char[][] keys = new char[capacity][0];
+        int[][] next = new int[capacity][0];
+        boolean[] output = new boolean[capacity];
+        int size = 1;
+        boolean hasPattern = false;
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            hasPattern = true;
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int index = Arrays.binarySearch(keys[node], c);
+                if (index >= 0) {
+                    node = next[node][index];
+                    continue;
+                }
+                int insertion = -index - 1;
+                keys[node] = insert(keys[node], insertion, c);
+                next[node] = insert(next[node], insertion, size);
+                node = size++;
+            }
+            output[node] = true;
+        }
+        if (!hasPattern) {
+            return EMPTY;
+        }
+        keys = Arrays.copyOf(keys, size);
+        next = Arrays.copyOf(next, size);
+        output = Arrays.copyOf(output, size);
+        int[] fail = new int[size];
+        AhoCorasick automaton = new AhoCorasick(keys, next, fail, output);
+        // 按层次遍历计算失配指针，同时将后缀节点的输出合并到当前节点
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : next[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < keys[node].length; i++) {
+                int child = next[node][i];
+                int f = automaton.transit(fail[node], keys[node][i]);
+                fail[child] = f;
+                output[child] |= output[f];
+                queue.add(child);
+            }
+        }
+        return automaton;
+    }
+
+    private static char[] insert(char[] array, int index, char value) {
+        char[] result = new char[array.length + 1];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private static int[] insert(int[] array, int index, int value) {
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private int transit(int node, char c) {
+        while (true) {
+            int index = Arrays.binarySearch(keys[node], c);
+            if (index >= 0) {
+                return next[node][index];
+            }
+            if (node == 0) {
+                return 0;
+            }
+            node = fail[node];
+        }
+    }
+
+    /**
+     * 判断文本中是否包含任一模式串
+     *
+     * @param text 文本
+     * @return 是否包含
+     */
+    public boolean matches(CharSequence text) {
+        if (text == null || this == EMPTY) {
+            return false;
+        }
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            node = transit(node, text.charAt(i));
+            if (output[node]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
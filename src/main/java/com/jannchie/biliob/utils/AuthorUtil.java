@@ -3,6 +3,7 @@ package com.jannchie.biliob.utils;
 import com.jannchie.biliob.model.Author;
 import com.jannchie.biliob.model.AuthorRankData;
 import com.jannchie.biliob.object.AuthorIntervalRecord;
+import com.jannchie.biliob.service.AuthorRankIndexService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -20,13 +21,22 @@ import java.util.stream.Collectors;
 @Component
 public class AuthorUtil {
     private MongoTemplate mongoTemplate;
+    private AuthorRankIndexService authorRankIndexService;
 
     @Autowired
-    public AuthorUtil(MongoTemplate mongoTemplate) {
+    public AuthorUtil(MongoTemplate mongoTemplate, AuthorRankIndexService authorRankIndexService) {
         this.mongoTemplate = mongoTemplate;
+        this.authorRankIndexService = authorRankIndexService;
     }
 
     public AuthorRankData getRankData(Author author) {
+        if (authorRankIndexService.isReady()) {
+            return authorRankIndexService.getRankData(author);
+        }
+        return countRankData(author);
+    }
+
+    private AuthorRankData countRankData(Author author) {
         Long archiveViewRank = null != author.getcArchiveView() && author.getcArchiveView() != 0 ? mongoTemplate.count(Query.query(Criteria.where("cArchive_view").gte(author.getcArchiveView())), "author") : -1;
         Long articleViewRank = null != author.getcArticleView() && author.getcArticleView() != 0 ? mongoTemplate.count(Query.query(Criteria.where("cArticle_view").gte(author.getcArticleView())), "author") : -1;
         Long likeRank = null != author.getcLike() && author.getcLike() != 0 ? mongoTemplate.count(Query.query(Criteria.where("cLike").gte(author.getcLike())), "author") : -1;
@@ -0,0 +1,109 @@
+package com.jannchie.biliob.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * 按固定间隔刷新的页面区块。
+ * <p>
+ * 区块的值由 loader 写入一个 Map，计算结果连同计算时间与耗时一起缓存，在刷新间隔内直接返回。
+ * 过期后在指定的线程池中重新计算，同时只有一次计算，计算期间的其他调用共享同一个结果。
+ * 重新计算失败时，如果有旧值则继续返回旧值。
+ *
+ * @author Jannchie
+ */
+public class CachedSection {
+    private final String name;
+    private final long refreshInterval;
+    private final Consumer<Map<String, Object>> loader;
+    private Snapshot snapshot;
+    private CompletableFuture<Snapshot> refreshing;
+
+    /**
+     * @param name            区块名
+     * @param refreshInterval 刷新间隔（毫秒）
+     * @param loader          计算区块的值，写入传入的 Map
+     */
+    public CachedSection(String name, long refreshInterval, Consumer<Map<String, Object>> loader) {
+        this.name = name;
+        this.refreshInterval = refreshInterval;
+        this.loader = loader;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取区块的值，未过期时立即完成，否则在 executor 中重新计算
+     *
+     * @param executor 计算所用的线程池
+     * @param now      当前时间（毫秒）
+     * @return 区块的值
+     */
+    public synchronized CompletableFuture<Snapshot> get(Executor executor, long now) {
+        if (snapshot != null && now - snapshot.computedAt < refreshInterval) {
+            return CompletableFuture.completedFuture(snapshot);
+        }
+        if (refreshing != null) {
+            return refreshing;
+        }
+        CompletableFuture<Snapshot> future = CompletableFuture.supplyAsync(this::load, executor)
+                .handle(this::finish);
+        // 线程池已满时由调用线程直接计算，此时已经完成
+        if (!future.isDone()) {
+            refreshing = future;
+        }
+        return future;
+    }
+
+    private Snapshot load() {
+        long start = System.currentTimeMillis();
+        Map<String, Object> data = new HashMap<>(4);
+        loader.accept(data);
+        long end = System.currentTimeMillis();
+        return new Snapshot(Collections.unmodifiableMap(data), end, end - start);
+    }
+
+    private synchronized Snapshot finish(Snapshot result, Throwable error) {
+        refreshing = null;
+        if (result != null) {
+            snapshot = result;
+        }
+        if (snapshot == null) {
+            throw new IllegalStateException("Section " + name + " failed to load", error);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 区块某一次计算的结果
+     */
+    public static class Snapshot {
+        private final Map<String, Object> data;
+        private final long computedAt;
+        private final long computeTime;
+
+        private Snapshot(Map<String, Object> data, long computedAt, long computeTime) {
+            this.data = data;
+            this.computedAt = computedAt;
+            this.computeTime = computeTime;
+        }
+
+        public Map<String, Object> getData() {
+            return data;
+        }
+
+        public long getComputedAt() {
+            return computedAt;
+        }
+
+        public long getComputeTime() {
+            return computeTime;
+        }
+    }
+}
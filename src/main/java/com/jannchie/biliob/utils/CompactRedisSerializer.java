@@ -0,0 +1,205 @@
+package com.jannchie.biliob.utils;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑的 Redis 值序列化。
+ * <p>
+ * 与 Jackson2JsonRedisSerializer 一样保留类型信息，但登记在类型表中的类只写入简短的别名而不是完整类名，
+ * 数据格式由传入的 JsonFactory 决定（例如 Smile 二进制格式）。
+ * 序列化结果超过 compressThreshold 字节时再用 Deflate 压缩。
+ * <p>
+ * 每个结果以一个字节的头部标记是否压缩；头部不可识别的数据（例如切换序列化方式之前写入的 JSON）交给 fallback 处理。
+ *
+ * @author Jannchie
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+    private static final byte PLAIN = 1;
+    private static final byte DEFLATED = 2;
+    private final ObjectMapper mapper;
+    private final int compressThreshold;
+    private final RedisSerializer<?> fallback;
+
+    /**
+     * @param factory           数据格式
+     * @param typeTable         类型表，别名到类的映射，别名中不能含有“.”，以免与完整类名混淆
+     * @param compressThreshold 压缩阈值（字节），小于等于 0 时不压缩
+     * @param fallback          处理无法识别的数据，为 null 时抛出异常
+     */
+    public CompactRedisSerializer(JsonFactory factory, Map<String, Class<?>> typeTable,
+                                  int compressThreshold, RedisSerializer<?> fallback) {
+        for (String alias : typeTable.keySet()) {
+            if (alias.isEmpty() || alias.indexOf('.') >= 0) {
+                throw new IllegalArgumentException("Invalid type alias: " + alias);
+            }
+        }
+        this.mapper = new ObjectMapper(factory);
+        this.mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        this.mapper.setDefaultTyping(new TypeTableResolverBuilder(typeTable));
+        this.compressThreshold = compressThreshold;
+        this.fallback = fallback;
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            out.write(DEFLATED);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("Truncated deflate data");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes;
+        try {
+            bytes = mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Could not write value: " + e.getMessage(), e);
+        }
+        if (compressThreshold > 0 && bytes.length > compressThreshold) {
+            return deflate(bytes);
+        }
+        byte[] result = new byte[bytes.length + 1];
+        result[0] = PLAIN;
+        System.arraycopy(bytes, 0, result, 1, bytes.length);
+        return result;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            switch (bytes[0]) {
+                case PLAIN:
+                    return mapper.readValue(bytes, 1, bytes.length - 1, Object.class);
+                case DEFLATED:
+                    return mapper.readValue(inflate(bytes), Object.class);
+                default:
+                    if (fallback == null) {
+                        throw new SerializationException("Unknown header: " + bytes[0]);
+                    }
+                    return fallback.deserialize(bytes);
+            }
+        } catch (IOException | DataFormatException e) {
+            throw new SerializationException("Could not read value: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 与 activateDefaultTyping(NON_FINAL, WRAPPER_ARRAY) 相同的类型信息，只替换类型ID的写法
+     */
+    private static class TypeTableResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
+        private static final long serialVersionUID = 1L;
+        private final HashMap<Class<?>, String> aliasOfType = new HashMap<>();
+        private final HashMap<String, Class<?>> typeOfAlias = new HashMap<>();
+
+        private TypeTableResolverBuilder(Map<String, Class<?>> typeTable) {
+            super(ObjectMapper.DefaultTyping.NON_FINAL, LaissezFaireSubTypeValidator.instance);
+            init(JsonTypeInfo.Id.CLASS, null);
+            inclusion(JsonTypeInfo.As.WRAPPER_ARRAY);
+            typeTable.forEach((alias, type) -> {
+                aliasOfType.put(type, alias);
+                typeOfAlias.put(alias, type);
+            });
+        }
+
+        @Override
+        protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType,
+                                            PolymorphicTypeValidator subtypeValidator,
+                                            Collection<NamedType> subtypes, boolean forSer, boolean forDeser) {
+            return new TypeTableIdResolver(baseType, config.getTypeFactory(), subtypeValidator, aliasOfType, typeOfAlias);
+        }
+    }
+
+    private static class TypeTableIdResolver extends ClassNameIdResolver {
+        private final Map<Class<?>, String> aliasOfType;
+        private final Map<String, Class<?>> typeOfAlias;
+
+        private TypeTableIdResolver(JavaType baseType, TypeFactory typeFactory, PolymorphicTypeValidator ptv,
+                                    Map<Class<?>, String> aliasOfType, Map<String, Class<?>> typeOfAlias) {
+            super(baseType, typeFactory, ptv);
+            this.aliasOfType = aliasOfType;
+            this.typeOfAlias = typeOfAlias;
+        }
+
+        @Override
+        public String idFromValue(Object value) {
+            return idFromValueAndType(value, value.getClass());
+        }
+
+        @Override
+        public String idFromValueAndType(Object value, Class<?> type) {
+            String alias = aliasOfType.get(type);
+            return alias != null ? alias : super.idFromValueAndType(value, type);
+        }
+
+        @Override
+        public JavaType typeFromId(DatabindContext context, String id) throws IOException {
+            Class<?> type = typeOfAlias.get(id);
+            return type != null ? context.constructSpecializedType(_baseType, type) : super.typeFromId(context, id);
+        }
+
+        @Override
+        public String getDescForKnownTypeIds() {
+            return "class name or one of " + Arrays.toString(typeOfAlias.keySet().toArray());
+        }
+    }
+}
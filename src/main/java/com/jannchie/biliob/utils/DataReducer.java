@@ -1,9 +1,14 @@
 package com.jannchie.biliob.utils;
 
 import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.model.Video;
+import com.jannchie.biliob.model.VideoStat;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
 import static com.jannchie.biliob.constant.PageSizeEnum.BIG_SIZE;
 
@@ -12,18 +17,101 @@ import static com.jannchie.biliob.constant.PageSizeEnum.BIG_SIZE;
  */
 @Component
 public class DataReducer {
+    public static final int MAX_DATA_SIZE = 2000;
+
+    /**
+     * 历史数据过多时，在读取时对其进行降采样，数据库中的原始数据保持不变。
+     *
+     * @param author UP主
+     * @return 降采样后的UP主
+     */
     public static Author authorDataDownSampling(Author author) {
-        // TODO: author data down sampling
-        // author data become very big.
-        // It is necessary to down sampling the author data in order to optimize user loading
-        // experience.
-        List dataArrayList = author.getData();
-        if (dataArrayList.size() >= 2000) {
-            return author;
+        if (author.getData() != null && author.getData().size() > MAX_DATA_SIZE) {
+            author.setData(largestTriangleThreeBuckets(author.getData(), MAX_DATA_SIZE,
+                    data -> data.getDatetime().getTime(),
+                    data -> data.getFans() == null ? 0 : data.getFans()));
         }
         return author;
     }
 
+    public static Video videoDataDownSampling(Video video) {
+        if (video.getData() != null && video.getData().size() > MAX_DATA_SIZE) {
+            video.setData(largestTriangleThreeBuckets(video.getData(), MAX_DATA_SIZE,
+                    data -> data.getDatetime().getTime(),
+                    data -> data.getView() == null ? 0 : data.getView()));
+        }
+        return video;
+    }
+
+    public static List<VideoStat> videoStatDownSampling(List<VideoStat> stats) {
+        if (stats.size() > MAX_DATA_SIZE) {
+            return largestTriangleThreeBuckets(stats, MAX_DATA_SIZE,
+                    stat -> stat.getDatetime().getTime(),
+                    stat -> stat.getView() == null ? 0 : stat.getView());
+        }
+        return stats;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets 降采样。
+     * 保留首尾两点，其余数据平均分为 threshold - 2 个桶，
+     * 每个桶中选出与上一个选中点、下一个桶的平均点构成的三角形面积最大的点。
+     * 数据需按 x 单调排列，正序倒序均可。
+     *
+     * @param data      数据
+     * @param threshold 目标点数
+     * @param x         横坐标，一般为时间戳
+     * @param y         纵坐标
+     * @param <T>       数据类型
+     * @return 降采样后的数据，顺序与原数据一致
+     */
+    public static <T> ArrayList<T> largestTriangleThreeBuckets(List<T> data, int threshold, ToLongFunction<T> x, ToDoubleFunction<T> y) {
+        int size = data.size();
+        if (threshold >= size || threshold < 3) {
+            return new ArrayList<>(data);
+        }
+        long[] xs = new long[size];
+        double[] ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            T each = data.get(i);
+            xs[i] = x.applyAsLong(each);
+            ys[i] = y.applyAsDouble(each);
+        }
+        ArrayList<T> sampled = new ArrayList<>(threshold);
+        double every = (double) (size - 2) / (threshold - 2);
+        int a = 0;
+        sampled.add(data.get(a));
+        for (int i = 0; i < threshold - 2; i++) {
+            int avgStart = (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += xs[j];
+                avgY += ys[j];
+            }
+            int avgLength = avgEnd - avgStart;
+            avgX /= avgLength;
+            avgY /= avgLength;
+
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((xs[a] - avgX) * (ys[j] - ys[a]) - (xs[a] - xs[j]) * (avgY - ys[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled.add(data.get(next));
+            a = next;
+        }
+        sampled.add(data.get(size - 1));
+        return sampled;
+    }
+
     public static Integer limitPagesize(Integer pagesize) {
         if ((pagesize <= BIG_SIZE.getValue()) && (pagesize > 0)) {
             return pagesize;
@@ -0,0 +1,183 @@
+package com.jannchie.biliob.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 带时间衰减的高频项统计（Space-Saving 算法）。
+ * <p>
+ * 最多保留 capacity 个计数器，新项在计数器已满时替换计数最小的项并继承其计数，
+ * 因此计数只会被高估，且高估量不超过被替换项的计数。
+ * 衰减采用前向衰减：时刻 t 的一次访问记为 e^((t - landmark) / lifetime)，读取时统一除以当前时刻的权重，
+ * 等价于每个计数随时间按 e^(-Δt / lifetime) 衰减，而写入时无需改动其他计数器。
+ * <p>
+ * 线程安全，所有方法均在对象锁内执行。
+ *
+ * @author Jannchie
+ */
+public final class DecayingTopK {
+    /**
+     * 权重超过该值时重新选取基准时刻，避免溢出
+     */
+    private static final double RENORMALIZE_THRESHOLD = 1e100;
+    private final int capacity;
+    private final double lifetime;
+    private final HashMap<Long, Integer> indexOfKey;
+    /**
+     * 按计数排列的最小堆
+     */
+    private final long[] keys;
+    private final double[] counts;
+    private int size;
+    private long landmark;
+
+    /**
+     * @param capacity 计数器数量
+     * @param lifetime 衰减时间常数（毫秒），经过该时长后计数衰减为原来的 1/e
+     */
+    public DecayingTopK(int capacity, long lifetime) {
+        this.capacity = capacity;
+        this.lifetime = lifetime;
+        this.indexOfKey = new HashMap<>(capacity * 2);
+        this.keys = new long[capacity];
+        this.counts = new double[capacity];
+        this.landmark = System.currentTimeMillis();
+    }
+
+    private double weight(long time) {
+        return Math.exp((time - landmark) / lifetime);
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key  项
+     * @param time 访问时刻（毫秒）
+     */
+    public synchronized void offer(long key, long time) {
+        offer(key, 1, time);
+    }
+
+    /**
+     * 记录若干次访问
+     *
+     * @param key   项
+     * @param count 次数
+     * @param time  访问时刻（毫秒）
+     */
+    public synchronized void offer(long key, double count, long time) {
+        double increment = count * weight(time);
+        if (increment > RENORMALIZE_THRESHOLD) {
+            renormalize(time);
+            increment = count * weight(time);
+        }
+        Integer index = indexOfKey.get(key);
+        if (index != null) {
+            counts[index] += increment;
+            siftDown(index);
+        } else if (size < capacity) {
+            keys[size] = key;
+            counts[size] = increment;
+            indexOfKey.put(key, size);
+            siftUp(size++);
+        } else {
+            indexOfKey.remove(keys[0]);
+            keys[0] = key;
+            counts[0] += increment;
+            indexOfKey.put(key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * 获取计数最高的若干项
+     *
+     * @param limit 数量
+     * @param time  当前时刻（毫秒）
+     * @return 按计数降序排列的项
+     */
+    public synchronized List<Item> top(int limit, long time) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(counts[b], counts[a]));
+        double scale = weight(time);
+        int n = Math.min(limit, size);
+        List<Item> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(new Item(keys[order[i]], counts[order[i]] / scale));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void renormalize(long time) {
+        double scale = weight(time);
+        for (int i = 0; i < size; i++) {
+            counts[i] /= scale;
+        }
+        landmark = time;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[parent] <= counts[index]) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            int right = left + 1;
+            int child = right < size && counts[right] < counts[left] ? right : left;
+            if (counts[index] <= counts[child]) {
+                break;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        double count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        indexOfKey.put(keys[i], i);
+        indexOfKey.put(keys[j], j);
+    }
+
+    public static class Item {
+        private final long key;
+        private final double count;
+
+        private Item(long key, double count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public double getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.jannchie.biliob.utils;
+
+import com.jannchie.biliob.model.GuessingItem;
+import com.jannchie.biliob.object.UserGuessingResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 粉丝数竞猜的收益计算。
+ * <p>
+ * 每个筹码的得分取决于自身的偏差、提前量，以及前后各 10 个筹码的平均偏差；
+ * 奖池中的一部分积分按得分分配，其余按投入返还，最后按用户合并。
+ * 计算在基本类型的数组上进行：平均偏差由前缀和求出，按用户合并时以用户的下标累加。
+ *
+ * @author Jannchie
+ */
+public class GuessingScorer {
+    private static final double RATE = 0.47;
+    private static final int RANGE = 10;
+    private static final long HOUR = 3600000L;
+    /**
+     * 竞猜时间按东八区录入，需要减去 8 小时
+     */
+    private static final long GUESSING_TIME_OFFSET = 8 * HOUR;
+    private static final int INITIAL_USER_CAPACITY = 100;
+
+    private GuessingScorer() {
+    }
+
+    /**
+     * 计算每个用户的竞猜结果
+     *
+     * @param pokerChips     按下注顺序排列的筹码
+     * @param finalReachTime 实际达成的时间（毫秒）
+     * @return 每个用户的竞猜结果
+     */
+    public static ArrayList<UserGuessingResult> score(List<GuessingItem.PokerChip> pokerChips, long finalReachTime) {
+        int size = pokerChips == null ? 0 : pokerChips.size();
+        long[] guessingTimes = new long[size];
+        long[] createTimes = new long[size];
+        long[] lossHours = new long[size];
+        long[] foreHours = new long[size];
+        double[] credits = new double[size];
+        int[] users = new int[size];
+        // 与按用户名合并时使用的 HashMap 容量与插入顺序相同，结果的顺序也就相同
+        HashMap<String, Integer> userIndex = new HashMap<>(INITIAL_USER_CAPACITY);
+        List<String> userNames = new ArrayList<>();
+        long[] prefixLossHours = new long[size + 1];
+        for (int i = 0; i < size; i++) {
+            GuessingItem.PokerChip p = pokerChips.get(i);
+            String userName = p.getUser().getName();
+            Integer index = userIndex.get(userName);
+            if (index == null) {
+                index = userNames.size();
+                userIndex.put(userName, index);
+                userNames.add(userName);
+            }
+            users[i] = index;
+            guessingTimes[i] = p.getGuessingDate().getTime() - GUESSING_TIME_OFFSET;
+            createTimes[i] = p.getCreateTime().getTime();
+            credits[i] = p.getCredit();
+            lossHours[i] = Math.abs((finalReachTime - guessingTimes[i]) / HOUR);
+            foreHours[i] = (finalReachTime - createTimes[i]) / HOUR;
+            prefixLossHours[i + 1] = prefixLossHours[i] + lossHours[i];
+        }
+
+        long[] scores = new long[size];
+        long sumScore = 0L;
+        double sumCredit = 0D;
+        for (int i = 0; i < size; i++) {
+            int l = Math.max(i - RANGE, 0);
+            int r = Math.min(i + RANGE, size);
+            // 除数为 l - r，与原有的计算保持一致
+            long averageLossHour = (prefixLossHours[r] - prefixLossHours[l]) / (l - r);
+            scores[i] = (long) (getScore(lossHours[i], foreHours[i], averageLossHour) * RATE * credits[i]);
+            sumScore += scores[i];
+            sumCredit += credits[i];
+        }
+        double scoreCredit = sumCredit * RATE / sumScore;
+
+        int userCount = userNames.size();
+        long[] userScores = new long[userCount];
+        double[] userRevenues = new double[userCount];
+        double[] userCredits = new double[userCount];
+        long[] userCreateTimes = new long[userCount];
+        long[] userGuessingTimes = new long[userCount];
+        long[] userForeHours = new long[userCount];
+        long[] userLossHours = new long[userCount];
+        int[] userChips = new int[userCount];
+        for (int i = 0; i < size; i++) {
+            double revenue = credits[i] * (1 - RATE) + scores[i] * scoreCredit;
+            revenue = new BigDecimal(revenue).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue();
+            int u = users[i];
+            if (userChips[u] == 0) {
+                userScores[u] = scores[i];
+                userRevenues[u] = revenue;
+                userCredits[u] = credits[i];
+            } else {
+                userScores[u] += scores[i];
+                userRevenues[u] += revenue;
+                userCredits[u] += credits[i];
+            }
+            userCreateTimes[u] += createTimes[i];
+            userGuessingTimes[u] += guessingTimes[i];
+            userForeHours[u] += foreHours[i];
+            userLossHours[u] += lossHours[i];
+            userChips[u]++;
+        }
+
+        ArrayList<UserGuessingResult> results = new ArrayList<>(userCount);
+        for (int u : userIndex.values()) {
+            UserGuessingResult result = new UserGuessingResult();
+            result.setName(userNames.get(u));
+            result.setScore(userScores[u]);
+            result.setCredit(userCredits[u]);
+            result.setAverageCreateTime(new Date(userCreateTimes[u] / userChips[u]));
+            result.setAverageDate(new Date(userGuessingTimes[u] / userChips[u]));
+            result.setForeHour(userForeHours[u] / userChips[u]);
+            result.setLossHour(userLossHours[u] / userChips[u]);
+            result.setRevenue(BigDecimal.valueOf(userRevenues[u]).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue());
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static long getScore(long lossHour, long foreHour, long averageLossHour) {
+        double error = (double) lossHour / (double) foreHour;
+        if (error > 1) {
+            error = 1;
+        }
+        long lossBetter = averageLossHour - lossHour;
+        if (lossBetter > 147) {
+            lossBetter = 147;
+        }
+        if (lossBetter < -47) {
+            lossBetter = -47;
+        }
+        long score = 147;
+        score += lossBetter;
+        score += foreHour / 720;
+        score -= 100 * error;
+        if (lossHour < 24 && foreHour > 30 * 24 || lossHour < 24 * 7 && foreHour > 90 * 24 || lossHour < 24 * 14 && foreHour > 120 * 24) {
+            score *= 4;
+        } else if (lossHour < 48 && foreHour > 30 * 24 || lossHour < 24 * 14 && foreHour > 90 * 24 || lossHour < 24 * 21 && foreHour > 120 * 24) {
+            score *= 3;
+        } else if (lossHour < 24 * 3 && foreHour > 14 * 24 || lossHour < 24 * 21 && foreHour > 90 * 24 || lossHour < 24 * 28 && foreHour > 120 * 24) {
+            score *= 2;
+        } else if (lossHour < 3 && foreHour > 7 * 24) {
+            score *= 1.8;
+        } else if (lossHour < 6 && foreHour > 5 * 24) {
+            score *= 1.5;
+        } else if (lossHour < 12) {
+            score *= 1.2;
+        }
+        return score;
+    }
+}
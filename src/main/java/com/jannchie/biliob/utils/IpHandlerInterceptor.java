@@ -2,16 +2,11 @@ package com.jannchie.biliob.utils;
 
 import com.jannchie.biliob.model.Blacklist;
 import com.jannchie.biliob.model.IpVisitRecord;
-import com.jannchie.biliob.model.UserAgentBlackList;
-import com.jannchie.biliob.model.WhiteList;
-import com.jannchie.biliob.object.IpAggregationInfo;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.aggregation.Aggregation;
-import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
@@ -20,13 +15,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-
-import static org.springframework.data.mongodb.core.query.Criteria.where;
-import static org.springframework.data.mongodb.core.query.Query.query;
 
 /**
  * @author jannchie
@@ -34,12 +24,11 @@ import static org.springframework.data.mongodb.core.query.Query.query;
 @Component
 public class IpHandlerInterceptor implements HandlerInterceptor {
     private static final Logger logger = LogManager.getLogger(IpHandlerInterceptor.class);
-    private static final Integer MAX_CUD_IN_MINUTE = 180;
-    private static final Integer MAX_R_IN_MINUTE = 360;
-    private static final String IP = "ip";
     private static final Pattern NUMBER_PATTERN = Pattern.compile("[0-9]+");
-    private static final Double CHECK_RATE = 0.05D;
     private final MongoTemplate mongoTemplate;
+    private final AccessListCache accessListCache;
+    private final RateLimiter rateLimiter;
+    private final VisitLogWriter visitLogWriter;
     @Autowired
     private UserUtils userUtils;
 
@@ -47,8 +36,11 @@ public class IpHandlerInterceptor implements HandlerInterceptor {
      * controller 执行之前调用
      */
     @Autowired
-    public IpHandlerInterceptor(MongoTemplate mongoTemplate) {
+    public IpHandlerInterceptor(MongoTemplate mongoTemplate, AccessListCache accessListCache, RateLimiter rateLimiter, VisitLogWriter visitLogWriter) {
         this.mongoTemplate = mongoTemplate;
+        this.accessListCache = accessListCache;
+        this.rateLimiter = rateLimiter;
+        this.visitLogWriter = visitLogWriter;
     }
 
     public static String replaceDigital(String value) {
@@ -70,57 +62,43 @@ public class IpHandlerInterceptor implements HandlerInterceptor {
         }
         MDC.put("user", userName);
         // 在白名单中直接放过
-        if (mongoTemplate.exists(query(where(IP).is(ip)), WhiteList.class)) {
+        if (accessListCache.isWhite(ip)) {
             return true;
         }
         // 在黑名单中直接处决
-        if (mongoTemplate.exists(query(where(IP).is(ip)), Blacklist.class)) {
+        if (accessListCache.isBlack(ip)) {
             returnJson(response);
             return false;
         }
 
-        if (isBot(userAgent)) {
+        if (accessListCache.isBot(userAgent)) {
             addToBlackList(response, ip, String.format("使用爬虫 %s", userAgent));
         }
 
-
-        // 保存一条IP访问记录
-        mongoTemplate.save(new IpVisitRecord(ip, userAgent, uri));
-
-        if (Math.random() < CHECK_RATE) {
-            List<IpAggregationInfo> ipAggregationInfoList = mongoTemplate.aggregate(Aggregation.newAggregation(
-                    Aggregation.match(Criteria.where("ip").is(ip)),
-                    Aggregation.group("uri").first("ip").as("ip").count().as("count")
-            ), IpVisitRecord.class, IpAggregationInfo.class).getMappedResults();
-            for (IpAggregationInfo info : ipAggregationInfoList
-            ) {
-                // 如果某个API在十分钟内访问100次
-                if (info.getCount() > 100) {
-                    addToBlackList(response, ip, String.format("访问频率过高 %s", info.getUri()));
-                    return false;
-                }
+        // 同一接口访问频率过高时拒绝访问，持续超限时加入黑名单
+        if (!rateLimiter.tryAcquire(ip, request.getMethod(), uri)) {
+            logger.info("[LIMIT] {} {} {}", ip, request.getMethod(), uri);
+            if (rateLimiter.recordRejection(ip)) {
+                addToBlackList(response, ip, String.format("访问频率过高 %s", uri));
+            } else {
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
             }
+            returnJson(response);
+            return false;
         }
+
+        // 保存一条IP访问记录
+        visitLogWriter.write(new IpVisitRecord(ip, userAgent, uri));
         return true;
     }
 
     private void addToBlackList(HttpServletResponse response, String ip, String reason) {
         mongoTemplate.save(new Blacklist(ip, String.format("%s", reason)));
+        accessListCache.addBlackList(ip);
         logger.info(ip);
         response.setStatus(HttpStatus.FORBIDDEN.value());
     }
 
-    private boolean isBot(String userAgent) {
-        List<String> banedUserAgent = mongoTemplate.findAll(UserAgentBlackList.class).stream().map(UserAgentBlackList::getUserAgent).collect(Collectors.toList());
-        for (String ua : banedUserAgent
-        ) {
-            if (userAgent.contains(ua)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private void returnJson(HttpServletResponse response) {
         response.setCharacterEncoding("UTF-8");
         response.setContentType("application/json; charset=utf-8");
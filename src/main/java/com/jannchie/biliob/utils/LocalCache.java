@@ -0,0 +1,120 @@
+package com.jannchie.biliob.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的有界缓存。
+ * <p>
+ * 按最近访问顺序淘汰，超过 maxSize 时淘汰最久未访问的项；每一项在写入 ttl 毫秒后过期，
+ * 过期项在读取或写入时清理。记录命中、未命中与淘汰（含过期）次数。
+ * <p>
+ * 线程安全，读写均在对象锁内执行，只适合存放少量的热点数据。
+ *
+ * @author Jannchie
+ */
+public final class LocalCache<K, V> {
+    private final int maxSize;
+    private final long ttl;
+    private final LinkedHashMap<K, Entry<V>> map;
+    private final AtomicLong hit = new AtomicLong();
+    private final AtomicLong miss = new AtomicLong();
+    private final AtomicLong eviction = new AtomicLong();
+
+    /**
+     * @param maxSize 最大项数
+     * @param ttl     过期时长（毫秒）
+     */
+    public LocalCache(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LocalCache.this.maxSize) {
+                    eviction.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 读取一项，并记录命中或未命中
+     *
+     * @param key 键
+     * @param now 当前时刻（毫秒）
+     * @return 未过期的值的包装，不存在时为 null；值本身可以为 null
+     */
+    public synchronized Entry<V> get(K key, long now) {
+        Entry<V> entry = map.get(key);
+        if (entry != null && entry.expireAt <= now) {
+            map.remove(key);
+            eviction.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            miss.incrementAndGet();
+        } else {
+            hit.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public synchronized void put(K key, V value, long now) {
+        removeExpired(now);
+        map.put(key, new Entry<>(value, now + ttl));
+    }
+
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public long getHit() {
+        return hit.get();
+    }
+
+    public long getMiss() {
+        return miss.get();
+    }
+
+    public long getEviction() {
+        return eviction.get();
+    }
+
+    private void removeExpired(long now) {
+        // 只检查最久未访问的少量项，其余过期项留给读取时清理
+        Iterator<Entry<V>> iterator = map.values().iterator();
+        for (int i = 0; i < 8 && iterator.hasNext(); i++) {
+            if (iterator.next().expireAt <= now) {
+                iterator.remove();
+                eviction.incrementAndGet();
+            }
+        }
+    }
+
+    public static final class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+}
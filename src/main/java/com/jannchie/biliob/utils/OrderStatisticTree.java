@@ -0,0 +1,143 @@
+package com.jannchie.biliob.utils;
+
+import java.util.Random;
+
+/**
+ * 可修改的排名索引。
+ * 以树堆保存可重复的 double 值，每个节点记录子树中的元素个数，插入、删除与 count(value >= x) 均为 O(log n)。
+ * 非线程安全，由调用方加锁。
+ *
+ * @author Jannchie
+ */
+public final class OrderStatisticTree {
+    private final Random random = new Random();
+    private Node root;
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    public void add(double value) {
+        root = add(root, value);
+    }
+
+    private Node add(Node node, double value) {
+        if (node == null) {
+            return new Node(value, random.nextInt());
+        }
+        int cmp = Double.compare(value, node.value);
+        if (cmp == 0) {
+            node.count++;
+        } else if (cmp < 0) {
+            node.left = add(node.left, value);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = add(node.right, value);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * 删除一个等于 value 的元素
+     *
+     * @param value 值
+     * @return 是否存在并删除了该元素
+     */
+    public boolean remove(double value) {
+        int before = size(root);
+        root = remove(root, value);
+        return size(root) < before;
+    }
+
+    private Node remove(Node node, double value) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = Double.compare(value, node.value);
+        if (cmp < 0) {
+            node.left = remove(node.left, value);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, value);
+        } else if (node.count > 1) {
+            node.count--;
+        } else if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        } else if (node.left.priority > node.right.priority) {
+            node = rotateRight(node);
+            node.right = remove(node.right, value);
+        } else {
+            node = rotateLeft(node);
+            node.left = remove(node.left, value);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * 等价于 count(field >= value)。
+     *
+     * @param value 值
+     * @return 大于等于该值的元素个数
+     */
+    public long countGreaterOrEqual(double value) {
+        long count = 0;
+        Node node = root;
+        while (node != null) {
+            if (Double.compare(value, node.value) <= 0) {
+                count += node.count + size(node.right);
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    private static class Node {
+        private final double value;
+        private final int priority;
+        private int count = 1;
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        private Node(double value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        private void update() {
+            size = count + OrderStatisticTree.size(left) + OrderStatisticTree.size(right);
+        }
+    }
+}
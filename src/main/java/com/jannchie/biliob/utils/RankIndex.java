@@ -0,0 +1,59 @@
+package com.jannchie.biliob.utils;
+
+import java.util.Arrays;
+
+/**
+ * 不可变的排名索引。
+ * 内部为升序排列的 long 数组，用二分查找代替对整个集合的 count 查询。
+ *
+ * @author Jannchie
+ */
+public final class RankIndex {
+    private static final RankIndex EMPTY = new RankIndex(new long[0]);
+    private final long[] sortedValues;
+
+    private RankIndex(long[] sortedValues) {
+        this.sortedValues = sortedValues;
+    }
+
+    public static RankIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 以数组的前 size 个元素构建索引，不会修改传入的数组。
+     *
+     * @param values 原始数据
+     * @param size   有效长度
+     * @return 排名索引
+     */
+    public static RankIndex of(long[] values, int size) {
+        long[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        return new RankIndex(sorted);
+    }
+
+    /**
+     * 等价于 count(field >= value)。
+     *
+     * @param value 值
+     * @return 大于等于该值的元素个数
+     */
+    public long countGreaterOrEqual(long value) {
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedValues[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return sortedValues.length - low;
+    }
+
+    public int size() {
+        return sortedValues.length;
+    }
+}
@@ -0,0 +1,135 @@
+package com.jannchie.biliob.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.jannchie.biliob.constant.TimeConstant.MICROSECOND_OF_MINUTES;
+
+/**
+ * 按 IP 与接口限制访问频率的滑动窗口计数器。
+ * <p>
+ * 以一分钟为一个窗口，当前窗口的计数加上上一窗口计数按剩余时间折算的部分，即为最近一分钟的近似访问次数。
+ * 默认只在本进程内计数；开启 biliob.rate-limit.redis 后通过 Redis 在多个实例间共享计数，Redis 不可用时退回本地计数。
+ * 同一IP在一分钟内被拒绝的次数超过 biliob.rate-limit.blacklist 时视为持续超限，由调用方加入黑名单。
+ *
+ * @author Jannchie
+ */
+@Component
+public class RateLimiter {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int MAX_CUD_IN_MINUTE = 180;
+    private static final int MAX_R_IN_MINUTE = 360;
+    private static final int MAX_REJECTED_IN_MINUTE = 60;
+    private static final String KEY_PREFIX = "rate_limit:";
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final RedisTemplate<String, String> redisTemplate;
+    private final int maxReadInMinute;
+    private final int maxWriteInMinute;
+    private final int maxRejectedInMinute;
+    private final boolean useRedis;
+
+    @Autowired
+    public RateLimiter(RedisTemplate<String, String> redisTemplate,
+                       @Value("${biliob.rate-limit.read:" + MAX_R_IN_MINUTE + "}") int maxReadInMinute,
+                       @Value("${biliob.rate-limit.write:" + MAX_CUD_IN_MINUTE + "}") int maxWriteInMinute,
+                       @Value("${biliob.rate-limit.blacklist:" + MAX_REJECTED_IN_MINUTE + "}") int maxRejectedInMinute,
+                       @Value("${biliob.rate-limit.redis:false}") boolean useRedis) {
+        this.redisTemplate = redisTemplate;
+        this.maxReadInMinute = maxReadInMinute;
+        this.maxWriteInMinute = maxWriteInMinute;
+        this.maxRejectedInMinute = maxRejectedInMinute;
+        this.useRedis = useRedis;
+    }
+
+    static double estimate(long previous, long current, long elapsed) {
+        return previous * (1 - (double) elapsed / MICROSECOND_OF_MINUTES) + current;
+    }
+
+    private static boolean isRead(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+
+    /**
+     * 记录一次访问，并判断是否超过频率限制
+     *
+     * @param ip     IP
+     * @param method 请求方法
+     * @param uri    已替换数字的接口路径
+     * @return 是否允许访问
+     */
+    public boolean tryAcquire(String ip, String method, String uri) {
+        int limit = isRead(method) ? maxReadInMinute : maxWriteInMinute;
+        return acquire(ip + " " + method + " " + uri) <= limit;
+    }
+
+    /**
+     * 记录一次被拒绝的访问，并判断该IP是否持续超限
+     *
+     * @param ip IP
+     * @return 最近一分钟内被拒绝的次数是否超过限制
+     */
+    public boolean recordRejection(String ip) {
+        return acquire(ip + " REJECTED") > maxRejectedInMinute;
+    }
+
+    private double acquire(String key) {
+        long now = System.currentTimeMillis();
+        if (useRedis) {
+            try {
+                return acquireFromRedis(key, now);
+            } catch (Exception e) {
+                logger.warn("Redis 限流计数失败，使用本地计数：{}", e.getMessage());
+            }
+        }
+        return windows.computeIfAbsent(key, k -> new Window()).acquire(now);
+    }
+
+    private double acquireFromRedis(String key, long now) {
+        long index = now / MICROSECOND_OF_MINUTES;
+        String currentKey = KEY_PREFIX + key + ":" + index;
+        Long current = redisTemplate.opsForValue().increment(currentKey);
+        if (current != null && current == 1) {
+            redisTemplate.expire(currentKey, 2, TimeUnit.MINUTES);
+        }
+        String previous = redisTemplate.opsForValue().get(KEY_PREFIX + key + ":" + (index - 1));
+        return estimate(previous == null ? 0 : Long.parseLong(previous), current == null ? 0 : current, now % MICROSECOND_OF_MINUTES);
+    }
+
+    /**
+     * 清理两个窗口内没有访问的计数器
+     */
+    @Scheduled(fixedDelay = MICROSECOND_OF_MINUTES)
+    public void evict() {
+        long index = System.currentTimeMillis() / MICROSECOND_OF_MINUTES;
+        windows.values().removeIf(window -> window.isExpired(index));
+    }
+
+    private static class Window {
+        private long index;
+        private long previous;
+        private long current;
+
+        private synchronized double acquire(long now) {
+            long nowIndex = now / MICROSECOND_OF_MINUTES;
+            if (nowIndex != index) {
+                previous = nowIndex == index + 1 ? current : 0;
+                current = 0;
+                index = nowIndex;
+            }
+            current++;
+            return estimate(previous, current, now % MICROSECOND_OF_MINUTES);
+        }
+
+        private synchronized boolean isExpired(long nowIndex) {
+            return nowIndex > index + 1;
+        }
+    }
+}
@@ -3,8 +3,17 @@ package com.jannchie.biliob.utils;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 /**
  * @author jannchie
  */
@@ -20,6 +29,40 @@ public class RedisOps {
     private static final String DANMAKU_KEY = "DanmakuAggregate:start_urls";
 
     private static final String TAG_TASK = "tag_task";
+    /**
+     * 记录已入队任务的集合的后缀，爬虫队列为空时整体清除
+     */
+    private static final String PENDING_SUFFIX = ":pending";
+    /**
+     * 已入队任务集合的最长保留时间，从集合创建时开始计算，之后的推送不会延长，
+     * 防止爬虫长期积压时任务永远被当作重复
+     */
+    private static final long PENDING_TIMEOUT_SECONDS = 3600;
+    /**
+     * 在一次往返中完成去重与推送：
+     * 队列为空时清除已入队集合；找出集合中没有的ID，分批 SADD 与 LPUSH；
+     * 仅在集合没有过期时间（即刚创建）时设置过期时间。返回实际推送的ID。
+     * KEYS: 队列, 已入队集合；ARGV: 过期秒数, n 个ID, n 个URL
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> POST_CRAWL_TASKS_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('LLEN', KEYS[1]) == 0 then redis.call('DEL', KEYS[2]) end\n" +
+                    "local n = (#ARGV - 1) / 2\n" +
+                    "local ids, urls = {}, {}\n" +
+                    "for i = 2, n + 1 do\n" +
+                    "  if redis.call('SISMEMBER', KEYS[2], ARGV[i]) == 0 then\n" +
+                    "    ids[#ids + 1] = ARGV[i]\n" +
+                    "    urls[#urls + 1] = ARGV[i + n]\n" +
+                    "  end\n" +
+                    "end\n" +
+                    "for i = 1, #ids, 1000 do\n" +
+                    "  local j = math.min(i + 999, #ids)\n" +
+                    "  redis.call('SADD', KEYS[2], unpack(ids, i, j))\n" +
+                    "  redis.call('LPUSH', KEYS[1], unpack(urls, i, j))\n" +
+                    "end\n" +
+                    "if redis.call('TTL', KEYS[2]) == -1 then redis.call('EXPIRE', KEYS[2], ARGV[1]) end\n" +
+                    "return ids",
+            List.class);
 
 
     private final RedisTemplate<String, String> redisTemplate;
@@ -101,4 +144,79 @@ public class RedisOps {
     public void postTagSpiderTask(Long aid) {
         sentRequest(RedisOps.TAG_TASK, String.valueOf(aid));
     }
+
+    /**
+     * 批量推送UP主爬取任务，已在队列中等待的UP主不会重复推送
+     *
+     * @param mids UP主ID
+     * @return 推送结果
+     */
+    public PublishResult postAuthorCrawlTasks(Collection<Long> mids) {
+        return postCrawlTasks(RedisOps.AUTHOR_KEY, RedisOps.AUTHOR_URL, mids);
+    }
+
+    /**
+     * 批量推送视频爬取任务，已在队列中等待的视频不会重复推送
+     *
+     * @param aids 视频ID
+     * @return 推送结果
+     */
+    public PublishResult postVideoCrawlTasks(Collection<Long> aids) {
+        return postCrawlTasks(RedisOps.VIDEO_KEY, RedisOps.VIDEO_URL, aids);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PublishResult postCrawlTasks(String key, String urlFormat, Collection<Long> ids) {
+        LinkedHashSet<Long> idSet = new LinkedHashSet<>(ids.size() * 2);
+        for (Long id : ids) {
+            if (id != null) {
+                idSet.add(id);
+            }
+        }
+        if (idSet.isEmpty()) {
+            return new PublishResult(Collections.emptyList(), ids.size());
+        }
+        List<String> args = new ArrayList<>(idSet.size() * 2 + 1);
+        args.add(String.valueOf(RedisOps.PENDING_TIMEOUT_SECONDS));
+        for (Long id : idSet) {
+            args.add(String.valueOf(id));
+        }
+        for (Long id : idSet) {
+            args.add(String.format(urlFormat, id, null));
+        }
+        List<String> added = redisTemplate.execute(RedisOps.POST_CRAWL_TASKS_SCRIPT,
+                Arrays.asList(key, key + RedisOps.PENDING_SUFFIX), args.toArray());
+        List<Long> pushedIds = new ArrayList<>(added == null ? 0 : added.size());
+        if (added != null) {
+            for (String id : added) {
+                pushedIds.add(Long.valueOf(id));
+            }
+        }
+        return new PublishResult(pushedIds, ids.size() - pushedIds.size());
+    }
+
+    public static class PublishResult {
+        private final List<Long> pushedIds;
+        private final int deduped;
+
+        private PublishResult(List<Long> pushedIds, int deduped) {
+            this.pushedIds = pushedIds;
+            this.deduped = deduped;
+        }
+
+        public int getPushed() {
+            return pushedIds.size();
+        }
+
+        /**
+         * @return 实际推送到队列中的ID，不含重复的ID
+         */
+        public List<Long> getPushedIds() {
+            return pushedIds;
+        }
+
+        public int getDeduped() {
+            return deduped;
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package com.jannchie.biliob.utils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界无锁环形队列，支持多生产者、多消费者。
+ * 每个槽位带有序号，生产者与消费者只通过 CAS 争用头尾指针，队列满时入队直接失败而不阻塞。
+ *
+ * @author Jannchie
+ */
+public final class RingBuffer<E> {
+    private final Object[] entries;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity 容量，会向上取整为 2 的幂
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.entries = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 入队
+     *
+     * @param e 元素
+     * @return 队列已满时返回 false
+     */
+    public boolean offer(E e) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        entries[index] = e;
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * 出队
+     *
+     * @return 队列为空时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+        E e = (E) entries[index];
+        entries[index] = null;
+        sequences.set(index, position + mask + 1);
+        return e;
+    }
+
+    /**
+     * 取出至多 max 个元素
+     *
+     * @param target 存放取出元素的列表
+     * @param max    最大数量
+     * @return 取出的数量
+     */
+    public int drainTo(List<? super E> target, int max) {
+        int count = 0;
+        E e;
+        while (count < max && (e = poll()) != null) {
+            target.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+}
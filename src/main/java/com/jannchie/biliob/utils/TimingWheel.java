@@ -0,0 +1,154 @@
+package com.jannchie.biliob.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * 分层时间轮。
+ * <p>
+ * 每层 64 个槽，第 0 层每槽代表一个 tick，第 n 层每槽代表 64^n 个 tick。
+ * 任务放在与当前时刻共享最长高位前缀的那一层，时间推进到某个高层槽时再把其中的任务下放到低层。
+ * 添加与取出到期任务的均摊复杂度为 O(1)。每个 key 同时只保留一个任务，重复添加会覆盖之前的到期时刻。
+ * <p>
+ * 非线程安全。
+ *
+ * @author Jannchie
+ */
+public final class TimingWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 5;
+    private final long tickMillis;
+    private final long origin;
+    private final List<List<Entry>> wheels = new ArrayList<>(LEVELS * SLOTS);
+    private final List<Entry> overflow = new ArrayList<>();
+    private final HashMap<Long, Entry> entries = new HashMap<>();
+    private long currentTick;
+
+    /**
+     * @param tickMillis 每个 tick 的毫秒数
+     * @param now        当前时刻（毫秒）
+     */
+    public TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.origin = now;
+        this.currentTick = 0;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            wheels.add(new ArrayList<>());
+        }
+    }
+
+    private long toTick(long time) {
+        return Math.floorDiv(time - origin, tickMillis);
+    }
+
+    /**
+     * 添加或覆盖一个任务，到期时刻早于当前时刻的任务会在下一次 advance 时取出
+     *
+     * @param key      任务ID
+     * @param deadline 到期时刻（毫秒）
+     */
+    public void schedule(long key, long deadline) {
+        // 向上取整，保证任务不会早于到期时刻取出
+        Entry entry = new Entry(key, Math.max(toTick(deadline + tickMillis - 1), currentTick + 1));
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        insert(entry);
+    }
+
+    /**
+     * 移除一个任务
+     *
+     * @param key 任务ID
+     */
+    public void cancel(long key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+    }
+
+    public boolean contains(long key) {
+        return entries.containsKey(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void insert(Entry entry) {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * (level + 1);
+            if (entry.tick >>> shift == currentTick >>> shift) {
+                wheels.get(level * SLOTS + (int) ((entry.tick >>> (BITS * level)) & MASK)).add(entry);
+                return;
+            }
+        }
+        overflow.add(entry);
+    }
+
+    /**
+     * 将时间推进到 now，并依次取出所有到期的任务
+     *
+     * @param now      当前时刻（毫秒）
+     * @param consumer 到期任务的处理
+     */
+    public void advance(long now, LongConsumer consumer) {
+        long target = toTick(now);
+        while (currentTick < target) {
+            currentTick++;
+            cascade();
+            List<Entry> slot = wheels.get((int) (currentTick & MASK));
+            if (slot.isEmpty()) {
+                continue;
+            }
+            List<Entry> due = new ArrayList<>(slot);
+            slot.clear();
+            for (Entry entry : due) {
+                if (!entry.cancelled) {
+                    entries.remove(entry.key);
+                    consumer.accept(entry.key);
+                }
+            }
+        }
+    }
+
+    private void cascade() {
+        int top = 0;
+        while (top < LEVELS && (currentTick & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        // 从高层到低层依次下放，高层下放的任务可能落入本轮随后下放的低层槽中
+        for (int level = top; level >= 1; level--) {
+            List<Entry> slot = level == LEVELS
+                    ? overflow
+                    : wheels.get(level * SLOTS + (int) ((currentTick >>> (BITS * level)) & MASK));
+            if (slot.isEmpty()) {
+                continue;
+            }
+            List<Entry> moved = new ArrayList<>(slot);
+            slot.clear();
+            for (Entry entry : moved) {
+                if (!entry.cancelled) {
+                    insert(entry);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final long key;
+        private final long tick;
+        private boolean cancelled;
+
+        private Entry(long key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jannchie.biliob.utils;
+
+import com.jannchie.biliob.model.UserRecord;
+import com.mongodb.bulk.BulkWriteError;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 积分记录的异步批量写入。
+ * <p>
+ * 记录的ID在放入队列时生成，调用方可以立即使用；队列每秒写入一次 user_record，关闭时写入剩余的记录。
+ * 与访问记录不同，积分记录不会被丢弃：写入失败的记录放回队列下次重试，ID重复的记录说明已经写入。
+ *
+ * @author Jannchie
+ */
+@Component
+public class UserRecordWriter {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int BATCH_SIZE = 1000;
+    private static final int DUPLICATE_KEY = 11000;
+    private final BlockingQueue<UserRecord> queue = new LinkedBlockingQueue<>();
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public UserRecordWriter(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public UserRecord append(UserRecord userRecord) {
+        if (userRecord.getId() == null) {
+            userRecord.setId(new ObjectId());
+        }
+        queue.add(userRecord);
+        return userRecord;
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelay = 1000)
+    public synchronized void flush() {
+        List<UserRecord> batch = new ArrayList<>(BATCH_SIZE);
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserRecord.class).insert(batch).execute();
+            } catch (BulkOperationException e) {
+                int retry = 0;
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY) {
+                        queue.add(batch.get(error.getIndex()));
+                        retry++;
+                    }
+                }
+                logger.error("写入积分记录失败，{}条记录将在下次重试", retry, e);
+                return;
+            } catch (RuntimeException e) {
+                queue.addAll(batch);
+                logger.error("写入积分记录失败，{}条记录将在下次重试", batch.size(), e);
+                return;
+            }
+            batch.clear();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.jannchie.biliob.constant.DbFields;
 import com.jannchie.biliob.constant.RoleEnum;
 import com.jannchie.biliob.model.User;
 import com.jannchie.biliob.repository.UserRepository;
+import com.jannchie.biliob.service.UserRankIndexService;
 import com.jannchie.biliob.service.UserService;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,8 +14,9 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
-import javax.servlet.http.HttpServletRequest;
 import java.math.BigDecimal;
 
 /**
@@ -22,6 +24,12 @@ import java.math.BigDecimal;
  */
 @Component
 public class UserUtils {
+    private static final String REQUEST_USER = UserUtils.class.getName() + ".USER";
+    private static final String REQUEST_FULL_INFO = UserUtils.class.getName() + ".FULL_INFO";
+    private static final String REQUEST_PROFILE = UserUtils.class.getName() + ".PROFILE";
+    private static final int PROFILE_CACHE_SIZE = 10000;
+    private static final long PROFILE_CACHE_TTL = 10000L;
+    private final LocalCache<String, User> profileCache = new LocalCache<>(PROFILE_CACHE_SIZE, PROFILE_CACHE_TTL);
     @Autowired
     private MongoTemplate mongoTemplate;
     @Autowired
@@ -29,7 +37,7 @@ public class UserUtils {
     @Autowired
     private UserService userService;
     @Autowired
-    private HttpServletRequest request;
+    private UserRankIndexService userRankIndexService;
 
     public User getPasswdAndRole(String name) {
         Query query = getUserQuery(name);
@@ -69,27 +77,128 @@ public class UserUtils {
         if (username == null) {
             return null;
         }
-        return getUserByUsernameOrMail(username);
+        User user = (User) getRequestAttribute(REQUEST_USER);
+        if (user == null) {
+            user = getUserByUsernameOrMail(username);
+            setRequestAttribute(REQUEST_USER, user);
+        }
+        return user;
     }
 
     public User getFullInfo() {
-        System.out.println(request.getRemoteUser());
-        String username = getUsername();
-        Query query = getUserQuery(username);
-        User user = mongoTemplate.findOne(query, User.class);
+        User user = (User) getRequestAttribute(REQUEST_FULL_INFO);
+        if (user != null) {
+            return user;
+        }
+        user = getUser();
         if (user != null) {
             setUserTitleAndRankAndUpdateRole(user);
+            setRequestAttribute(REQUEST_FULL_INFO, user);
         }
         return user;
     }
 
+    /**
+     * 获取当前用户的ID、用户名、邮箱、角色、经验、积分与封禁状态。
+     * 同一请求中只查询一次，不同请求之间缓存 {@value #PROFILE_CACHE_TTL} 毫秒，积分、经验、角色改变时失效。
+     * 需要其他字段时使用 {@link #getUser()}。
+     *
+     * @return 当前用户，未登录时为 null
+     */
+    public User getUserProfile() {
+        String username = getUsername();
+        if (username == null) {
+            return null;
+        }
+        User profile = (User) getRequestAttribute(REQUEST_PROFILE);
+        if (profile != null) {
+            return profile;
+        }
+        profile = getCachedUserProfile(username);
+        if (profile == null) {
+            Query query = getUserQuery(username);
+            query.fields().include("name").include("mail").include("role").include("exp").include("credit").include(DbFields.BAN);
+            User user = mongoTemplate.findOne(query, User.class);
+            if (user == null) {
+                return null;
+            }
+            profileCache.put(username, user, System.currentTimeMillis());
+            profile = copyProfile(user);
+        }
+        setRequestAttribute(REQUEST_PROFILE, profile);
+        return profile;
+    }
+
+    /**
+     * 只从缓存中读取用户，不查询数据库，可以在请求线程之外调用
+     *
+     * @param username 登录时使用的用户名或邮箱
+     * @return 缓存的用户，未缓存时为 null
+     */
+    public User getCachedUserProfile(String username) {
+        LocalCache.Entry<User> entry = profileCache.get(username, System.currentTimeMillis());
+        return entry == null ? null : copyProfile(entry.getValue());
+    }
+
+    /**
+     * 用户的积分、经验或角色改变后使缓存失效
+     *
+     * @param user 用户
+     */
+    public void evictUser(User user) {
+        evictUser(user.getName());
+        if (user.getMail() != null) {
+            evictUser(user.getMail());
+        }
+    }
+
+    /**
+     * 用户的积分、经验或角色改变后使缓存失效。以邮箱登录的用户的缓存在过期后失效
+     *
+     * @param name 用户名
+     */
+    public void evictUser(String name) {
+        profileCache.remove(name);
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.removeAttribute(REQUEST_USER, RequestAttributes.SCOPE_REQUEST);
+            attributes.removeAttribute(REQUEST_FULL_INFO, RequestAttributes.SCOPE_REQUEST);
+            attributes.removeAttribute(REQUEST_PROFILE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    private static User copyProfile(User user) {
+        User profile = new User(user.getId());
+        profile.setName(user.getName());
+        profile.setMail(user.getMail());
+        profile.setRole(user.getRole());
+        profile.setExp(user.getExp());
+        profile.setCredit(user.getCredit());
+        profile.setBan(user.getBan());
+        return profile;
+    }
+
+    private static Object getRequestAttribute(String key) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes == null ? null : attributes.getAttribute(key, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    private static void setRequestAttribute(String key, Object value) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null && value != null) {
+            attributes.setAttribute(key, value, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
     public void updateUserCreditAndExp(User user, Double credit) {
         mongoTemplate.updateFirst(Query.query(Criteria.where("name").is(user.getName())),
                 Update.update("credit", BigDecimal.valueOf(user.getCredit() - credit).setScale(2, BigDecimal.ROUND_HALF_DOWN)).set("exp", user.getExp() + credit), User.class);
     }
 
     public void setUserTitleAndRankAndUpdateRole(User user) {
-        long rank = mongoTemplate.count(Query.query(Criteria.where("exp").gte(user.getExp()).and(DbFields.BAN).ne(true)), "user");
+        boolean indexed = userRankIndexService.isReady() && user.getExp() != null;
+        long rank = indexed ? userRankIndexService.getRank(user.getExp())
+                : mongoTemplate.count(Query.query(Criteria.where("exp").gte(user.getExp()).and(DbFields.BAN).ne(true)), "user");
         RoleEnum roleEnum = RoleEnum.LEVEL_1;
         user.setRank(Math.toIntExact(rank));
         if (rank <= 3) {
@@ -104,7 +213,7 @@ public class UserUtils {
         } else if (user.getExp() <= 100) {
             user.setTitle("初心者");
         } else {
-            long count = userService.getUserCount();
+            long count = indexed ? userRankIndexService.getUserCount() : userService.getUserCount();
             if (rank < count / 20) {
                 user.setTitle("追寻者");
             } else {
@@ -119,6 +228,7 @@ public class UserUtils {
             Integer preLevel = RoleEnum.getLevelByName(user.getRole());
             if (preLevel < roleEnum.getLevel() || "普通用户".equals(user.getRole()) || "作弊者".equals(user.getTitle())) {
                 mongoTemplate.updateFirst(Query.query(Criteria.where("name").is(user.getName())), Update.update("role", roleEnum.getName()), User.class);
+                evictUser(user);
             }
         }
     }
@@ -130,7 +240,7 @@ public class UserUtils {
     }
 
     public ObjectId getUserId() {
-        User user = getUser();
+        User user = getUserProfile();
         if (user == null) {
             return null;
         }
@@ -0,0 +1,147 @@
+package com.jannchie.biliob.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 访问记录的异步批量写入。
+ * <p>
+ * 请求线程只把记录放入有界环形队列，由后台线程每隔 biliob.visit-log.flush-interval 毫秒，
+ * 或积累 biliob.visit-log.batch-size 条记录时按集合批量插入。
+ * 队列已满时丢弃新记录并计数，请求线程不会因为写日志而阻塞。应用关闭时会写完队列中剩余的记录。
+ *
+ * @author Jannchie
+ */
+@Component
+public class VisitLogWriter {
+    private static final Logger logger = LogManager.getLogger();
+    private final MongoTemplate mongoTemplate;
+    private final RingBuffer<Entry> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    @Autowired
+    public VisitLogWriter(MongoTemplate mongoTemplate,
+                          @Value("${biliob.visit-log.capacity:65536}") int capacity,
+                          @Value("${biliob.visit-log.batch-size:500}") int batchSize,
+                          @Value("${biliob.visit-log.flush-interval:1000}") long flushInterval) {
+        this.mongoTemplate = mongoTemplate;
+        this.buffer = new RingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.worker = new Thread(this::run, "visit-log-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 写入一条记录，集合名取自实体的 @Document 注解
+     *
+     * @param record 记录
+     */
+    public void write(Object record) {
+        write(record, mongoTemplate.getCollectionName(record.getClass()));
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @param record         记录
+     * @param collectionName 集合名
+     */
+    public void write(Object record, String collectionName) {
+        if (!buffer.offer(new Entry(record, collectionName))) {
+            long count = dropped.incrementAndGet();
+            if ((count & 1023) == 1) {
+                logger.warn("访问记录队列已满，已丢弃 {} 条记录", count);
+            }
+            return;
+        }
+        if (buffer.size() >= batchSize) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            if (buffer.size() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            flush();
+        }
+    }
+
+    /**
+     * 将队列中的记录全部写入数据库
+     */
+    public synchronized void flush() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            Map<String, List<Object>> groups = new HashMap<>(4);
+            for (Entry entry : batch) {
+                groups.computeIfAbsent(entry.collectionName, k -> new ArrayList<>()).add(entry.record);
+            }
+            for (Map.Entry<String, List<Object>> group : groups.entrySet()) {
+                try {
+                    mongoTemplate.insert(group.getValue(), group.getKey());
+                    written.addAndGet(group.getValue().size());
+                } catch (Exception e) {
+                    failed.addAndGet(group.getValue().size());
+                    logger.error("写入访问记录失败：{}", group.getKey(), e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        logger.info("[FINISH] 访问记录写入：写入 {} 条，丢弃 {} 条，失败 {} 条", written.get(), dropped.get(), failed.get());
+    }
+
+    public Map<String, Object> getStat() {
+        Map<String, Object> stat = new HashMap<>(8);
+        stat.put("pending", buffer.size());
+        stat.put("capacity", buffer.capacity());
+        stat.put("written", written.get());
+        stat.put("dropped", dropped.get());
+        stat.put("failed", failed.get());
+        return stat;
+    }
+
+    private static class Entry {
+        private final Object record;
+        private final String collectionName;
+
+        private Entry(Object record, String collectionName) {
+            this.record = record;
+            this.collectionName = collectionName;
+        }
+    }
+}
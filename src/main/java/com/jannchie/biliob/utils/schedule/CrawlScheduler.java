@@ -0,0 +1,252 @@
+package com.jannchie.biliob.utils.schedule;
+
+import com.jannchie.biliob.utils.RedisOps;
+import com.jannchie.biliob.utils.TimingWheel;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.jannchie.biliob.constant.TimeConstant.SECOND_OF_DAY;
+
+/**
+ * 基于时间轮的爬虫任务调度。
+ * <p>
+ * 启动时从 author_interval 与 video_interval 载入每个UP主、视频的下次爬取时间与爬取间隔，
+ * 之后每秒推进时间轮，将到期的任务推送到爬虫队列，并为实际推送的任务批量写回新的下次爬取时间；
+ * 推送失败或仍在队列中等待的任务稍后重试。
+ * 本进程内对爬取频率的修改通过 scheduleAuthor / scheduleVideo 同步到时间轮。
+ * <p>
+ * 只应在一个实例上开启（biliob.crawl-scheduler.enabled），且开启后不应再由其他程序按 next 字段派发任务。
+ *
+ * @author Jannchie
+ */
+@Component
+public class CrawlScheduler {
+    private static final Logger logger = LogManager.getLogger();
+    private static final long TICK_MILLIS = 1000;
+    private static final int BULK_SIZE = 1000;
+    /**
+     * 推送失败后重试的间隔
+     */
+    private static final long FAILURE_RETRY_MILLIS = 10000;
+    /**
+     * 任务仍在爬虫队列中等待时，再次尝试推送的间隔
+     */
+    private static final long DEDUPED_RETRY_MILLIS = 300000;
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final Queue authorQueue;
+    private final Queue videoQueue;
+    private volatile boolean loaded = false;
+
+    @Autowired
+    public CrawlScheduler(MongoTemplate mongoTemplate, RedisOps redisOps,
+                          @Value("${biliob.crawl-scheduler.enabled:false}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        long now = System.currentTimeMillis();
+        this.authorQueue = new Queue("author_interval", "mid", redisOps::postAuthorCrawlTasks, now);
+        this.videoQueue = new Queue("video_interval", "aid", redisOps::postVideoCrawlTasks, now);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        logger.info("[START] 载入爬虫调度数据");
+        load(authorQueue);
+        load(videoQueue);
+        loaded = true;
+        logger.info("[FINISH] 载入爬虫调度数据：UP主 {} 个，视频 {} 个", authorQueue.size(), videoQueue.size());
+    }
+
+    private void load(Queue queue) {
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(queue.collectionName)
+                .find()
+                .projection(Projections.fields(Projections.excludeId(), Projections.include(queue.idField, "next", "interval")))
+                .batchSize(10000)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                Object id = document.get(queue.idField);
+                Date next = document.getDate("next");
+                if (!(id instanceof Number) || next == null) {
+                    continue;
+                }
+                Object interval = document.get("interval");
+                queue.schedule(((Number) id).longValue(), interval instanceof Number ? ((Number) interval).intValue() : null, next);
+            }
+        }
+    }
+
+    /**
+     * 同步UP主的爬取频率修改
+     *
+     * @param mid      UP主ID
+     * @param interval 新的爬取间隔（秒），为 null 时不变
+     * @param next     新的下次爬取时间，为 null 时不变
+     */
+    public void scheduleAuthor(Long mid, Integer interval, Date next) {
+        if (enabled && mid != null) {
+            authorQueue.schedule(mid, interval, next);
+        }
+    }
+
+    /**
+     * 同步视频的爬取频率修改
+     *
+     * @param aid      视频ID
+     * @param interval 新的爬取间隔（秒），为 null 时不变
+     * @param next     新的下次爬取时间，为 null 时不变
+     */
+    public void scheduleVideo(Long aid, Integer interval, Date next) {
+        if (enabled && aid != null) {
+            videoQueue.schedule(aid, interval, next);
+        }
+    }
+
+    @Scheduled(fixedDelay = TICK_MILLIS)
+    public void dispatch() {
+        if (!enabled || !loaded) {
+            return;
+        }
+        dispatch(authorQueue);
+        dispatch(videoQueue);
+    }
+
+    private void dispatch(Queue queue) {
+        long now = System.currentTimeMillis();
+        List<Long> ids = queue.poll(now);
+        if (ids.isEmpty()) {
+            return;
+        }
+        RedisOps.PublishResult result;
+        try {
+            result = queue.post.apply(ids);
+        } catch (Exception e) {
+            logger.error("推送爬虫任务失败，{}ms 后重试：{} {} 个", FAILURE_RETRY_MILLIS, queue.idField, ids.size(), e);
+            queue.retry(ids, now + FAILURE_RETRY_MILLIS);
+            return;
+        }
+        logger.debug("派发爬虫任务：{} 推送 {} 个，重复 {} 个", queue.idField, result.getPushed(), result.getDeduped());
+        List<Long> pushedIds = result.getPushedIds();
+        if (pushedIds.size() < ids.size()) {
+            // 仍在爬虫队列中等待的任务，稍后再尝试推送
+            List<Long> dedupedIds = new ArrayList<>(ids);
+            dedupedIds.removeAll(new HashSet<>(pushedIds));
+            queue.retry(dedupedIds, now + DEDUPED_RETRY_MILLIS);
+        }
+        List<long[]> scheduledList = queue.reschedule(pushedIds, now);
+        BulkOperations bulkOperations = null;
+        int count = 0;
+        for (long[] scheduled : scheduledList) {
+            if (bulkOperations == null) {
+                bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, queue.collectionName);
+            }
+            bulkOperations.updateOne(Query.query(Criteria.where(queue.idField).is(scheduled[0])), Update.update("next", new Date(scheduled[1])));
+            if (++count % BULK_SIZE == 0) {
+                bulkOperations.execute();
+                bulkOperations = null;
+            }
+        }
+        if (bulkOperations != null) {
+            bulkOperations.execute();
+        }
+    }
+
+    private static class Queue {
+        private final String collectionName;
+        private final String idField;
+        private final Function<List<Long>, RedisOps.PublishResult> post;
+        private final TimingWheel wheel;
+        private final HashMap<Long, Integer> intervals = new HashMap<>();
+
+        private Queue(String collectionName, String idField, Function<List<Long>, RedisOps.PublishResult> post, long now) {
+            this.collectionName = collectionName;
+            this.idField = idField;
+            this.post = post;
+            this.wheel = new TimingWheel(TICK_MILLIS, now);
+        }
+
+        private synchronized int size() {
+            return wheel.size();
+        }
+
+        private synchronized void schedule(long id, Integer interval, Date next) {
+            if (interval != null && interval > 0) {
+                intervals.put(id, interval);
+            }
+            if (next != null) {
+                wheel.schedule(id, next.getTime());
+            } else if (!wheel.contains(id)) {
+                wheel.schedule(id, System.currentTimeMillis());
+            }
+        }
+
+        /**
+         * 取出到期的任务，推送结果确定后再由 reschedule 或 retry 重新加入时间轮
+         *
+         * @return 到期任务的ID
+         */
+        private synchronized List<Long> poll(long now) {
+            List<Long> ids = new ArrayList<>();
+            wheel.advance(now, ids::add);
+            return ids;
+        }
+
+        /**
+         * 已推送的任务按爬取间隔重新加入时间轮。等待推送期间已被 schedule 重新安排的任务保持不变
+         *
+         * @return 重新加入的任务的ID与新的下次爬取时间
+         */
+        private synchronized List<long[]> reschedule(List<Long> ids, long now) {
+            List<long[]> scheduledList = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                if (!wheel.contains(id)) {
+                    long next = now + 1000L * intervals.getOrDefault(id, SECOND_OF_DAY);
+                    wheel.schedule(id, next);
+                    scheduledList.add(new long[]{id, next});
+                }
+            }
+            return scheduledList;
+        }
+
+        /**
+         * 未推送的任务在 deadline 时再次尝试，不修改数据库中的下次爬取时间
+         */
+        private synchronized void retry(List<Long> ids, long deadline) {
+            for (Long id : ids) {
+                if (!wheel.contains(id)) {
+                    wheel.schedule(id, deadline);
+                }
+            }
+        }
+    }
+}
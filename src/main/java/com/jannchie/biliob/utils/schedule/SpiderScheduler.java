@@ -32,21 +32,31 @@ public class SpiderScheduler {
     private final RedisOps redisOps;
     private final AuthorService authorService;
     private final VideoService videoService;
+    private final CrawlScheduler crawlScheduler;
 
 
     @Autowired
-    public SpiderScheduler(MongoTemplate mongoTemplate, RedisOps redisOps, AuthorService authorService, VideoService videoService) {
+    public SpiderScheduler(MongoTemplate mongoTemplate, RedisOps redisOps, AuthorService authorService, VideoService videoService, CrawlScheduler crawlScheduler) {
         this.mongoTemplate = mongoTemplate;
         this.redisOps = redisOps;
         this.authorService = authorService;
         this.videoService = videoService;
+        this.crawlScheduler = crawlScheduler;
     }
 
     @Async
     private void reduceIntervalByDaysAndInterval(Integer days, Integer interval) {
         Calendar c = Calendar.getInstance();
         c.add(Calendar.DATE, -days);
-        mongoTemplate.updateMulti(Query.query(Criteria.where("date").lt(c.getTime()).and("interval").gt(interval)), Update.update("interval", interval), VideoIntervalRecord.class);
+        Query query = Query.query(Criteria.where("date").lt(c.getTime()).and("interval").gt(interval));
+        if (crawlScheduler.isEnabled()) {
+            Query idQuery = Query.of(query);
+            idQuery.fields().include("aid");
+            for (VideoIntervalRecord record : mongoTemplate.find(idQuery, VideoIntervalRecord.class)) {
+                crawlScheduler.scheduleVideo(record.getAid(), interval, null);
+            }
+        }
+        mongoTemplate.updateMulti(query, Update.update("interval", interval), VideoIntervalRecord.class);
         logger.info("减少了 {}天前加入的 爬取频率到 {}", days, interval);
     }
 
@@ -61,6 +71,7 @@ public class SpiderScheduler {
             VideoIntervalRecord vir = mongoTemplate.findOne(Query.query(Criteria.where("aid").is(aid)), VideoIntervalRecord.class);
             if (vir == null || vir.getNext() == null || vir.getDate() == null) {
                 mongoTemplate.upsert(Query.query(Criteria.where("aid").is(aid)), Update.update("interval", SECOND_OF_DAY).set("next", Calendar.getInstance().getTime()).set("date", Calendar.getInstance().getTime()), VideoIntervalRecord.class);
+                crawlScheduler.scheduleVideo(aid, SECOND_OF_DAY, Calendar.getInstance().getTime());
                 logger.info("每日更新av{}", aid);
             }
         }
@@ -95,17 +106,6 @@ public class SpiderScheduler {
         });
     }
 
-    public void updateVideoData() {
-        Calendar c = Calendar.getInstance();
-        List<VideoIntervalRecord> authorList = mongoTemplate.find(Query.query(Criteria.where("next").lt(c.getTime())), VideoIntervalRecord.class, "video_interval");
-        for (VideoIntervalRecord freqData : authorList) {
-            Long aid = freqData.getAid();
-            c.add(Calendar.SECOND, freqData.getInterval());
-            mongoTemplate.updateFirst(Query.query(Criteria.where("mid").is(aid)), Update.update("next", c.getTime()), "video_interval");
-            redisOps.postAuthorCrawlTask(aid);
-        }
-    }
-
     public void updateEvent() {
 
     }
@@ -35,4 +35,16 @@ public class ThreadPoolConfig {
         singleThreadPool.initialize();
         return singleThreadPool;
     }
+
+    @Bean("dashboardExecutor")
+    public ThreadPoolTaskExecutor dashboardExecutor() {
+        ThreadPoolTaskExecutor dashboardExecutor = new ThreadPoolTaskExecutor();
+        dashboardExecutor.setCorePoolSize(8);
+        dashboardExecutor.setMaxPoolSize(8);
+        dashboardExecutor.setQueueCapacity(16);
+        dashboardExecutor.setThreadNamePrefix("dashboard-");
+        dashboardExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        dashboardExecutor.initialize();
+        return dashboardExecutor;
+    }
 }
\ No newline at end of file
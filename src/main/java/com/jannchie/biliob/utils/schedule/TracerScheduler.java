@@ -27,11 +27,13 @@ public class TracerScheduler {
     private static final Logger logger = LogManager.getLogger();
     private final MongoTemplate mongoTemplate;
     private final RedisOps redisOps;
+    private final CrawlScheduler crawlScheduler;
 
     @Autowired
-    public TracerScheduler(MongoTemplate mongoTemplate, RedisOps redisOps) {
+    public TracerScheduler(MongoTemplate mongoTemplate, RedisOps redisOps, CrawlScheduler crawlScheduler) {
         this.mongoTemplate = mongoTemplate;
         this.redisOps = redisOps;
+        this.crawlScheduler = crawlScheduler;
     }
 
 
@@ -40,9 +42,17 @@ public class TracerScheduler {
     public void recordSpiderQueueStatus() {
         try {
             logger.info("记录爬虫队列状态");
-            Calendar c = Calendar.getInstance();
-            Long authorQueueLength = mongoTemplate.count(Query.query(Criteria.where("next").lt(c.getTime())), AuthorIntervalRecord.class);
-            Long videoQueueLength = mongoTemplate.count(Query.query(Criteria.where("next").lt(c.getTime())), VideoIntervalRecord.class);
+            Long authorQueueLength;
+            Long videoQueueLength;
+            if (crawlScheduler.isEnabled()) {
+                // 到期任务已由调度器推送，待爬取的数量即爬虫队列的长度
+                authorQueueLength = redisOps.getAuthorQueueLength();
+                videoQueueLength = redisOps.getVideoQueueLength();
+            } else {
+                Calendar c = Calendar.getInstance();
+                authorQueueLength = mongoTemplate.count(Query.query(Criteria.where("next").lt(c.getTime())), AuthorIntervalRecord.class);
+                videoQueueLength = mongoTemplate.count(Query.query(Criteria.where("next").lt(c.getTime())), VideoIntervalRecord.class);
+            }
             Date date = Calendar.getInstance().getTime();
             Map<String, Object> data = new HashMap<String, Object>() {{
                 put("date", date);
@@ -95,12 +105,8 @@ public class TracerScheduler {
                         Query.query(Criteria.where("frequency").is(frequency).and("type").is("video")),
                         ScheduleItem.class,
                         "crawl_schedule");
-        for (ScheduleItem item : videoScheduleList) {
-            List<String> ids = item.getIdList();
-            for (String id : ids) {
-                redisOps.postVideoCrawlTask(id);
-            }
-        }
+        RedisOps.PublishResult result = redisOps.postVideoCrawlTasks(collectIds(videoScheduleList));
+        logger.info("推送自定义视频爬取任务：推送 {} 个，重复 {} 个", result.getPushed(), result.getDeduped());
     }
 
     private void postCustomAuthorCrawlSchedule(Integer frequency) {
@@ -109,12 +115,21 @@ public class TracerScheduler {
                         Query.query(Criteria.where("frequency").is(frequency).and("type").is("author")),
                         ScheduleItem.class,
                         "crawl_schedule");
-        for (ScheduleItem item : authorScheduleList) {
-            List<String> ids = item.getIdList();
-            for (String id : ids) {
-                redisOps.postAuthorCrawlTask(id);
+        RedisOps.PublishResult result = redisOps.postAuthorCrawlTasks(collectIds(authorScheduleList));
+        logger.info("推送自定义UP主爬取任务：推送 {} 个，重复 {} 个", result.getPushed(), result.getDeduped());
+    }
+
+    private List<Long> collectIds(List<ScheduleItem> scheduleList) {
+        List<Long> ids = new ArrayList<>();
+        for (ScheduleItem item : scheduleList) {
+            if (item.getIdList() == null) {
+                continue;
+            }
+            for (String id : item.getIdList()) {
+                ids.add(Long.valueOf(id));
             }
         }
+        return ids;
     }
 
     private Date getDeadDate() {
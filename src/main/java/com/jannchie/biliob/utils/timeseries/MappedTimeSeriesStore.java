@@ -0,0 +1,250 @@
+package com.jannchie.biliob.utils.timeseries;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 基于内存映射文件的时间序列存储。
+ * <p>
+ * 每个 key 一个文件，文件头记录行数、数据末尾位置和最后一行的值；
+ * 数据区每行每列存放与上一行的差值，经 ZigZag 编码后写为变长整数。
+ * 追加时只需读取文件头；读取时将大文件映射到堆外内存，小文件直接读入堆内存，再顺序解码。
+ *
+ * @author Jannchie
+ */
+public class MappedTimeSeriesStore implements TimeSeriesStore {
+    private static final int MAGIC = 0x42545331;
+    private static final int MAX_VAR_LONG_SIZE = 10;
+    private static final int LOCK_STRIPES = 64;
+    private static final int DIRECTORY_COUNT = 1000;
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private final Path root;
+    private final int columnCount;
+    private final int headerSize;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public MappedTimeSeriesStore(Path root, int columnCount) {
+        this.root = root;
+        this.columnCount = columnCount;
+        this.headerSize = 4 + 4 + 8 + 8 * columnCount;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    private Path getPath(long key) {
+        return root.resolve(String.valueOf(Math.floorMod(key, DIRECTORY_COUNT))).resolve(key + ".ts");
+    }
+
+    private Object getLock(long key) {
+        return locks[Math.floorMod(Long.hashCode(key), LOCK_STRIPES)];
+    }
+
+    private Header readHeader(ByteBuffer buffer, Path path) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("时间序列文件已损坏：" + path);
+        }
+        Header header = new Header(columnCount);
+        header.count = buffer.getInt();
+        header.end = buffer.getLong();
+        for (int c = 0; c < columnCount; c++) {
+            header.last[c] = buffer.getLong();
+        }
+        return header;
+    }
+
+    private Header readHeader(FileChannel channel, Path path) throws IOException {
+        if (channel.size() < headerSize) {
+            Header header = new Header(columnCount);
+            header.end = headerSize;
+            return header;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return readHeader(buffer, path);
+    }
+
+    /**
+     * 读取文件的 [0, end) 部分。映射只能等待 GC 释放，因此只有大文件才映射，小文件直接读入堆内存
+     */
+    private ByteBuffer read(FileChannel channel, long end) throws IOException {
+        if (end >= MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) end);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeHeader(FileChannel channel, Header header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize);
+        buffer.putInt(MAGIC).putInt(header.count).putLong(header.end);
+        for (long value : header.last) {
+            buffer.putLong(value);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    @Override
+    public long lastTimestamp(long key) {
+        Path path = getPath(key);
+        if (!Files.exists(path)) {
+            return Long.MIN_VALUE;
+        }
+        synchronized (getLock(key)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                Header header = readHeader(channel, path);
+                return header.count == 0 ? Long.MIN_VALUE : header.last[0];
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public int append(long key, List<long[]> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Path path = getPath(key);
+        synchronized (getLock(key)) {
+            try {
+                Files.createDirectories(path.getParent());
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    Header header = readHeader(channel, path);
+                    ByteBuffer buffer = ByteBuffer.allocate(rows.size() * columnCount * MAX_VAR_LONG_SIZE);
+                    int appended = 0;
+                    for (long[] row : rows) {
+                        if (header.count != 0 && row[0] <= header.last[0]) {
+                            continue;
+                        }
+                        for (int c = 0; c < columnCount; c++) {
+                            putVarLong(buffer, zigZag(row[c] - header.last[c]));
+                            header.last[c] = row[c];
+                        }
+                        header.count++;
+                        appended++;
+                    }
+                    if (appended == 0) {
+                        return 0;
+                    }
+                    buffer.flip();
+                    long position = header.end;
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    header.end = position;
+                    // 先写数据再写文件头，中途失败时文件头仍指向完整的旧数据
+                    writeHeader(channel, header);
+                    return appended;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public TimeSeries scan(long key, long from, long to) {
+        Path path = getPath(key);
+        if (!Files.exists(path)) {
+            return new TimeSeries(columnCount, 0);
+        }
+        Header header;
+        ByteBuffer buffer;
+        synchronized (getLock(key)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // 文件不足一个文件头时 readHeader 返回空的文件头，不能再映射超出文件长度的区域
+                header = readHeader(channel, path);
+                if (header.count == 0) {
+                    return new TimeSeries(columnCount, 0);
+                }
+                if (header.end > channel.size()) {
+                    throw new IllegalStateException("时间序列文件已损坏：" + path);
+                }
+                buffer = read(channel, header.end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        // 只解码读取文件头时已存在的行，之后的追加不会影响这部分数据
+        buffer.position(headerSize);
+        TimeSeries series = new TimeSeries(columnCount, header.count);
+        long[] current = new long[columnCount];
+        for (int i = 0; i < header.count; i++) {
+            for (int c = 0; c < columnCount; c++) {
+                current[c] += unZigZag(getVarLong(buffer));
+            }
+            if (current[0] >= to) {
+                break;
+            }
+            if (current[0] >= from) {
+                series.add(current);
+            }
+        }
+        return series;
+    }
+
+    private static class Header {
+        private final long[] last;
+        private int count;
+        private long end;
+
+        private Header(int columnCount) {
+            this.last = new long[columnCount];
+        }
+    }
+}
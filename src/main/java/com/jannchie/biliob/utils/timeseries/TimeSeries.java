@@ -0,0 +1,42 @@
+package com.jannchie.biliob.utils.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * 按列存放的时间序列，第 0 列为时间戳（毫秒）。
+ *
+ * @author Jannchie
+ */
+public final class TimeSeries {
+    private final long[][] columns;
+    private int size;
+
+    TimeSeries(int columnCount, int capacity) {
+        this.columns = new long[columnCount][Math.max(capacity, 1)];
+        this.size = 0;
+    }
+
+    void add(long[] row) {
+        if (size == columns[0].length) {
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = Arrays.copyOf(columns[c], size << 1);
+            }
+        }
+        for (int c = 0; c < columns.length; c++) {
+            columns[c][size] = row[c];
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long get(int column, int index) {
+        return columns[column][index];
+    }
+
+    public long getTimestamp(int index) {
+        return columns[0][index];
+    }
+}
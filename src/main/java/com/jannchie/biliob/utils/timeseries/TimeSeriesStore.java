@@ -0,0 +1,43 @@
+package com.jannchie.biliob.utils.timeseries;
+
+import java.util.List;
+
+/**
+ * 时间序列存储。
+ * 每个 key 对应一条按时间递增的序列，每行为固定列数的 long，第 0 列为时间戳（毫秒）。
+ *
+ * @author Jannchie
+ */
+public interface TimeSeriesStore {
+    /**
+     * 空值在存储中的表示
+     */
+    long NULL = Long.MIN_VALUE;
+
+    /**
+     * 获取序列中最后一行的时间戳
+     *
+     * @param key 序列ID
+     * @return 时间戳，序列为空时返回 {@link Long#MIN_VALUE}
+     */
+    long lastTimestamp(long key);
+
+    /**
+     * 追加数据，时间戳不大于已有最后一行的数据会被忽略
+     *
+     * @param key  序列ID
+     * @param rows 按时间正序排列的数据
+     * @return 实际追加的行数
+     */
+    int append(long key, List<long[]> rows);
+
+    /**
+     * 读取时间戳在 [from, to) 之间的数据
+     *
+     * @param key  序列ID
+     * @param from 起始时间戳（含）
+     * @param to   结束时间戳（不含）
+     * @return 按列存放的数据
+     */
+    TimeSeries scan(long key, long from, long to);
+}
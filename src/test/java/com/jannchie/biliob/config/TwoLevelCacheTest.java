@@ -0,0 +1,75 @@
+package com.jannchie.biliob.config;
+
+import com.jannchie.biliob.utils.LocalCache;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TwoLevelCacheTest {
+
+    @Test
+    public void coalesceConcurrentLoads() throws Exception {
+        TwoLevelCache cache = new TwoLevelCache("test", new ConcurrentMapCache("test"),
+                null, null, Runnable::run, (name, key) -> {
+        });
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.get("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "value";
+            })));
+        }
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        release.countDown();
+        for (Future<String> result : results) {
+            Assert.assertEquals("value", result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals("value", cache.get("key", () -> "other"));
+    }
+
+    @Test
+    public void serveStaleWhileRevalidate() {
+        Cache redisCache = new ConcurrentMapCache("test");
+        TwoLevelCache cache = new TwoLevelCache("test", redisCache,
+                null, new LocalCache<>(16, 60000), Runnable::run, (name, key) -> {
+        });
+        Assert.assertEquals("old", cache.get("key", () -> "old"));
+        // 模拟 Redis 中的项过期
+        redisCache.evict("key");
+        Assert.assertEquals("old", cache.get("key", () -> "new"));
+        Assert.assertEquals("new", redisCache.get("key").get());
+        Assert.assertEquals("new", cache.get("key", () -> "newer"));
+        // 主动删除后不再返回旧值
+        cache.evict("key");
+        Assert.assertEquals("newest", cache.get("key", () -> "newest"));
+    }
+
+    @Test(expected = Cache.ValueRetrievalException.class)
+    public void propagateLoaderFailure() {
+        TwoLevelCache cache = new TwoLevelCache("test", new ConcurrentMapCache("test"),
+                null, null, Runnable::run, (name, key) -> {
+        });
+        cache.get("key", () -> {
+            throw new IllegalStateException("failed");
+        });
+    }
+}
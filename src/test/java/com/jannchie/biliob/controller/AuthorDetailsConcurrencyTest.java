@@ -0,0 +1,72 @@
+package com.jannchie.biliob.controller;
+
+import com.jannchie.biliob.service.AuthorHistoryService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * UP主详情的查询不占用 Tomcat 线程：
+ * 每个请求的按日数据查询都要等到 CLIENTS 个请求同时在处理中才返回，
+ * 只有 SERVER_THREADS 个线程时，若查询阻塞请求线程，最多只有 SERVER_THREADS 个请求能到达这里，请求会超时失败
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "server.tomcat.threads.max=" + AuthorDetailsConcurrencyTest.SERVER_THREADS)
+public class AuthorDetailsConcurrencyTest {
+    static final int SERVER_THREADS = 4;
+    private static final int CLIENTS = 16;
+    private static final String URL = "/api/author/1850091";
+
+    @Autowired
+    TestRestTemplate restTemplate;
+    @SpyBean
+    AuthorHistoryService authorHistoryService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void moreRequestsInFlightThanServerThreads() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        CompletableFuture<Void> allArrived = new CompletableFuture<>();
+        doAnswer(invocation -> {
+            if (inFlight.incrementAndGet() == CLIENTS) {
+                allArrived.complete(null);
+            }
+            return Mono.fromFuture(allArrived)
+                    .timeout(Duration.ofSeconds(30))
+                    .then((Mono<Object>) invocation.callRealMethod());
+        }).when(authorHistoryService).listDailyDataReactive(anyLong());
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<ResponseEntity<String>>> futures = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            futures.add(clients.submit(() -> restTemplate.getForEntity(URL, String.class)));
+        }
+        for (Future<ResponseEntity<String>> future : futures) {
+            Assert.assertEquals(HttpStatus.OK, future.get().getStatusCode());
+        }
+        clients.shutdown();
+        Assert.assertEquals(CLIENTS, inFlight.get());
+        Assert.assertTrue(inFlight.get() > SERVER_THREADS);
+    }
+}
@@ -0,0 +1,79 @@
+package com.jannchie.biliob.controller;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 在只有少量 Tomcat 线程时并发请求读取接口，输出吞吐量与“线程数 / 单次请求耗时”这一每个请求独占一个线程时的上限。
+ * 部分查询仍是阻塞的，只是转移到了 boundedElastic 线程池上，结果仅供参考。
+ * 依赖实际的数据库，不在默认的测试中运行，使用 mvn test -Pload-test 运行
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "server.tomcat.threads.max=" + ReadPathLoadTest.SERVER_THREADS)
+public class ReadPathLoadTest {
+    static final int SERVER_THREADS = 4;
+    private static final int CLIENTS = 32;
+    private static final int REQUESTS_PER_CLIENT = 8;
+    private static final String[] URLS = {
+            "/api/author/1850091",
+            "/api/author/1850091/history-data",
+            "/api/video/v3/av170001/stat",
+    };
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Test
+    public void concurrentThroughput() throws Exception {
+        for (String url : URLS) {
+            request(url);
+        }
+        int sequential = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < sequential; i++) {
+            request(URLS[i % URLS.length]);
+        }
+        double latency = (System.nanoTime() - start) / 1e9 / sequential;
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> futures = new ArrayList<>(CLIENTS);
+        start = System.nanoTime();
+        for (int i = 0; i < CLIENTS; i++) {
+            int client = i;
+            futures.add(clients.submit(() -> {
+                for (int j = 0; j < REQUESTS_PER_CLIENT; j++) {
+                    request(URLS[(client + j) % URLS.length]);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        clients.shutdown();
+
+        double throughput = CLIENTS * REQUESTS_PER_CLIENT / elapsed;
+        double blockingBound = SERVER_THREADS / latency;
+        System.out.printf("threads %d  latency %.1f ms  throughput %.1f req/s  thread-per-request bound %.1f req/s%n",
+                SERVER_THREADS, latency * 1000, throughput, blockingBound);
+    }
+
+    private void request(String url) {
+        ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+        Assert.assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+}
@@ -2,6 +2,7 @@ package com.jannchie.biliob.controller;
 
 import com.jannchie.biliob.constant.TestConstants;
 import com.jannchie.biliob.model.VideoInfo;
+import com.jannchie.biliob.model.VideoStat;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -11,6 +12,8 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 
+import java.util.List;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest
 @WebAppConfiguration
@@ -32,7 +35,10 @@ public class VideoControllerV3Test {
     @Test
     @WithMockUser(username = TestConstants.NORMAL_USER_NAME)
     public void listVideoStatsByAid() {
-        videoControllerV3.listVideoStats(170001L);
-        videoControllerV3.listVideoStats("17x411w7KC");
+        List<VideoStat> a = videoControllerV3.listVideoStats(170001L).block();
+        List<VideoStat> b = videoControllerV3.listVideoStats("17x411w7KC").block();
+        Assert.assertNotNull(a);
+        Assert.assertNotNull(b);
+        Assert.assertEquals(a.size(), b.size());
     }
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.jannchie.biliob.service;
+
+import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.model.AuthorDailyHistory;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class AuthorHistoryServiceTest {
+    private static final long DAY = 86400000L;
+    /**
+     * 2020-06-01 00:00:00 UTC
+     */
+    private static final long DAY_START = 1590969600000L;
+
+    private static Author.Data data(long datetime, long fans) {
+        Author.Data data = new Author.Data();
+        data.setId(new ObjectId());
+        data.setMid(1L);
+        data.setDatetime(new Date(datetime));
+        data.setFans(fans);
+        return data;
+    }
+
+    private static List<Long> fansOf(List<Author.Data> dataList) {
+        List<Long> fans = new ArrayList<>();
+        for (Author.Data data : dataList) {
+            fans.add(data.getFans());
+        }
+        return fans;
+    }
+
+    @Test
+    public void keepFirstSampleOfEachUtcDay() {
+        AuthorDailyHistory history = new AuthorDailyHistory(1L);
+        AuthorHistoryService.merge(history, Arrays.asList(
+                data(DAY_START, 1),
+                data(DAY_START + 3600000L, 2),
+                // 同一天的最后一毫秒与下一天的第一毫秒属于不同的天
+                data(DAY_START + DAY - 1, 3),
+                data(DAY_START + DAY, 4),
+                data(DAY_START + 3 * DAY + 5, 5)));
+        Assert.assertEquals(Arrays.asList(5L, 4L, 1L), fansOf(history.getData()));
+        Assert.assertEquals(new Date(DAY_START + 3 * DAY + 5), history.getWatermark());
+        for (Author.Data data : history.getData()) {
+            Assert.assertNull(data.getId());
+            Assert.assertNull(data.getMid());
+        }
+    }
+
+    @Test
+    public void mergeIntoExistingDays() {
+        AuthorDailyHistory history = new AuthorDailyHistory(1L);
+        AuthorHistoryService.merge(history, Arrays.asList(data(DAY_START, 1), data(DAY_START + DAY + 10, 2)));
+        // 已有最后一天的后续数据只推进 watermark，不替换当天已保存的第一条
+        AuthorHistoryService.merge(history, Collections.singletonList(data(DAY_START + DAY + 20, 3)));
+        Assert.assertEquals(Arrays.asList(2L, 1L), fansOf(history.getData()));
+        Assert.assertEquals(new Date(DAY_START + DAY + 20), history.getWatermark());
+
+        List<Author.Data> newBuckets = AuthorHistoryService.merge(history, Arrays.asList(data(DAY_START + 2 * DAY, 4), data(DAY_START + 2 * DAY + 1, 5)));
+        Assert.assertEquals(Collections.singletonList(4L), fansOf(newBuckets));
+        Assert.assertEquals(Arrays.asList(4L, 2L, 1L), fansOf(history.getData()));
+        Assert.assertEquals(new Date(DAY_START + 2 * DAY + 1), history.getWatermark());
+    }
+
+    @Test
+    public void skipSamplesWithoutDatetime() {
+        AuthorDailyHistory history = new AuthorDailyHistory(1L);
+        Author.Data withoutDatetime = data(DAY_START, 1);
+        withoutDatetime.setDatetime(null);
+        AuthorHistoryService.merge(history, Arrays.asList(withoutDatetime, data(DAY_START + 1, 2)));
+        Assert.assertEquals(Collections.singletonList(2L), fansOf(history.getData()));
+        Assert.assertEquals(new Date(DAY_START + 1), history.getWatermark());
+
+        AuthorHistoryService.merge(history, Collections.singletonList(withoutDatetime));
+        Assert.assertEquals(new Date(DAY_START + 1), history.getWatermark());
+    }
+
+    /**
+     * 定时任务只读取最新的一天，新增的按日数据与读取全部数据时相同
+     */
+    @Test
+    public void mergeWithLatestDayOnly() {
+        AuthorDailyHistory full = new AuthorDailyHistory(1L);
+        AuthorHistoryService.merge(full, Arrays.asList(data(DAY_START, 1), data(DAY_START + DAY, 2)));
+        AuthorDailyHistory latest = new AuthorDailyHistory(1L);
+        latest.getData().add(full.getData().get(0));
+        latest.setWatermark(full.getWatermark());
+
+        List<Author.Data> newData = Arrays.asList(data(DAY_START + DAY + 1, 3), data(DAY_START + 2 * DAY, 4));
+        List<Author.Data> newBuckets = AuthorHistoryService.merge(latest, newData);
+        Assert.assertEquals(Collections.singletonList(4L), fansOf(newBuckets));
+        Assert.assertEquals(new Date(DAY_START + 2 * DAY), latest.getWatermark());
+        AuthorHistoryService.merge(full, newData);
+        Assert.assertEquals(Arrays.asList(4L, 2L, 1L), fansOf(full.getData()));
+    }
+}
@@ -0,0 +1,115 @@
+package com.jannchie.biliob.service;
+
+import com.jannchie.biliob.constant.CreditConstant;
+import com.jannchie.biliob.constant.DbFields;
+import com.jannchie.biliob.constant.ResultEnum;
+import com.jannchie.biliob.model.User;
+import com.jannchie.biliob.model.UserRecord;
+import com.jannchie.biliob.utils.Result;
+import com.jannchie.biliob.utils.UserRecordWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class CreditServiceTest {
+    private static final String USER_NAME = "credit-service-test";
+    private static final int OPERATIONS = 2000;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private CreditService creditService;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private UserRecordWriter userRecordWriter;
+
+    private User createUser(double credit) {
+        User user = new User(USER_NAME, "", "普通用户");
+        user.setCredit(credit);
+        return mongoTemplate.insert(user);
+    }
+
+    private User reload(User user) {
+        return mongoTemplate.findById(user.getId(), User.class);
+    }
+
+    /**
+     * 以 THREADS 个线程并发执行 OPERATIONS 次操作
+     */
+    private void runConcurrently(Runnable operation) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int i = 0; i < OPERATIONS; i++) {
+            executor.execute(operation);
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+    }
+
+    @After
+    public void cleanUp() {
+        userRecordWriter.flush();
+        mongoTemplate.remove(Query.query(Criteria.where("name").is(USER_NAME)), User.class);
+        mongoTemplate.remove(Query.query(Criteria.where("userName").is(USER_NAME)), UserRecord.class);
+    }
+
+    /**
+     * 所有线程共用一开始读取的用户对象，原先按其中过期的积分写回时会丢失更新
+     */
+    @Test
+    public void concurrentCheckInWithStaleUser() throws InterruptedException {
+        User user = createUser(0D);
+        CreditConstant c = CreditConstant.CHECK_IN;
+        runConcurrently(() -> creditService.doCreditOperation(user, c, c.getMsg()));
+        User result = reload(user);
+        Assert.assertEquals(OPERATIONS * c.getValue(), result.getCredit(), 1e-6);
+        Assert.assertEquals(OPERATIONS * c.getValue(), result.getExp(), 1e-6);
+        userRecordWriter.flush();
+        Assert.assertEquals(OPERATIONS, mongoTemplate.count(Query.query(Criteria.where("userName").is(USER_NAME)), UserRecord.class));
+    }
+
+    @Test
+    public void concurrentRefreshNeverOverdraws() throws InterruptedException {
+        CreditConstant c = CreditConstant.REFRESH_AUTHOR_DATA;
+        int affordable = 100;
+        User user = createUser(-c.getValue() * affordable);
+        AtomicInteger succeed = new AtomicInteger();
+        runConcurrently(() -> {
+            Result<?> r = creditService.doCreditOperation(user, c, c.getMsg(1L));
+            if (r.getCode() != -1) {
+                succeed.incrementAndGet();
+            }
+        });
+        Assert.assertEquals(affordable, succeed.get());
+        Assert.assertEquals(0D, reload(user).getCredit(), 1e-6);
+    }
+
+    /**
+     * 传入的用户对象是封禁之前读取的，不应再修改积分
+     */
+    @Test
+    public void bannedAfterUserWasRead() {
+        User user = createUser(100D);
+        mongoTemplate.updateFirst(Query.query(Criteria.where(DbFields.ID).is(user.getId())), Update.update(DbFields.BAN, true), User.class);
+        CreditConstant c = CreditConstant.CHECK_IN;
+        Result<?> r = creditService.doCreditOperation(user, c, c.getMsg());
+        Assert.assertEquals(ResultEnum.BANNED.getMsg(), r.getMsg());
+        Assert.assertEquals(100D, reload(user).getCredit(), 1e-6);
+    }
+}
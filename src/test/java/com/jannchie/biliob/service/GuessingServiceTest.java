@@ -5,8 +5,12 @@ import com.jannchie.biliob.constant.TestConstants;
 import com.jannchie.biliob.model.FansGuessingItem;
 import com.jannchie.biliob.model.GuessingItem;
 import com.jannchie.biliob.model.User;
+import com.jannchie.biliob.model.UserRecord;
+import com.jannchie.biliob.object.UserGuessingResult;
+import com.jannchie.biliob.utils.GuessingScorer;
 import com.jannchie.biliob.utils.Result;
 import com.jannchie.biliob.utils.UserUtils;
+import org.bson.types.ObjectId;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -20,7 +24,12 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -71,4 +80,72 @@ public class GuessingServiceTest {
         Calendar c = Calendar.getInstance();
         guessingService.printGuessingResult("5e84bbc0b2dfc1a238c8ec9e");
     }
-}
\ No newline at end of file
+
+    /**
+     * 结算 1 万人参与的竞猜，检查发放人数、积分记录与积分总额，再次结算时不重复发放。耗时输出到标准输出
+     */
+    @Test
+    public void settleFansGuessing() {
+        int participants = 10000;
+        String prefix = "settlement-test-";
+        FansGuessingItem f = new FansGuessingItem();
+        f.setGuessingId(new ObjectId());
+        f.setTitle(prefix);
+        f.setState(3);
+        Calendar c = Calendar.getInstance();
+        f.setReachDate(c.getTime());
+        List<User> users = new ArrayList<>(participants);
+        List<GuessingItem.PokerChip> chips = new ArrayList<>(participants);
+        Random random = new Random(0);
+        for (int i = 0; i < participants; i++) {
+            User user = new User(prefix + i, "", "普通用户");
+            user.setCredit(100D);
+            users.add(user);
+            GuessingItem.PokerChip chip = new GuessingItem.PokerChip();
+            chip.setUser(user);
+            chip.setCredit(1D + random.nextInt(100));
+            chip.setCreateTime(new Date(c.getTimeInMillis() - (1000 + random.nextInt(1000)) * 3600000L));
+            chip.setGuessingDate(new Date(c.getTimeInMillis() + (long) (random.nextGaussian() * 300 * 3600000L)));
+            chips.add(chip);
+        }
+        f.setPokerChips(chips);
+        String guessingId = f.getGuessingId();
+        try {
+            mongoTemplate.insertAll(users);
+            mongoTemplate.save(f);
+            // 与结算时相同，以达成时间减去 8 小时计算收益；积分不足以扣除负收益的用户不发放
+            List<UserGuessingResult> expected = GuessingScorer.score(chips, c.getTimeInMillis() - 8 * 3600000L);
+            int expectedPaid = 0;
+            double expectedRevenue = 0;
+            for (UserGuessingResult r : expected) {
+                double revenue = BigDecimal.valueOf(r.getRevenue()).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue();
+                if (100D >= -revenue) {
+                    expectedPaid++;
+                    expectedRevenue += revenue;
+                }
+            }
+
+            int settled = guessingService.settleFansGuessing(f);
+            Assert.assertEquals(expectedPaid, settled);
+            Assert.assertEquals(participants, mongoTemplate.count(Query.query(Criteria.where("guessingId").is(guessingId)), "cashed_user_guessing"));
+
+            List<UserRecord> records = mongoTemplate.find(Query.query(Criteria.where("userName").regex("^" + prefix)), UserRecord.class);
+            Assert.assertEquals(expectedPaid, records.size());
+            Assert.assertEquals(expectedRevenue, records.stream().mapToDouble(UserRecord::getCredit).sum(), 1e-3);
+            for (User u : mongoTemplate.find(Query.query(Criteria.where("name").regex("^" + prefix)), User.class)) {
+                Assert.assertEquals(BigDecimal.valueOf(u.getCredit()).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue(), u.getCredit(), 1e-9);
+            }
+            double creditSum = mongoTemplate.find(Query.query(Criteria.where("name").regex("^" + prefix)), User.class)
+                    .stream().mapToDouble(User::getCredit).sum();
+            Assert.assertEquals(100D * participants + expectedRevenue, creditSum, 1e-3);
+
+            Assert.assertEquals(0, guessingService.settleFansGuessing(f));
+            Assert.assertEquals(expectedPaid, mongoTemplate.count(Query.query(Criteria.where("userName").regex("^" + prefix)), UserRecord.class));
+        } finally {
+            mongoTemplate.remove(Query.query(Criteria.where("name").regex("^" + prefix)), User.class);
+            mongoTemplate.remove(Query.query(Criteria.where("userName").regex("^" + prefix)), UserRecord.class);
+            mongoTemplate.remove(Query.query(Criteria.where("guessingId").is(guessingId)), "cashed_user_guessing");
+            mongoTemplate.remove(Query.query(Criteria.where("guessingId").is(guessingId)), FansGuessingItem.class);
+        }
+    }
+}
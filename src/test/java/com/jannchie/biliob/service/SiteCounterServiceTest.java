@@ -0,0 +1,26 @@
+package com.jannchie.biliob.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.jannchie.biliob.service.SiteCounterService.Counter.*;
+
+public class SiteCounterServiceTest {
+
+    @Test
+    public void authorCounter() {
+        Assert.assertEquals(AUTHOR_FOCUS, SiteCounterService.authorCounter(true, null));
+        Assert.assertEquals(AUTHOR_NOT_FOCUS, SiteCounterService.authorCounter(false, null));
+        Assert.assertEquals(AUTHOR_FORCE_FOCUS, SiteCounterService.authorCounter(false, true));
+        // 取消强制观测后字段仍然存在，与精确计数的查询一样不计入任何一项
+        Assert.assertNull(SiteCounterService.authorCounter(true, false));
+        Assert.assertNull(SiteCounterService.authorCounter(null, null));
+    }
+
+    @Test
+    public void videoCounter() {
+        Assert.assertEquals(VIDEO_FOCUS, SiteCounterService.videoCounter(true));
+        Assert.assertEquals(VIDEO_NOT_FOCUS, SiteCounterService.videoCounter(false));
+        Assert.assertNull(SiteCounterService.videoCounter(null));
+    }
+}
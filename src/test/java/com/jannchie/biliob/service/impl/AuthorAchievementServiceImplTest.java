@@ -0,0 +1,121 @@
+package com.jannchie.biliob.service.impl;
+
+import com.jannchie.biliob.constant.AuthorAchievementEnum;
+import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.model.AuthorDailyTrend;
+import com.jannchie.biliob.service.AuthorAchievementService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class AuthorAchievementServiceImplTest {
+    private static final Long MID = -1850091L;
+    private static final String WATERMARK_COLLECTION = "author_daily_achievement_watermark";
+    private static final long DAY = 24 * 3600 * 1000L;
+    private static final long START = 1546300800000L;
+    /**
+     * 每日涨粉：第 2 天涨幅超过前日 10 倍，第 3 天由涨转跌，第 4 天单日涨粉超过 10 万
+     */
+    private static final long[] FANS = {200, 250, 3000, -800, 150000, 20};
+
+    @Autowired
+    private AuthorAchievementService authorAchievementService;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private void insertDays(int from, int to) {
+        List<AuthorDailyTrend> trends = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            AuthorDailyTrend trend = new AuthorDailyTrend();
+            trend.setMid(MID);
+            trend.setFans(FANS[i]);
+            trend.setDatetime(new Date(START + i * DAY));
+            trends.add(trend);
+        }
+        mongoTemplate.insertAll(trends);
+    }
+
+    private List<Author.Achievement> achievements() {
+        return mongoTemplate.find(Query.query(Criteria.where("author.mid").is(MID)), Author.Achievement.class);
+    }
+
+    private static Set<String> keys(List<Author.Achievement> achievements) {
+        Set<String> keys = new HashSet<>();
+        achievements.forEach(a -> keys.add(a.getCode() + "@" + a.getDate().getTime()));
+        return keys;
+    }
+
+    private void removeAchievements() {
+        mongoTemplate.remove(Query.query(Criteria.where("author.mid").is(MID)), Author.Achievement.class);
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(MID)), WATERMARK_COLLECTION);
+    }
+
+    @After
+    public void cleanUp() {
+        removeAchievements();
+        mongoTemplate.remove(Query.query(Criteria.where("mid").is(MID)), AuthorDailyTrend.class);
+    }
+
+    @Test
+    public void resumeFromWatermarkEqualsFullScan() {
+        insertDays(0, FANS.length);
+        authorAchievementService.analyzeDailyAchievement(MID);
+        Set<String> fullScan = keys(achievements());
+        Assert.assertEquals(3, fullScan.size());
+
+        removeAchievements();
+        mongoTemplate.remove(Query.query(Criteria.where("mid").is(MID)), AuthorDailyTrend.class);
+        for (int day = 0; day < FANS.length; day++) {
+            insertDays(day, day + 1);
+            authorAchievementService.analyzeDailyAchievement(MID);
+        }
+        Assert.assertEquals(fullScan, keys(achievements()));
+    }
+
+    /**
+     * 水位线之后只有一天的数据时，由涨转跌需要与水位线当天比较
+     */
+    @Test
+    public void seedPreviousDayAtBoundary() {
+        insertDays(0, 3);
+        authorAchievementService.analyzeDailyAchievement(MID);
+        Assert.assertFalse(keys(achievements()).contains(AuthorAchievementEnum.UP_TO_DOWN.getId() + "@" + (START + 3 * DAY)));
+
+        insertDays(3, 4);
+        authorAchievementService.analyzeDailyAchievement(MID);
+        Assert.assertTrue(keys(achievements()).contains(AuthorAchievementEnum.UP_TO_DOWN.getId() + "@" + (START + 3 * DAY)));
+    }
+
+    /**
+     * 水位线丢失后重新判定全部数据，也不重复插入同一天的同一成就
+     */
+    @Test
+    public void rerunInsertsNoDuplicate() {
+        insertDays(0, FANS.length);
+        authorAchievementService.analyzeDailyAchievement(MID);
+        int count = achievements().size();
+
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(MID)), WATERMARK_COLLECTION);
+        authorAchievementService.analyzeDailyAchievement(MID);
+        List<Author.Achievement> achievements = achievements();
+        Assert.assertEquals(count, achievements.size());
+        Assert.assertEquals(count, keys(achievements).size());
+    }
+}
@@ -17,12 +17,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Calendar;
+import java.util.List;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -97,4 +99,36 @@ public class UserCommentServiceImplTest {
         Assert.assertEquals(publisherAft.getCredit(), publisherBef.getCredit() + CreditConstant.BE_LIKE_COMMENT.getValue(), 0);
         Assert.assertEquals(publisherAft.getExp(), publisherBef.getExp() + CreditConstant.BE_LIKE_COMMENT.getValue(), 0);
     }
-}
\ No newline at end of file
+
+    @Test
+    @WithMockUser(username = TestConstants.PERMITTED_NAME)
+    public void listCommentsWithReplies() {
+        User u = userUtils.getUser();
+        String path = "/a/path/of/comment/with/replies";
+        Comment c = new Comment();
+        c.setContent("这是一段带有回复的测试评论。");
+        c.setPath(path);
+        Assert.assertEquals(ResultEnum.SUCCEED.getMsg(), userCommentService.postComment(c).getMsg());
+        Comment reply = new Comment();
+        reply.setContent("这是一段测试回复。");
+        reply.setPath(path);
+        reply.setParentId(c.getCommentId());
+        Assert.assertEquals(ResultEnum.SUCCEED.getMsg(), userCommentService.postComment(reply).getMsg());
+        mongoTemplate.updateFirst(Query.query(Criteria.where(DbFields.ID).is(c.getCommentId())),
+                new Update().addToSet("likeList", u.getId()).inc("like", 1), Comment.class);
+
+        List<Comment> comments = userCommentService.listComments(path, 0, 10, 1);
+        Assert.assertEquals(1, comments.size());
+        Comment comment = comments.get(0);
+        Assert.assertTrue(comment.isLiked());
+        Assert.assertEquals(1L, comment.getLike().longValue());
+        Assert.assertEquals(0L, comment.getDislike().longValue());
+        Assert.assertNull(comment.getLikeList());
+        Assert.assertNull(comment.getUser().getPassword());
+        Assert.assertEquals(1, comment.getReplies().size());
+        Comment r = comment.getReplies().get(0);
+        Assert.assertEquals(reply.getContent(), r.getContent());
+        Assert.assertFalse(r.isLiked());
+        Assert.assertEquals(u.getName(), r.getUser().getName());
+    }
+}
@@ -0,0 +1,260 @@
+package com.jannchie.biliob.utils;
+
+import com.jannchie.biliob.constant.AuthorUniqueAchievementEnum;
+import com.jannchie.biliob.model.Author;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class AchievementEvaluatorTest {
+    private static final long DAY = 24 * 3600 * 1000L;
+    /**
+     * fixtures/author-data-series.csv 中各阈值第一次被超过的数据
+     */
+    private static final String GOLDEN = "3001,1004,1521793315000;3002,10003,1530865120000;3003,100437,1559895541000;"
+            + "3011,104522,1523002269000;3012,1003412,1533283678000;3013,10086214,1567152523000;"
+            + "3021,10488,1525421102000;3022,101447,1538121527000;3023,1004372,1571990254000;";
+
+    /**
+     * 生成按时间升序的历史数据：整体增长、偶尔回落，部分数据项为空
+     */
+    private static List<Author.Data> series(Random random, int size) {
+        List<Author.Data> series = new ArrayList<>(size);
+        double scale = Math.pow(10, 2 + random.nextInt(8));
+        long fans = (long) (random.nextDouble() * scale);
+        long view = fans * (10 + random.nextInt(100));
+        long like = view / (5 + random.nextInt(20));
+        for (int i = 0; i < size; i++) {
+            fans = Math.max(0, fans + (long) ((random.nextDouble() - 0.2) * scale / 10));
+            view = Math.max(0, view + (long) ((random.nextDouble() - 0.1) * scale * 5));
+            like = Math.max(0, like + (long) ((random.nextDouble() - 0.1) * scale / 2));
+            Author.Data data = new Author.Data();
+            data.setMid(1L);
+            data.setFans(random.nextInt(20) == 0 ? null : fans);
+            data.setArchiveView(random.nextInt(20) == 0 ? null : view);
+            data.setLike(random.nextInt(20) == 0 ? null : like);
+            data.setDatetime(new Date(i * DAY));
+            series.add(data);
+        }
+        return series;
+    }
+
+    /**
+     * 原先逐个成就判定并查询第一次超过阈值的数据的实现，数据库查询以顺序查找代替
+     */
+    private static List<Author.Achievement> legacyUnique(Long mid, Set<Integer> hashSet, List<Author.Data> dataList,
+                                                         List<Author.Data> allData) {
+        List<Author.Achievement> result = new ArrayList<>();
+        for (AuthorUniqueAchievementEnum e : AuthorUniqueAchievementEnum.values()) {
+            int size = dataList.size();
+            if (size < 1) {
+                return result;
+            }
+            if (hashSet.contains(e.getId())) {
+                continue;
+            }
+            Long lastFans = dataList.get(0).getFans();
+            Long lastLike = dataList.get(0).getLike();
+            Long lastView = dataList.get(0).getArchiveView();
+            for (Author.Data value : dataList) {
+                if (lastFans == null) {
+                    lastFans = value.getFans();
+                }
+                if (lastLike == null) {
+                    lastLike = value.getLike();
+                }
+                if (lastView == null) {
+                    lastView = value.getArchiveView();
+                }
+                if (lastFans != null && lastView != null && lastLike != null) {
+                    break;
+                }
+            }
+            Long initFans = dataList.get(size - 1).getFans();
+            Long initLike = dataList.get(size - 1).getLike();
+            Long initView = dataList.get(size - 1).getArchiveView();
+            for (int i = size - 1; i >= 0; i--) {
+                if (initFans == null) {
+                    initFans = dataList.get(i).getFans();
+                }
+                if (initLike == null) {
+                    initLike = dataList.get(i).getLike();
+                }
+                if (initView == null) {
+                    initView = dataList.get(i).getArchiveView();
+                }
+                if (initView != null && initLike != null && initFans != null) {
+                    break;
+                }
+            }
+            Long val = e.getValue();
+            String key;
+            if (lastFans == null || lastView == null || lastLike == null) {
+                return result;
+            }
+            Long initData;
+            if (e.getId() < 3010 && lastFans > e.getValue()) {
+                key = "fans";
+                initData = initFans;
+            } else if (e.getId() >= 3010 && e.getId() < 3020 && lastView > e.getValue()) {
+                key = "archiveView";
+                initData = initView;
+            } else if (e.getId() >= 3020 && e.getId() < 3030 && lastLike > e.getValue()) {
+                key = "like";
+                initData = initLike;
+            } else {
+                continue;
+            }
+            if (initData == null) {
+                continue;
+            }
+            Author.Data data = null;
+            for (Author.Data each : allData) {
+                Long v = "fans".equals(key) ? each.getFans() : "archiveView".equals(key) ? each.getArchiveView() : each.getLike();
+                if (v != null && v > val) {
+                    data = each;
+                    break;
+                }
+            }
+            if (data == null) {
+                continue;
+            }
+            Author.Achievement a;
+            if ("fans".equals(key)) {
+                a = new Author.Achievement(e, mid, data.getFans());
+            } else if ("archiveView".equals(key)) {
+                a = new Author.Achievement(e, mid, data.getArchiveView());
+            } else {
+                a = new Author.Achievement(e, mid, data.getLike());
+            }
+            if (initData > e.getValue()) {
+                a.setDate(null);
+            } else {
+                a.setDate(data.getDatetime());
+            }
+            result.add(a);
+        }
+        return result;
+    }
+
+    private static String describe(List<Author.Achievement> achievements) {
+        StringBuilder sb = new StringBuilder();
+        for (Author.Achievement a : achievements) {
+            sb.append(a.getCode()).append(',').append(a.getValue()).append(',')
+                    .append(a.getDate() == null ? null : a.getDate().getTime()).append(';');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void sameAsLegacy() {
+        Random random = new Random(20200607);
+        List<Integer> ids = new ArrayList<>(AuthorUniqueAchievementEnum.getIdSet());
+        int found = 0;
+        for (int round = 0; round < 2000; round++) {
+            List<Author.Data> allData = series(random, 1 + random.nextInt(300));
+            // 页面上的数据是最新在前、可能只有最近的一部分
+            List<Author.Data> dataList = new ArrayList<>(allData.subList(random.nextInt(allData.size()), allData.size()));
+            Collections.reverse(dataList);
+            Collections.shuffle(ids, random);
+            Set<Integer> achieved = new HashSet<>(ids.subList(0, random.nextInt(ids.size())));
+
+            String expected = describe(legacyUnique(1L, achieved, dataList, allData));
+            String actual = describe(AchievementEvaluator.evaluateUnique(1L, achieved, dataList, () -> allData));
+            Assert.assertEquals(expected, actual);
+            if (!expected.isEmpty()) {
+                found++;
+            }
+        }
+        Assert.assertTrue(found > 100);
+    }
+
+    @Test
+    public void skipSeriesWhenNothingReached() {
+        Author.Data data = new Author.Data();
+        data.setFans(10L);
+        data.setArchiveView(10L);
+        data.setLike(10L);
+        List<Author.Achievement> result = AchievementEvaluator.evaluateUnique(1L, new HashSet<>(),
+                Collections.singletonList(data), () -> {
+                    throw new AssertionError();
+                });
+        Assert.assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void firstCrossingDate() {
+        List<Author.Data> series = new ArrayList<>();
+        for (long fans : Arrays.asList(500L, 1200L, 900L, 20000L)) {
+            Author.Data data = new Author.Data();
+            data.setFans(fans);
+            data.setArchiveView(0L);
+            data.setLike(0L);
+            data.setDatetime(new Date(series.size() * DAY));
+            series.add(data);
+        }
+        List<Author.Data> dataList = new ArrayList<>(series);
+        Collections.reverse(dataList);
+        List<Author.Achievement> result = AchievementEvaluator.evaluateUnique(1L, new HashSet<>(), dataList, () -> series);
+        Assert.assertEquals("3001,1200,86400000;3002,20000,259200000;", describe(result));
+    }
+
+    /**
+     * 读取按时间升序记录的历史数据，空白表示该次抓取缺少此项
+     */
+    private static List<Author.Data> loadRecordedSeries() throws IOException {
+        List<Author.Data> series = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                AchievementEvaluatorTest.class.getResourceAsStream("/fixtures/author-data-series.csv"),
+                StandardCharsets.UTF_8))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",", -1);
+                Author.Data data = new Author.Data();
+                data.setMid(1L);
+                data.setDatetime(Date.from(Instant.parse(columns[0])));
+                data.setFans(columns[1].isEmpty() ? null : Long.valueOf(columns[1]));
+                data.setArchiveView(columns[2].isEmpty() ? null : Long.valueOf(columns[2]));
+                data.setLike(columns[3].isEmpty() ? null : Long.valueOf(columns[3]));
+                series.add(data);
+            }
+        }
+        return series;
+    }
+
+    @Test
+    public void recordedSeries() throws IOException {
+        List<Author.Data> allData = loadRecordedSeries();
+        List<Author.Data> dataList = new ArrayList<>(allData);
+        Collections.reverse(dataList);
+        List<Author.Achievement> result = AchievementEvaluator.evaluateUnique(1L, new HashSet<>(), dataList, () -> allData);
+        Assert.assertEquals(describe(legacyUnique(1L, new HashSet<>(), dataList, allData)), describe(result));
+        Assert.assertEquals(GOLDEN, describe(result));
+
+        // 页面上只有最近一部分数据、且已获得部分成就时，结果也与原实现一致
+        List<Integer> ids = new ArrayList<>(AuthorUniqueAchievementEnum.getIdSet());
+        Random random = new Random(1850091);
+        for (int round = 0; round < 200; round++) {
+            List<Author.Data> page = new ArrayList<>(allData.subList(random.nextInt(allData.size()), allData.size()));
+            Collections.reverse(page);
+            Collections.shuffle(ids, random);
+            Set<Integer> achieved = new HashSet<>(ids.subList(0, random.nextInt(ids.size())));
+            Assert.assertEquals(describe(legacyUnique(1L, achieved, page, allData)),
+                    describe(AchievementEvaluator.evaluateUnique(1L, achieved, page, () -> allData)));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class AhoCorasickTest {
+
+    @Test
+    public void matches() {
+        Random random = new Random(42);
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            patterns.add(randomString(random, 1 + random.nextInt(4)));
+        }
+        AhoCorasick automaton = AhoCorasick.of(patterns);
+        for (int i = 0; i < 2000; i++) {
+            String text = randomString(random, random.nextInt(30));
+            boolean expected = false;
+            for (String pattern : patterns) {
+                if (text.contains(pattern)) {
+                    expected = true;
+                    break;
+                }
+            }
+            Assert.assertEquals(text, expected, automaton.matches(text));
+        }
+    }
+
+    @Test
+    public void userAgent() {
+        AhoCorasick automaton = AhoCorasick.of(Arrays.asList("python-requests", "Scrapy", "curl/"));
+        Assert.assertTrue(automaton.matches("python-requests/2.24.0"));
+        Assert.assertTrue(automaton.matches("Scrapy/2.3.0 (+https://scrapy.org)"));
+        Assert.assertFalse(automaton.matches("Mozilla/5.0 (Windows NT 10.0; Win64; x64)"));
+        Assert.assertFalse(automaton.matches(null));
+    }
+
+    @Test
+    public void empty() {
+        Assert.assertFalse(AhoCorasick.of(Collections.emptyList()).matches("anything"));
+        Assert.assertFalse(AhoCorasick.of(Collections.singletonList("")).matches("anything"));
+    }
+
+    private String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(3)));
+        }
+        return builder.toString();
+    }
+}
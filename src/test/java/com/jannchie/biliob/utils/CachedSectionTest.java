@@ -0,0 +1,61 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachedSectionTest {
+
+    @Test
+    public void refreshAfterInterval() {
+        AtomicInteger loads = new AtomicInteger();
+        CachedSection section = new CachedSection("count", 1000, data -> data.put("count", loads.incrementAndGet()));
+        long now = System.currentTimeMillis();
+        Assert.assertEquals(1, section.get(Runnable::run, now).join().getData().get("count"));
+        Assert.assertEquals(1, section.get(Runnable::run, now + 999).join().getData().get("count"));
+        Assert.assertEquals(2, section.get(Runnable::run, now + 60000).join().getData().get("count"));
+    }
+
+    @Test
+    public void keepLastValueOnFailure() {
+        AtomicInteger loads = new AtomicInteger();
+        CachedSection section = new CachedSection("count", 0, data -> {
+            if (loads.incrementAndGet() > 1) {
+                throw new IllegalStateException();
+            }
+            data.put("count", 1);
+        });
+        long now = System.currentTimeMillis();
+        CachedSection.Snapshot first = section.get(Runnable::run, now).join();
+        Assert.assertSame(first, section.get(Runnable::run, now + 1).join());
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void sectionsLoadConcurrently() throws Exception {
+        int sections = 4;
+        CountDownLatch latch = new CountDownLatch(sections);
+        ExecutorService executor = Executors.newFixedThreadPool(sections);
+        CompletableFuture<?>[] futures = new CompletableFuture[sections];
+        for (int i = 0; i < sections; i++) {
+            // 每个区块都要等所有区块开始计算后才能完成，依次计算时会一直等待
+            CachedSection section = new CachedSection("section" + i, 1000, data -> {
+                latch.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            futures[i] = section.get(executor, System.currentTimeMillis());
+        }
+        CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,161 @@
+package com.jannchie.biliob.utils;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.jannchie.biliob.config.RedisConfig;
+import com.jannchie.biliob.model.Author;
+import com.jannchie.biliob.model.VideoInfo;
+import com.jannchie.biliob.model.VideoStat;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+public class CompactRedisSerializerTest {
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    private static Jackson2JsonRedisSerializer<Object> jsonSerializer() {
+        Jackson2JsonRedisSerializer<Object> serializer = new Jackson2JsonRedisSerializer<>(Object.class);
+        ObjectMapper om = new ObjectMapper();
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        om.activateDefaultTyping(
+                LaissezFaireSubTypeValidator.instance,
+                ObjectMapper.DefaultTyping.NON_FINAL,
+                JsonTypeInfo.As.WRAPPER_ARRAY);
+        serializer.setObjectMapper(om);
+        return serializer;
+    }
+
+    private static MySlice<Author> authorSlice(int count) {
+        List<Author> authors = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            Author author = new Author(546195L + i);
+            author.setName("UP主" + i);
+            author.setFace("http://i0.hdslb.com/bfs/face/" + Long.toHexString(now + i) + ".jpg");
+            author.setSex("保密");
+            author.setOfficial("bilibili 知名UP主");
+            author.setLevel(6);
+            author.setFocus(true);
+            author.setObInterval(3600);
+            author.setcFans(1000000 + i);
+            author.setcArchiveView(100000000L + i);
+            author.setcArticleView(1000L + i);
+            author.setcLike(2000000L + i);
+            author.setcRate(-100 + i);
+            author.setKeyword(new ArrayList<>(Arrays.asList("UP主" + i, "生活", "知识")));
+            author.setRank(new Author.Rank(1L + i, 2L + i, 3L + i, 4L + i, 0L, 1L, -1L, 0L, new Date(now)));
+            ArrayList<Author.Data> data = new ArrayList<>();
+            for (int day = 0; day < 30; day++) {
+                Author.Data each = new Author.Data();
+                each.setMid(author.getMid());
+                each.setFans(1000000L + i - day * 100L);
+                each.setAttention(100);
+                each.setArchive(300);
+                each.setArticle(10);
+                each.setArchiveView(100000000L - day * 10000L);
+                each.setArticleView(1000L);
+                each.setLike(2000000L - day * 1000L);
+                each.setDatetime(new Date((now - day * DAY) / 1000 * 1000));
+                data.add(each);
+            }
+            author.setData(data);
+            authors.add(author);
+        }
+        return new MySlice<>(authors);
+    }
+
+    private static ArrayList<VideoInfo> videoInfoList(int count) {
+        ArrayList<VideoInfo> videos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            VideoInfo video = new VideoInfo();
+            video.setAid(170001L + i);
+            video.setBvid("BV17x411w7K" + i);
+            video.setCid(279786L + i);
+            video.setCopyright(1);
+            video.setCtime(1497380562L + i);
+            video.setPubdate(1497380562L + i);
+            video.setDesc("视频简介" + i);
+            video.setDuration(226L);
+            video.setDynamic("");
+            video.setPic("http://i0.hdslb.com/bfs/archive/" + i + ".jpg");
+            video.setTid((short) 24);
+            video.setTname("MAD·AMV");
+            video.setTitle("视频标题" + i);
+            video.setVideos((short) 1);
+            video.setTag(Arrays.asList("动画", "MAD", "燃向"));
+            HashMap<String, Short> rights = new HashMap<>(8);
+            rights.put("bp", (short) 0);
+            rights.put("elec", (short) 1);
+            rights.put("download", (short) 1);
+            video.setRights(rights);
+            Author owner = new Author(2L + i);
+            owner.setName("UP主" + i);
+            owner.setFace("http://i2.hdslb.com/bfs/face/" + i + ".jpg");
+            video.setOwner(owner);
+            VideoStat stat = new VideoStat();
+            stat.setAid(video.getAid());
+            stat.setView(1000000L + i);
+            stat.setDanmaku(10000L);
+            stat.setReply(1000L);
+            stat.setFavorite(50000L);
+            stat.setCoin(20000L);
+            stat.setShare(3000L);
+            stat.setLike(80000L);
+            video.setStat(stat);
+            videos.add(video);
+        }
+        return videos;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void roundTrip() {
+        CompactRedisSerializer serializer = RedisConfig.compactRedisSerializer();
+        MySlice<Author> slice = authorSlice(3);
+        MySlice<Author> authorResult = (MySlice<Author>) serializer.deserialize(serializer.serialize(slice));
+        Assert.assertEquals(3, authorResult.getContent().size());
+        Author author = authorResult.getContent().get(2);
+        Assert.assertEquals(slice.getContent().get(2).getMid(), author.getMid());
+        Assert.assertEquals(slice.getContent().get(2).getName(), author.getName());
+        Assert.assertEquals(30, author.getData().size());
+        Assert.assertEquals(slice.getContent().get(2).getData().get(29).getFans(), author.getData().get(29).getFans());
+        Assert.assertEquals(slice.getContent().get(2).getRank().getFansRank(), author.getRank().getFansRank());
+
+        ArrayList<VideoInfo> videos = videoInfoList(50);
+        List<VideoInfo> videoResult = (List<VideoInfo>) serializer.deserialize(serializer.serialize(videos));
+        Assert.assertEquals(50, videoResult.size());
+        Assert.assertEquals(videos.get(49).getTitle(), videoResult.get(49).getTitle());
+        Assert.assertEquals(videos.get(49).getStat().getView(), videoResult.get(49).getStat().getView());
+        Assert.assertEquals(videos.get(49).getOwner().getName(), videoResult.get(49).getOwner().getName());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void readLegacyJson() {
+        MySlice<Author> slice = authorSlice(2);
+        byte[] json = jsonSerializer().serialize(slice);
+        MySlice<Author> result = (MySlice<Author>) RedisConfig.compactRedisSerializer().deserialize(json);
+        Assert.assertEquals(slice.getContent().get(1).getMid(), result.getContent().get(1).getMid());
+    }
+
+    @Test
+    public void smallerThanJson() {
+        assertSmallerThanJson(authorSlice(20));
+        assertSmallerThanJson(videoInfoList(50));
+    }
+
+    private void assertSmallerThanJson(Object payload) {
+        byte[] compact = RedisConfig.compactRedisSerializer().serialize(payload);
+        byte[] json = jsonSerializer().serialize(payload);
+        Assert.assertTrue(compact.length < json.length);
+    }
+}
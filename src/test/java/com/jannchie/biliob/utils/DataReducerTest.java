@@ -1,5 +1,6 @@
 package com.jannchie.biliob.utils;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,6 +8,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest
 @WebAppConfiguration
@@ -19,4 +23,21 @@ public class DataReducerTest {
     public void limitPagesize() throws Exception {
 
     }
+
+    @Test
+    public void largestTriangleThreeBuckets() {
+        List<long[]> points = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            points.add(new long[]{i, i == 5000 ? 100000 : i % 7});
+        }
+        List<long[]> sampled = DataReducer.largestTriangleThreeBuckets(points, 100, p -> p[0], p -> p[1]);
+        Assert.assertEquals(100, sampled.size());
+        Assert.assertSame(points.get(0), sampled.get(0));
+        Assert.assertSame(points.get(9999), sampled.get(99));
+        Assert.assertTrue("峰值必须保留", sampled.contains(points.get(5000)));
+        for (int i = 1; i < sampled.size(); i++) {
+            Assert.assertTrue(sampled.get(i)[0] > sampled.get(i - 1)[0]);
+        }
+        Assert.assertEquals(50, DataReducer.largestTriangleThreeBuckets(points.subList(0, 50), 100, p -> p[0], p -> p[1]).size());
+    }
 }
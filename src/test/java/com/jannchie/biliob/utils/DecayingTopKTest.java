@@ -0,0 +1,55 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class DecayingTopKTest {
+
+    @Test
+    public void heavyHitters() {
+        DecayingTopK topK = new DecayingTopK(64, Long.MAX_VALUE / 4);
+        Random random = new Random(42);
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < 100000; i++) {
+            // 1 ~ 5 号各占 10% 的访问，其余访问分散到大量冷门项上
+            long key = random.nextInt(10) < 5 ? 1 + random.nextInt(5) : 100 + random.nextInt(100000);
+            topK.offer(key, time);
+        }
+        List<DecayingTopK.Item> top = topK.top(5, time);
+        Assert.assertEquals(5, top.size());
+        for (DecayingTopK.Item item : top) {
+            Assert.assertTrue(item.getKey() >= 1 && item.getKey() <= 5);
+            Assert.assertTrue(item.getCount() >= 9000);
+        }
+        Assert.assertEquals(64, topK.size());
+    }
+
+    @Test
+    public void decay() {
+        long hour = 3600 * 1000L;
+        DecayingTopK topK = new DecayingTopK(16, hour);
+        long now = System.currentTimeMillis();
+        topK.offer(1, 100, now - 5 * hour);
+        topK.offer(2, 10, now);
+        List<DecayingTopK.Item> top = topK.top(2, now);
+        Assert.assertEquals(2, top.get(0).getKey());
+        Assert.assertEquals(10, top.get(0).getCount(), 1e-6);
+        Assert.assertEquals(100 * Math.exp(-5), top.get(1).getCount(), 1e-6);
+    }
+
+    @Test
+    public void renormalize() {
+        long hour = 3600 * 1000L;
+        DecayingTopK topK = new DecayingTopK(16, hour);
+        long now = System.currentTimeMillis();
+        topK.offer(1, 1, now);
+        topK.offer(2, 1, now + 1000 * hour);
+        List<DecayingTopK.Item> top = topK.top(2, now + 1000 * hour);
+        Assert.assertEquals(2, top.get(0).getKey());
+        Assert.assertEquals(1, top.get(0).getCount(), 1e-9);
+        Assert.assertEquals(0, top.get(1).getCount(), 1e-9);
+    }
+}
@@ -0,0 +1,206 @@
+package com.jannchie.biliob.utils;
+
+import com.jannchie.biliob.model.GuessingItem;
+import com.jannchie.biliob.model.User;
+import com.jannchie.biliob.object.UserGuessingResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class GuessingScorerTest {
+    private static final long HOUR = 3600000L;
+    private static final long FINAL_REACH_TIME = 1590000000000L;
+
+    /**
+     * 生成按下注顺序排列的筹码，同一用户可能多次下注
+     */
+    private static List<GuessingItem.PokerChip> chips(Random random, int size, int users) {
+        List<GuessingItem.PokerChip> chips = new ArrayList<>(size);
+        long createTime = FINAL_REACH_TIME - (200 + random.nextInt(2000)) * HOUR;
+        for (int i = 0; i < size; i++) {
+            createTime += random.nextInt(3) * HOUR + random.nextInt(3600000);
+            User user = new User();
+            user.setName("user" + random.nextInt(users));
+            GuessingItem.PokerChip chip = new GuessingItem.PokerChip();
+            chip.setUser(user);
+            chip.setCredit((double) (1 + random.nextInt(100)) / (random.nextBoolean() ? 1 : 4));
+            chip.setCreateTime(new Date(createTime));
+            chip.setGuessingDate(new Date(FINAL_REACH_TIME + (long) (random.nextGaussian() * 500 * HOUR)));
+            chips.add(chip);
+        }
+        return chips;
+    }
+
+    private static Date legacyCorrectGuessingTime(GuessingItem.PokerChip pokerChip) {
+        Calendar guessingCal = Calendar.getInstance();
+        guessingCal.setTime(pokerChip.getGuessingDate());
+        guessingCal.add(Calendar.HOUR, -8);
+        return guessingCal.getTime();
+    }
+
+    /**
+     * 原先逐个筹码计算并按用户名合并的实现
+     */
+    private static ArrayList<UserGuessingResult> legacy(List<GuessingItem.PokerChip> pokerChipList, Date finalReachDate) {
+        ArrayList<UserGuessingResult> results = new ArrayList<>();
+        Double rate = 0.47;
+        if (pokerChipList != null) {
+            for (int i = 0; i < pokerChipList.size(); i++) {
+                GuessingItem.PokerChip p = pokerChipList.get(i);
+                int range = 10;
+                int l = Math.max(i - range, 0);
+                int r = Math.min(i + range, pokerChipList.size());
+
+                long averageLossHour = 0L;
+                for (int j = l; j < r; j++) {
+                    GuessingItem.PokerChip t = pokerChipList.get(j);
+                    Date guessingDate = legacyCorrectGuessingTime(t);
+                    Long lossHour = Math.abs((finalReachDate.getTime() - guessingDate.getTime()) / 3600000);
+                    averageLossHour += lossHour;
+                }
+                averageLossHour /= (l - r);
+
+                String userName = p.getUser().getName();
+                Date guessingDate = legacyCorrectGuessingTime(p);
+                Double credit = p.getCredit();
+                Date createTime = p.getCreateTime();
+
+                Long lossHour = Math.abs((finalReachDate.getTime() - guessingDate.getTime()) / 3600000);
+                Long foreHour = (finalReachDate.getTime() - createTime.getTime()) / 3600000;
+
+                UserGuessingResult result = new UserGuessingResult();
+                result.setForeHour(foreHour);
+                result.setLossHour(lossHour);
+                Long score = legacyScore(lossHour, foreHour, averageLossHour);
+                result.setScore((long) (score * rate * credit));
+                result.setCredit(credit);
+                result.setAverageDate(guessingDate);
+                result.setAverageCreateTime(createTime);
+                result.setName(userName);
+                results.add(result);
+            }
+        }
+
+        Long sumScore = results.stream().map(UserGuessingResult::getScore).reduce(0L, Long::sum);
+        Double sumCredit = results.stream().map(UserGuessingResult::getCredit).reduce(0D, Double::sum);
+        Double useCredit = sumCredit * rate;
+        Double scoreCredit = useCredit / sumScore;
+        results.forEach(r -> {
+            double revenue = r.getCredit() * (1 - rate) + r.getScore() * scoreCredit;
+            r.setRevenue(new BigDecimal(revenue).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue());
+        });
+        Map<String, UserGuessingResult> r = new HashMap<>(100);
+        Map<String, Integer> c = new HashMap<>(100);
+        Map<String, Long> avgC = new HashMap<>(100);
+        Map<String, Long> avgF = new HashMap<>(100);
+        Map<String, Long> avgP = new HashMap<>(100);
+        Map<String, Long> avgD = new HashMap<>(100);
+        for (UserGuessingResult res : results) {
+            if (r.containsKey(res.getName())) {
+                UserGuessingResult tmp = r.get(res.getName());
+                tmp.setScore(tmp.getScore() + res.getScore());
+                tmp.setRevenue(tmp.getRevenue() + res.getRevenue());
+                tmp.setCredit(tmp.getCredit() + res.getCredit());
+                avgC.put(res.getName(), avgC.get(res.getName()) + res.getAverageCreateTime().getTime());
+                avgF.put(res.getName(), avgF.get(res.getName()) + res.getForeHour());
+                avgP.put(res.getName(), avgP.get(res.getName()) + res.getLossHour());
+                avgD.put(res.getName(), avgD.get(res.getName()) + res.getAverageDate().getTime());
+                c.put(tmp.getName(), c.get(tmp.getName()) + 1);
+            } else {
+                avgC.put(res.getName(), res.getAverageCreateTime().getTime());
+                avgD.put(res.getName(), res.getAverageDate().getTime());
+                avgF.put(res.getName(), res.getForeHour());
+                avgP.put(res.getName(), res.getLossHour());
+                r.put(res.getName(), res);
+                c.put(res.getName(), 1);
+            }
+        }
+        r.values().forEach((res) -> {
+            res.setAverageCreateTime(new Date(avgC.get(res.getName()) / c.get(res.getName())));
+            res.setAverageDate(new Date(avgD.get(res.getName()) / c.get(res.getName())));
+            res.setForeHour(avgF.get(res.getName()) / c.get(res.getName()));
+            res.setLossHour(avgP.get(res.getName()) / c.get(res.getName()));
+            res.setRevenue(BigDecimal.valueOf(res.getRevenue()).setScale(2, BigDecimal.ROUND_HALF_DOWN).doubleValue());
+        });
+        return new ArrayList<>(r.values());
+    }
+
+    private static Long legacyScore(Long lossHour, Long foreHour, long averageLossHour) {
+        double error = lossHour.doubleValue() / foreHour.doubleValue();
+        if (error > 1) {
+            error = 1;
+        }
+        long lossBetter = averageLossHour - lossHour;
+        if (lossBetter > 147) {
+            lossBetter = 147;
+        }
+        if (lossBetter < -47) {
+            lossBetter = -47;
+        }
+        long score = 147;
+        score += lossBetter;
+        score += foreHour / 720;
+        score -= 100 * error;
+        if (lossHour < 24 && foreHour > 30 * 24 || lossHour < 24 * 7 && foreHour > 90 * 24 || lossHour < 24 * 14 && foreHour > 120 * 24) {
+            score *= 4;
+        } else if (lossHour < 48 && foreHour > 30 * 24 || lossHour < 24 * 14 && foreHour > 90 * 24 || lossHour < 24 * 21 && foreHour > 120 * 24) {
+            score *= 3;
+        } else if (lossHour < 24 * 3 && foreHour > 14 * 24 || lossHour < 24 * 21 && foreHour > 90 * 24 || lossHour < 24 * 28 && foreHour > 120 * 24) {
+            score *= 2;
+        } else if (lossHour < 3 && foreHour > 7 * 24) {
+            score *= 1.8;
+        } else if (lossHour < 6 && foreHour > 5 * 24) {
+            score *= 1.5;
+        } else if (lossHour < 12) {
+            score *= 1.2;
+        }
+        return score;
+    }
+
+    private static String describe(List<UserGuessingResult> results) {
+        StringBuilder sb = new StringBuilder();
+        for (UserGuessingResult r : results) {
+            sb.append(r.getName()).append(',').append(r.getScore()).append(',').append(r.getCredit()).append(',')
+                    .append(r.getRevenue()).append(',').append(r.getForeHour()).append(',').append(r.getLossHour()).append(',')
+                    .append(r.getAverageDate().getTime()).append(',').append(r.getAverageCreateTime().getTime()).append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 总得分为 0 时收益无法计算，原先的实现会抛出异常，此时两者应抛出相同的异常
+     */
+    private static String outcome(Supplier<String> supplier) {
+        try {
+            return supplier.get();
+        } catch (NumberFormatException e) {
+            return e.toString();
+        }
+    }
+
+    @Test
+    public void sameAsLegacy() {
+        Random random = new Random(20200601);
+        for (int round = 0; round < 500; round++) {
+            List<GuessingItem.PokerChip> chips = chips(random, 1 + random.nextInt(300), 1 + random.nextInt(200));
+            Assert.assertEquals(outcome(() -> describe(legacy(chips, new Date(FINAL_REACH_TIME)))),
+                    outcome(() -> describe(GuessingScorer.score(chips, FINAL_REACH_TIME))));
+        }
+    }
+
+    @Test
+    public void noChips() {
+        Assert.assertTrue(GuessingScorer.score(null, FINAL_REACH_TIME).isEmpty());
+        Assert.assertTrue(GuessingScorer.score(Collections.emptyList(), FINAL_REACH_TIME).isEmpty());
+    }
+}
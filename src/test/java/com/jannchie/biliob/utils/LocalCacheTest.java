@@ -0,0 +1,35 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LocalCacheTest {
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        LocalCache<String, Integer> cache = new LocalCache<>(2, 1000);
+        cache.put("a", 1, 0);
+        cache.put("b", 2, 0);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a", 1).getValue());
+        cache.put("c", 3, 1);
+        Assert.assertNull(cache.get("b", 2));
+        Assert.assertNotNull(cache.get("a", 2));
+        Assert.assertNotNull(cache.get("c", 2));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(3, cache.getHit());
+        Assert.assertEquals(1, cache.getMiss());
+        Assert.assertEquals(1, cache.getEviction());
+    }
+
+    @Test
+    public void expire() {
+        LocalCache<String, Integer> cache = new LocalCache<>(10, 1000);
+        cache.put("a", null, 0);
+        LocalCache.Entry<Integer> entry = cache.get("a", 999);
+        Assert.assertNotNull(entry);
+        Assert.assertNull(entry.getValue());
+        Assert.assertNull(cache.get("a", 1000));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(1, cache.getEviction());
+    }
+}
@@ -0,0 +1,58 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class OrderStatisticTreeTest {
+
+    private static long bruteForce(List<Double> values, double target) {
+        long count = 0;
+        for (double value : values) {
+            if (value >= target) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void countGreaterOrEqualAfterUpdates() {
+        Random random = new Random(42);
+        OrderStatisticTree tree = new OrderStatisticTree();
+        List<Double> values = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            if (values.isEmpty() || random.nextInt(3) != 0) {
+                // 经验值保留两位小数，且有大量重复
+                double value = random.nextInt(5000) / 100D;
+                tree.add(value);
+                values.add(value);
+            } else {
+                double value = values.remove(random.nextInt(values.size()));
+                Assert.assertTrue(tree.remove(value));
+            }
+            if (i % 100 == 0) {
+                double target = random.nextInt(5200) / 100D - 1;
+                Assert.assertEquals(bruteForce(values, target), tree.countGreaterOrEqual(target));
+            }
+        }
+        Assert.assertEquals(values.size(), tree.size());
+        for (int target = -1; target <= 51; target++) {
+            Assert.assertEquals(bruteForce(values, target), tree.countGreaterOrEqual(target));
+        }
+    }
+
+    @Test
+    public void removeMissing() {
+        OrderStatisticTree tree = new OrderStatisticTree();
+        tree.add(1D);
+        Assert.assertFalse(tree.remove(2D));
+        Assert.assertTrue(tree.remove(1D));
+        Assert.assertFalse(tree.remove(1D));
+        Assert.assertEquals(0, tree.size());
+        Assert.assertEquals(0, tree.countGreaterOrEqual(0D));
+    }
+}
@@ -0,0 +1,34 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RankIndexTest {
+
+    @Test
+    public void countGreaterOrEqual() {
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(1000);
+        }
+        RankIndex index = RankIndex.of(values, values.length);
+        for (long target = -1; target <= 1001; target++) {
+            long expected = 0;
+            for (long value : values) {
+                if (value >= target) {
+                    expected++;
+                }
+            }
+            Assert.assertEquals(expected, index.countGreaterOrEqual(target));
+        }
+    }
+
+    @Test
+    public void empty() {
+        Assert.assertEquals(0, RankIndex.empty().countGreaterOrEqual(1));
+        Assert.assertEquals(0, RankIndex.empty().size());
+    }
+}
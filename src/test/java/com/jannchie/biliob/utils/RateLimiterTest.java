@@ -0,0 +1,35 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void tryAcquire() {
+        RateLimiter rateLimiter = new RateLimiter(null, 3, 2, 2, false);
+        String uri = IpHandlerInterceptor.replaceDigital("/api/author/1850091");
+        Assert.assertTrue(rateLimiter.tryAcquire("127.0.0.1", "POST", uri));
+        Assert.assertTrue(rateLimiter.tryAcquire("127.0.0.1", "POST", uri));
+        Assert.assertFalse(rateLimiter.tryAcquire("127.0.0.1", "POST", uri));
+        // 读写与不同IP分开计数
+        Assert.assertTrue(rateLimiter.tryAcquire("127.0.0.1", "GET", uri));
+        Assert.assertTrue(rateLimiter.tryAcquire("127.0.0.2", "POST", uri));
+    }
+
+    @Test
+    public void recordRejection() {
+        RateLimiter rateLimiter = new RateLimiter(null, 3, 2, 2, false);
+        Assert.assertFalse(rateLimiter.recordRejection("127.0.0.1"));
+        Assert.assertFalse(rateLimiter.recordRejection("127.0.0.1"));
+        Assert.assertTrue(rateLimiter.recordRejection("127.0.0.1"));
+        Assert.assertFalse(rateLimiter.recordRejection("127.0.0.2"));
+    }
+
+    @Test
+    public void estimate() {
+        Assert.assertEquals(10, RateLimiter.estimate(0, 10, 0), 1e-9);
+        Assert.assertEquals(15, RateLimiter.estimate(10, 10, 30 * 1000), 1e-9);
+        Assert.assertEquals(10, RateLimiter.estimate(10, 0, 0), 1e-9);
+    }
+}
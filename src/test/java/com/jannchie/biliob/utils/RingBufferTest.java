@@ -0,0 +1,62 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RingBufferTest {
+
+    @Test
+    public void offerAndPoll() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        Assert.assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(4));
+        List<Integer> result = new ArrayList<>();
+        Assert.assertEquals(2, buffer.drainTo(result, 2));
+        Assert.assertTrue(buffer.offer(5));
+        Assert.assertEquals(3, buffer.drainTo(result, 10));
+        Assert.assertArrayEquals(new Integer[]{0, 1, 2, 3, 5}, result.toArray());
+        Assert.assertNull(buffer.poll());
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        RingBuffer<Long> buffer = new RingBuffer<>(1024);
+        int producerCount = 4;
+        int perProducer = 100000;
+        AtomicLong rejected = new AtomicLong();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < producerCount; p++) {
+            Thread thread = new Thread(() -> {
+                for (long i = 1; i <= perProducer; i++) {
+                    while (!buffer.offer(i)) {
+                        rejected.incrementAndGet();
+                        Thread.yield();
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        long sum = 0;
+        long count = 0;
+        while (count < (long) producerCount * perProducer) {
+            Long e = buffer.poll();
+            if (e != null) {
+                sum += e;
+                count++;
+            }
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        Assert.assertEquals((long) producerCount * perProducer * (perProducer + 1) / 2, sum);
+        Assert.assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,64 @@
+package com.jannchie.biliob.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TimingWheelTest {
+
+    @Test
+    public void advance() {
+        long origin = System.currentTimeMillis();
+        TimingWheel wheel = new TimingWheel(1000, origin);
+        Random random = new Random(42);
+        Map<Long, Long> deadlines = new HashMap<>();
+        for (long key = 0; key < 10000; key++) {
+            // 覆盖秒级到数十天的间隔，使任务分布在各层
+            long deadline = origin + (long) (Math.pow(random.nextDouble(), 3) * 3e9);
+            wheel.schedule(key, deadline);
+            deadlines.put(key, deadline);
+        }
+        for (long key = 0; key < 1000; key++) {
+            long deadline = origin + random.nextInt(100000000);
+            wheel.schedule(key, deadline);
+            deadlines.put(key, deadline);
+        }
+        for (long key = 1000; key < 1500; key++) {
+            wheel.cancel(key);
+            deadlines.remove(key);
+        }
+        Assert.assertEquals(deadlines.size(), wheel.size());
+        long now = origin;
+        while (!deadlines.isEmpty()) {
+            now += 1000L * (1 + random.nextInt(3600));
+            List<Long> due = new ArrayList<>();
+            wheel.advance(now, due::add);
+            for (Long key : due) {
+                Long deadline = deadlines.remove(key);
+                Assert.assertNotNull(deadline);
+                Assert.assertTrue(deadline <= now);
+                Assert.assertTrue(now - deadline <= 3600 * 1000L + 1000);
+            }
+        }
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void reschedule() {
+        long origin = System.currentTimeMillis();
+        TimingWheel wheel = new TimingWheel(1000, origin);
+        wheel.schedule(1, origin + 5000);
+        wheel.schedule(1, origin + 60000);
+        List<Long> due = new ArrayList<>();
+        wheel.advance(origin + 10000, due::add);
+        Assert.assertTrue(due.isEmpty());
+        wheel.advance(origin + 60000, due::add);
+        Assert.assertEquals(1, due.size());
+        Assert.assertFalse(wheel.contains(1));
+    }
+}